@@ -0,0 +1,71 @@
+package com.ritazcode.mailtracking.config;
+
+import com.ritazcode.mailtracking.config.ExecutionProperties.Threads;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * config of the threads that handle the requests, see {@link ExecutionProperties}.
+ * in the virtual threads mode every request, so every controller handler, runs on its own virtual thread,
+ * and the database connections are handed out through a {@link ConnectionLimitingDataSource}.
+ * the mode needs java 21 or later at runtime, on an older runtime the application fails to start with it,
+ * instead of serving the requests on the platform threads
+ */
+@Configuration
+@ConditionalOnProperty(name = "my-config.execution.threads", havingValue = "virtual")
+public class ExecutionConfig {
+
+    /**
+     * created with the config, so the mode is checked at startup whichever web server runs
+     */
+    private final ExecutorService executor = newVirtualThreadPerTaskExecutor();
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    /**
+     * wraps the data source, so only as many requests as there are pooled connections (or db.permits) use it at the same time
+     */
+    @Bean
+    public static BeanPostProcessor connectionLimitingDataSourcePostProcessor(ObjectProvider<ExecutionProperties> properties) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource dataSource) || bean instanceof ConnectionLimitingDataSource)
+                    return bean;
+                ExecutionProperties.Db db = properties.getObject().getDb();
+                int permits = db.getPermits() > 0 || !(bean instanceof HikariDataSource hikari)
+                        ? db.getPermits()
+                        : hikari.getMaximumPoolSize();
+                if (permits <= 0)
+                    return bean;
+                return new ConnectionLimitingDataSource(dataSource, permits, db.getAcquireTimeout());
+            }
+        };
+    }
+
+    /**
+     * virtual threads are looked up at runtime, so the build keeps its java release
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalStateException(String.format("%s threads need java 21 or later, the runtime is java %s",
+                    Threads.VIRTUAL, Runtime.version().feature()), ex);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("virtual threads executor can not be created", ex);
+        }
+    }
+}
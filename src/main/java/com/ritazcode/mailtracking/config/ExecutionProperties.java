@@ -0,0 +1,56 @@
+package com.ritazcode.mailtracking.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * settings of the threads that handle the requests and of their access to the database
+ */
+@Data
+@ConfigurationProperties(prefix = "my-config.execution")
+public class ExecutionProperties {
+
+    /**
+     * threads on which the requests are handled
+     */
+    private Threads threads = Threads.PLATFORM;
+
+    private final Db db = new Db();
+
+    private final R2dbc r2dbc = new R2dbc();
+
+    public enum Threads {
+        /**
+         * the pooled platform threads of tomcat, server.tomcat.threads.max bounds the concurrent requests
+         */
+        PLATFORM,
+        /**
+         * a new virtual thread per request, needs java 21 or later
+         */
+        VIRTUAL
+    }
+
+    @Data
+    public static class Db {
+        /**
+         * maximum count of requests that use a database connection at the same time in the virtual threads mode,
+         * 0 to use the maximum size of the connection pool
+         */
+        private int permits = 0;
+
+        /**
+         * how long a request waits for a database permit before it fails
+         */
+        private Duration acquireTimeout = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class R2dbc {
+        /**
+         * maximum count of r2dbc connections of the reactive profile, they are opened to the database of spring.datasource
+         */
+        private int maxPoolSize = 10;
+    }
+}
@@ -0,0 +1,84 @@
+package com.ritazcode.mailtracking.config;
+
+import com.ritazcode.mailtracking.repository.reactive.ReactivePostalItemRepository;
+import io.r2dbc.pool.PoolingConnectionFactoryProvider;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.config.AbstractR2dbcConfiguration;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.Disposable;
+
+/**
+ * r2dbc access of the reactive profile, to the same database as the blocking stack.
+ * the connection factory is not a bean, a ConnectionFactory bean would switch off the jdbc data source that jpa and flyway still use.
+ * the r2dbc transaction manager is not a bean either, so @Transactional keeps using the jpa one,
+ * reactive services run their transactions through the {@link TransactionalOperator}
+ */
+@Configuration
+@Profile(ReactiveConfig.PROFILE)
+@EnableR2dbcRepositories(basePackageClasses = ReactivePostalItemRepository.class)
+@RequiredArgsConstructor
+public class ReactiveConfig extends AbstractR2dbcConfiguration {
+
+    /**
+     * profile that serves the api with the webflux controllers and r2dbc repositories instead of the servlet ones
+     */
+    public static final String PROFILE = "reactive";
+
+    private static final String JDBC_PREFIX = "jdbc:";
+
+    private final JdbcConnectionDetails connectionDetails;
+    private final ExecutionProperties properties;
+
+    private ConnectionFactory connectionFactory;
+
+    /**
+     * pooled connections to the database of spring.datasource, jdbc:postgresql://host:port/db is opened as
+     * r2dbc:pool:postgresql://host:port/db. the parameters of the jdbc url are not passed on.
+     * the pool is created once, it is looked up by every r2dbc bean of this config
+     */
+    @Override
+    public synchronized ConnectionFactory connectionFactory() {
+        if (connectionFactory == null)
+            connectionFactory = createConnectionFactory();
+        return connectionFactory;
+    }
+
+    private ConnectionFactory createConnectionFactory() {
+        String jdbcUrl = connectionDetails.getJdbcUrl();
+        if (!jdbcUrl.startsWith(JDBC_PREFIX))
+            throw new IllegalStateException(String.format("datasource url (%s) is not a jdbc url", jdbcUrl));
+        String address = jdbcUrl.substring(JDBC_PREFIX.length());
+        int parameters = address.indexOf('?');
+        ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions
+                .parse("r2dbc:pool:" + (parameters < 0 ? address : address.substring(0, parameters)))
+                .mutate()
+                .option(PoolingConnectionFactoryProvider.MAX_SIZE, properties.getR2dbc().getMaxPoolSize());
+        if (connectionDetails.getUsername() != null)
+            options.option(ConnectionFactoryOptions.USER, connectionDetails.getUsername());
+        if (connectionDetails.getPassword() != null)
+            options.option(ConnectionFactoryOptions.PASSWORD, connectionDetails.getPassword());
+        return ConnectionFactories.get(options.build());
+    }
+
+    @Bean
+    public TransactionalOperator reactiveTransactionalOperator(DatabaseClient databaseClient) {
+        return TransactionalOperator.create(new R2dbcTransactionManager(databaseClient.getConnectionFactory()));
+    }
+
+    @PreDestroy
+    public synchronized void closeConnectionFactory() {
+        if (connectionFactory instanceof Disposable pool)
+            pool.dispose();
+    }
+}
@@ -0,0 +1,341 @@
+package com.ritazcode.mailtracking.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Period;
+
+/**
+ * tunable settings of the postal item tracking operations
+ */
+@Data
+@ConfigurationProperties(prefix = "my-config.tracking")
+public class TrackingProperties {
+
+    private final Scan scan = new Scan();
+
+    private final Register register = new Register();
+
+    private final Page page = new Page();
+
+    private final Update update = new Update();
+
+    private final History history = new History();
+
+    private final Idempotency idempotency = new Idempotency();
+
+    private final Lock lock = new Lock();
+
+    private final Events events = new Events();
+
+    private final Outbox outbox = new Outbox();
+
+    private final View view = new View();
+
+    private final Stats stats = new Stats();
+
+    @Data
+    public static class Scan {
+        /**
+         * maximum count of scan events that can be passed in a single batch request
+         */
+        private int maxBatchSize = 5000;
+    }
+
+    @Data
+    public static class Register {
+        /**
+         * maximum count of postal items that can be registered in a single batch request
+         */
+        private int maxBatchSize = 5000;
+    }
+
+    @Data
+    public static class Page {
+        /**
+         * maximum count of records that can be fetched in a single cursor (keyset) page
+         */
+        private int maxLimit = 1000;
+    }
+
+    @Data
+    public static class Update {
+        /**
+         * maximum count of attempts of a status update, an attempt is repeated when another request
+         * changed the same postal item meanwhile
+         */
+        private int maxAttempts = 5;
+
+        /**
+         * how a single status update is written, see {@link UpdateMode}
+         */
+        private UpdateMode mode = UpdateMode.ENTITY;
+    }
+
+    public enum UpdateMode {
+        /**
+         * the postal item is loaded and validated, then its changes and the history record are flushed
+         */
+        ENTITY,
+        /**
+         * a single guarded update of the postal item that also inserts the history record,
+         * the item is loaded only when the update is rejected, to report why
+         */
+        CONDITIONAL
+    }
+
+    @Data
+    public static class History {
+        /**
+         * how the history records of moved items are written, see {@link HistoryWriteMode}
+         */
+        private HistoryWriteMode writeMode = HistoryWriteMode.SYNC;
+
+        /**
+         * maximum count of history records that are appended to the journal and not yet written to db,
+         * a move waits for free space up to append-timeout, it must hold a whole scan batch
+         */
+        private int bufferCapacity = 10000;
+
+        /**
+         * maximum count of history records that are written to db in a single transaction
+         */
+        private int batchSize = 1000;
+
+        /**
+         * how long the flusher waits for more records before it writes a batch
+         */
+        private Duration flushInterval = Duration.ofMillis(200);
+
+        /**
+         * how long a move waits for free space in the buffer before it is rejected as unavailable
+         */
+        private Duration appendTimeout = Duration.ofSeconds(5);
+
+        /**
+         * how many times a batch that fails is written again, with waits that double from flush-interval,
+         * before its records are written one at a time and those that still fail are parked next to the journal
+         */
+        private int maxFlushAttempts = 10;
+
+        private final Journal journal = new Journal();
+
+        private final Partitions partitions = new Partitions();
+    }
+
+    @Data
+    public static class Partitions {
+        /**
+         * count of the months after the current one whose partitions of history_item are created in advance
+         */
+        private int monthsAhead = 3;
+
+        /**
+         * how long the history records are kept, the partition of a month is detached once the whole month is older.
+         * 0 keeps all of them
+         */
+        private Period retention = Period.ZERO;
+
+        /**
+         * what is done with a detached partition, see {@link PartitionArchiveMode}
+         */
+        private PartitionArchiveMode archiveMode = PartitionArchiveMode.DETACH;
+
+        /**
+         * how often the partitions are created and detached, the first time at startup. 0 disables it
+         */
+        private Duration maintenanceInterval = Duration.ofHours(1);
+
+        /**
+         * how long creating or detaching a partition waits for the lock of history_item, so the lookups do not queue
+         * behind it. a partition that is not created or detached in time is tried again in the next maintenance
+         */
+        private Duration lockTimeout = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Journal {
+        /**
+         * directory of the journal segments, it must not be shared with another instance
+         */
+        private Path directory = Path.of("history-journal");
+
+        /**
+         * name of the journal, its checkpoint is saved in db under this name
+         */
+        private String name = "default";
+
+        /**
+         * size after which a new segment is started, segments are deleted once all their entries are written to db
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(16);
+
+        /**
+         * whether every append is forced to the disk, without it the journal survives a crash of the application
+         * but not of the machine, and the history of moves that are committed may be lost
+         */
+        private boolean fsync = true;
+    }
+
+    @Data
+    public static class Idempotency {
+        /**
+         * maximum count of idempotency keys that are remembered, the least recently used ones are forgotten first
+         */
+        private long maxKeys = 100_000;
+
+        /**
+         * how long the result of a scan is returned again for the same idempotency key
+         */
+        private Duration expireAfter = Duration.ofMinutes(15);
+    }
+
+    @Data
+    public static class View {
+        /**
+         * whether the looked up postal items are cached in this instance
+         */
+        private boolean cacheEnabled = true;
+
+        /**
+         * maximum count of cached postal items, the ones that are rarely looked up are evicted first
+         */
+        private long maxItems = 100_000;
+
+        /**
+         * how long a postal item stays cached, it bounds how late this instance sees the status changes made by other instances
+         */
+        private Duration expireAfter = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Stats {
+        /**
+         * how often the counts of the postal items at the post offices are recounted in db, the first recount seeds them.
+         * 0 disables it, the counts then hold only the moves made by this instance since it started
+         */
+        private Duration reconcileInterval = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Lock {
+        /**
+         * whether the status changes of the same postal item are serialized inside this instance before they reach db
+         */
+        private boolean enabled = true;
+
+        /**
+         * count of locks that guard the postal items, rounded up to a power of two.
+         * more locks mean fewer different items that wait for each other
+         */
+        private int stripes = 1024;
+
+        /**
+         * how long a status change waits for the lock of its item before it is rejected as a conflict
+         */
+        private Duration timeout = Duration.ofSeconds(30);
+
+        /**
+         * whether the lock wait times and timeouts are recorded as metrics
+         */
+        private boolean metrics = true;
+    }
+
+    @Data
+    public static class Events {
+        /**
+         * maximum count of clients that are subscribed to status changes at the same time, further subscriptions are rejected
+         */
+        private int maxSubscribers = 50_000;
+
+        /**
+         * count of status changes that wait to be sent to a single client, a client that falls further behind is dropped
+         */
+        private int queueCapacity = 256;
+
+        /**
+         * count of threads that send the status changes to the clients
+         */
+        private int dispatchThreads = 4;
+
+        /**
+         * how long a subscription stays open, the client subscribes again after it is closed
+         */
+        private Duration timeout = Duration.ofMinutes(30);
+    }
+
+    @Data
+    public static class Outbox {
+        /**
+         * count of threads of this instance that relay the outbox events to the sinks, 0 leaves them to other instances.
+         * each thread relays the events of its own share of the postal items, in the order they were written
+         */
+        private int relayThreads = 2;
+
+        /**
+         * maximum count of outbox events that are locked, sent to the sinks and deleted in a single transaction
+         */
+        private int batchSize = 500;
+
+        /**
+         * how long a relay thread waits before it polls again after it found fewer events than a batch
+         */
+        private Duration pollInterval = Duration.ofMillis(200);
+
+        private final OutboxFile file = new OutboxFile();
+    }
+
+    @Data
+    public static class OutboxFile {
+        /**
+         * whether the outbox events are written to local files, the sink that needs no broker
+         */
+        private boolean enabled = true;
+
+        /**
+         * directory of the outbox files, one json line per event
+         */
+        private Path directory = Path.of("tracking-outbox");
+
+        /**
+         * size after which a new file is started
+         */
+        private DataSize maxFileSize = DataSize.ofMegabytes(64);
+
+        /**
+         * count of files that are kept, the oldest ones are deleted first
+         */
+        private int maxFiles = 10;
+
+        /**
+         * whether every batch is forced to the disk before its events are deleted from the outbox
+         */
+        private boolean fsync = false;
+    }
+
+    public enum HistoryWriteMode {
+        /**
+         * the history records are inserted in the transaction of the move
+         */
+        SYNC,
+        /**
+         * the history records are appended to a local journal in the transaction of the move,
+         * and written to db in batches in the background
+         */
+        WRITE_BEHIND
+    }
+
+    public enum PartitionArchiveMode {
+        /**
+         * the partition is detached and kept as a table of its own, e.g. to be dumped to an archive and dropped
+         */
+        DETACH,
+        /**
+         * the partition is detached and dropped
+         */
+        DROP
+    }
+}
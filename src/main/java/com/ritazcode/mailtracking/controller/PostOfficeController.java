@@ -1,9 +1,12 @@
 package com.ritazcode.mailtracking.controller;
 
+import com.ritazcode.mailtracking.config.ReactiveConfig;
 import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postOffice.OfficeStatsDto;
 import com.ritazcode.mailtracking.dto.postOffice.ResponsePostOfficeDto;
 import com.ritazcode.mailtracking.dto.postOffice.UpdatePostOfficeDto;
 import com.ritazcode.mailtracking.exception.ErrorResponse;
+import com.ritazcode.mailtracking.service.OfficeStatsService;
 import com.ritazcode.mailtracking.service.PostOfficeService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,16 +17,19 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
+@Profile("!" + ReactiveConfig.PROFILE)
 @RequiredArgsConstructor
 @RequestMapping("/api/v1/post-office")
 @Tag(name = "Post office controller", description = "Manage post office operations")
 public class PostOfficeController {
     private final PostOfficeService postOfficeService;
+    private final OfficeStatsService officeStatsService;
 
     @Operation(summary = "Get post office by its id")
     @ApiResponses(value = {
@@ -41,6 +47,21 @@ public class PostOfficeController {
 
     }
 
+    @Operation(summary = "Get count of the postal items at a post office in each status")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "counts of postal items are returned",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = OfficeStatsDto.class))}),
+            @ApiResponse(responseCode = "400", description = "post office id is not valid",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "post office is not found",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/stats")
+    public ResponseEntity<OfficeStatsDto> stats(@Parameter(description = "id of post office") @RequestParam("id") Long id) {
+        return new ResponseEntity<>(officeStatsService.getStats(id), HttpStatus.OK);
+    }
+
     @Operation(summary = "Add new post office")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "201", description = "post office is created",
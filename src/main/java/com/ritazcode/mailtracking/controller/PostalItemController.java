@@ -1,10 +1,18 @@
 package com.ritazcode.mailtracking.controller;
 
+import com.ritazcode.mailtracking.config.ReactiveConfig;
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.dto.CursorPageDto;
+import com.ritazcode.mailtracking.dto.postalItem.ItemStatusChangedDto;
 import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
 import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
 import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.ScanEventDto;
+import com.ritazcode.mailtracking.dto.postalItem.ScanResultDto;
 import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
 import com.ritazcode.mailtracking.exception.ErrorResponse;
+import com.ritazcode.mailtracking.service.ItemEventHub;
+import com.ritazcode.mailtracking.service.ItemViewCache;
 import com.ritazcode.mailtracking.service.PostalItemService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -13,24 +21,49 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
 
 @RestController
+@Profile("!" + ReactiveConfig.PROFILE)
 @RequestMapping("/api/v1/postal-item")
 @RequiredArgsConstructor
+@Validated
 @Tag(name = "Postal Item Controller",
         description = "Manages postal item operations")
 
 public class PostalItemController {
+    /**
+     * header of the key that a scanner sends again with a retried scan
+     */
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    /**
+     * name of the server-sent event of a status change
+     */
+    public static final String STATUS_CHANGED_EVENT = "status-changed";
+
     private final PostalItemService postalItemService;
+    private final TrackingProperties properties;
 
     @Operation(summary = "Get all postal items")
     @ApiResponses(value = {
@@ -50,19 +83,45 @@ public class PostalItemController {
 
     }
 
+    @Operation(summary = "Get all postal items with cursor (keyset) pagination, without counting all items")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "postal items page is returned",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CursorPageDto.class))}),
+            @ApiResponse(responseCode = "400", description = "cursor is not valid \t\n limit is not valid",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/all-items/cursor")
+    public ResponseEntity<CursorPageDto<ResponseItemDto>> getAllItemsAfter(
+            @Parameter(description = "cursor returned with the previous page, empty for the first page") @RequestParam(required = false) final String after,
+            @Parameter(description = "count of records in a page") @RequestParam(defaultValue = "20") final Integer limit) {
+        return new ResponseEntity<>(postalItemService.getPostalItems(after, limit), HttpStatus.OK);
+    }
+
     @Operation(summary = "Get postal item info")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "postal item is returned",
                     content = {@Content(mediaType = "application/json",
                             array = @ArraySchema(schema = @Schema(implementation = Page.class)))}),
+            @ApiResponse(responseCode = "304", description = "postal item is not changed since the entity tag in If-None-Match",
+                    content = @Content),
             @ApiResponse(responseCode = "400", description = "postal item id is not valid",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "postal item is not found",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @GetMapping("/view/{id}")
-    public ResponseEntity<ResponseItemDto> view(@PathVariable Long id) {
-        return new ResponseEntity<>(postalItemService.view(id), HttpStatus.OK);
+    public ResponseEntity<ResponseItemDto> view(
+            @PathVariable Long id,
+            @Parameter(description = "entity tag of the postal item the client already has") @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        //the version is looked up without loading the item, a client that has the current item gets no body
+        if (ifNoneMatch != null) {
+            String etag = etag(postalItemService.getItemVersion(id));
+            if (matches(ifNoneMatch, etag))
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        ItemViewCache.CachedItem item = postalItemService.viewWithVersion(id);
+        return ResponseEntity.ok().eTag(etag(item.version())).body(item.item());
     }
 
     @Operation(summary = "Get history of postal item")
@@ -70,6 +129,8 @@ public class PostalItemController {
             @ApiResponse(responseCode = "200", description = "postal items list is returned",
                     content = {@Content(mediaType = "application/json",
                             array = @ArraySchema(schema = @Schema(implementation = Page.class)))}),
+            @ApiResponse(responseCode = "304", description = "history is not changed since the entity tag in If-None-Match",
+                    content = @Content),
             @ApiResponse(responseCode = "400", description = "postal item id is not valid",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "postal item is not found",
@@ -79,8 +140,30 @@ public class PostalItemController {
     public ResponseEntity<Page<PostalItemHistoryDto>> showItemHistory(
             @Parameter(description = "page number") @RequestParam(defaultValue = "1") final Integer pageNumber,
             @Parameter(description = "count of records in a page") @RequestParam(defaultValue = "2") final Integer pageSize,
-            @Parameter(description = "post item id") @RequestParam Long id) {
-        return new ResponseEntity<>(postalItemService.getPostalItemHistory(id,PageRequest.of(pageNumber-1, pageSize)), HttpStatus.OK);
+            @Parameter(description = "post item id") @RequestParam Long id,
+            @Parameter(description = "entity tag of the history page the client already has") @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return history(id, ifNoneMatch, () -> postalItemService.getPostalItemHistory(id, PageRequest.of(pageNumber - 1, pageSize)));
+    }
+
+    @Operation(summary = "Get history of postal item with cursor (keyset) pagination, without counting all records")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "postal item history page is returned",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CursorPageDto.class))}),
+            @ApiResponse(responseCode = "304", description = "history is not changed since the entity tag in If-None-Match",
+                    content = @Content),
+            @ApiResponse(responseCode = "400", description = "postal item id is not valid \t\n cursor is not valid \t\n limit is not valid",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "postal item is not found",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/history/cursor")
+    public ResponseEntity<CursorPageDto<PostalItemHistoryDto>> showItemHistoryAfter(
+            @Parameter(description = "cursor returned with the previous page, empty for the first page") @RequestParam(required = false) final String after,
+            @Parameter(description = "count of records in a page") @RequestParam(defaultValue = "20") final Integer limit,
+            @Parameter(description = "post item id") @RequestParam Long id,
+            @Parameter(description = "entity tag of the history page the client already has") @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return history(id, ifNoneMatch, () -> postalItemService.getPostalItemHistory(id, after, limit));
     }
 
     @Operation(summary = "Get post office postal items")
@@ -102,6 +185,44 @@ public class PostalItemController {
 
     }
 
+    @Operation(summary = "Get post office postal items with cursor (keyset) pagination, without counting all items")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "postal items page is returned",
+                    content = {@Content(mediaType = "application/json",
+                            schema = @Schema(implementation = CursorPageDto.class))}),
+            @ApiResponse(responseCode = "400", description = "post office id is not valid \t\n cursor is not valid \t\n limit is not valid",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "post office is not found",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping("/all-office-items/cursor")
+    public ResponseEntity<CursorPageDto<ResponseItemDto>> getOfficeItemsAfter(
+            @Parameter(description = "cursor returned with the previous page, empty for the first page") @RequestParam(required = false) final String after,
+            @Parameter(description = "count of records in a page") @RequestParam(defaultValue = "20") final Integer limit,
+            @Parameter(description = "id of post office") @RequestParam("id") Long id) {
+        return new ResponseEntity<>(postalItemService.getOfficeItems(id, after, limit), HttpStatus.OK);
+    }
+
+    @Operation(summary = "Export all postal items of a post office as newline-delimited json, in one response")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "postal items are streamed one json object per line, ordered by id",
+                    content = {@Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = ResponseItemDto.class))}),
+            @ApiResponse(responseCode = "400", description = "post office id is not valid",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "post office is not found",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    //the content type is set once the office is found, so the errors before it are still returned as json
+    @GetMapping("/all-office-items/export")
+    public void exportOfficeItems(@Parameter(description = "id of post office") @RequestParam("id") Long id,
+                                  HttpServletResponse response) throws IOException {
+        postalItemService.exportOfficeItems(id, () -> {
+            response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+            return response.getOutputStream();
+        });
+    }
+
     @Operation(summary = "Register a new postal item")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "a new postal item is registered",
@@ -115,6 +236,19 @@ public class PostalItemController {
         return new ResponseEntity<>(postalItemService.register(newItem), HttpStatus.CREATED);
     }
 
+    @Operation(summary = "Register a batch of new postal items")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "201", description = "all postal items are registered",
+                    content = {@Content(mediaType = "application/json", array = @ArraySchema(schema =
+                    @Schema(implementation = ResponseItemDto.class)))}),
+            @ApiResponse(responseCode = "400", description = "one of the new postal items is not valid \t\n count of postal items exceeds the limit",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping("/create-batch")
+    public ResponseEntity<List<ResponseItemDto>> registerBatch(@RequestBody List<@Valid RegisterItemDto> newItems) {
+        return new ResponseEntity<>(postalItemService.registerAll(newItems), HttpStatus.CREATED);
+    }
+
     @Operation(summary = "Change postal item status to received to a specific office")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "postal status is updated",
@@ -124,14 +258,17 @@ public class PostalItemController {
                     description = """
                             postal item is not valid \t
                              post office id is not valid \t
-                             item has already been RECEIVED""",
+                             item has already been RECEIVED \t
+                             idempotency key is already used by another scan""",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "postal item is not valid \t\n post office is not found",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PostMapping("/arrive")
-    public ResponseEntity<ResponseItemDto> arrive(@RequestBody @Valid UpdateItemDto updatedItem) {
-        return new ResponseEntity<>(postalItemService.arriveToPostOffice(updatedItem), HttpStatus.OK);
+    public ResponseEntity<ResponseItemDto> arrive(
+            @Parameter(description = "key of the scan, a retried scan with the same key returns the first result") @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+            @RequestBody @Valid UpdateItemDto updatedItem) {
+        return new ResponseEntity<>(postalItemService.arriveToPostOffice(updatedItem, idempotencyKey), HttpStatus.OK);
     }
 
     @Operation(summary = "Change postal item status to departed from specific office")
@@ -144,14 +281,17 @@ public class PostalItemController {
                             postal item is not valid \t
                              post office id is not valid \t
                              item has already been RECEIVED \t
-                             item with can not DEPART from a post office to which it did NOT ARRIVE""",
+                             item with can not DEPART from a post office to which it did NOT ARRIVE \t
+                             idempotency key is already used by another scan""",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "postal item is not valid \t\n post office is not found",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PostMapping("/depart")
-    public ResponseEntity<ResponseItemDto> send(@RequestBody @Valid UpdateItemDto updatedItem) {
-        return new ResponseEntity<>(postalItemService.departFromPostOffice(updatedItem), HttpStatus.OK);
+    public ResponseEntity<ResponseItemDto> send(
+            @Parameter(description = "key of the scan, a retried scan with the same key returns the first result") @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+            @RequestBody @Valid UpdateItemDto updatedItem) {
+        return new ResponseEntity<>(postalItemService.departFromPostOffice(updatedItem, idempotencyKey), HttpStatus.OK);
     }
 
     @Operation(summary = "Change postal item status to received by addressee")
@@ -164,14 +304,116 @@ public class PostalItemController {
                             postal item is not valid \t
                              post office id is not valid \t
                              item has already been RECEIVED \t
-                            \s""",
+                             idempotency key is already used by another scan""",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
             @ApiResponse(responseCode = "404", description = "postal item is not valid \t\n post office is not found",
                     content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
     })
     @PostMapping("/receive")
-    public ResponseEntity<ResponseItemDto> receive(@RequestBody @Valid UpdateItemDto updatedItem) {
-        return new ResponseEntity<>(postalItemService.receiveByRecipient(updatedItem), HttpStatus.OK);
+    public ResponseEntity<ResponseItemDto> receive(
+            @Parameter(description = "key of the scan, a retried scan with the same key returns the first result") @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+            @RequestBody @Valid UpdateItemDto updatedItem) {
+        return new ResponseEntity<>(postalItemService.receiveByRecipient(updatedItem, idempotencyKey), HttpStatus.OK);
     }
 
+    @Operation(summary = "Apply a batch of arrive, depart and receive scan events")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "scan events are applied, the result of each event is returned in the passed order",
+                    content = {@Content(mediaType = "application/json", array = @ArraySchema(schema =
+                    @Schema(implementation = ScanResultDto.class)))}),
+            @ApiResponse(responseCode = "400", description = "scan events are not valid \t\n count of scan events exceeds the limit",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @PostMapping("/scan-batch")
+    public ResponseEntity<List<ScanResultDto>> scanBatch(@RequestBody List<ScanEventDto> events) {
+        return new ResponseEntity<>(postalItemService.scanAll(events), HttpStatus.OK);
+    }
+
+    @Operation(summary = "Stream the status changes of a postal item as server-sent events")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "status changes are sent as `" + STATUS_CHANGED_EVENT + "` events until the stream times out or the client falls behind",
+                    content = {@Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                            schema = @Schema(implementation = ItemStatusChangedDto.class))}),
+            @ApiResponse(responseCode = "400", description = "postal item id is not valid",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "postal item is not found",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "503", description = "count of subscriptions reached the limit",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter itemEvents(@Parameter(description = "post item id") @RequestParam Long id) {
+        return stream(sink -> postalItemService.subscribeToItem(id, sink));
+    }
+
+    @Operation(summary = "Stream the status changes of the postal items at a post office as server-sent events")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "status changes are sent as `" + STATUS_CHANGED_EVENT + "` events until the stream times out or the client falls behind",
+                    content = {@Content(mediaType = MediaType.TEXT_EVENT_STREAM_VALUE,
+                            schema = @Schema(implementation = ItemStatusChangedDto.class))}),
+            @ApiResponse(responseCode = "400", description = "post office id is not valid",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "404", description = "post office is not found",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class))),
+            @ApiResponse(responseCode = "503", description = "count of subscriptions reached the limit",
+                    content = @Content(schema = @Schema(implementation = ErrorResponse.class)))
+    })
+    @GetMapping(path = "/office-events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter officeEvents(@Parameter(description = "id of post office") @RequestParam("id") Long id) {
+        return stream(sink -> postalItemService.subscribeToOffice(id, sink));
+    }
+
+    /**
+     * opens a server-sent events stream fed by a subscription of the event hub, the subscription is cancelled with the stream
+     */
+    private SseEmitter stream(Function<ItemEventHub.Sink, ItemEventHub.Subscription> subscribe) {
+        SseEmitter emitter = new SseEmitter(properties.getEvents().getTimeout().toMillis());
+        ItemEventHub.Subscription subscription = subscribe.apply(new ItemEventHub.Sink() {
+            @Override
+            public void send(ItemStatusChangedDto event) throws IOException {
+                emitter.send(SseEmitter.event().name(STATUS_CHANGED_EVENT).data(event, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void close() {
+                emitter.complete();
+            }
+        });
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(ex -> subscription.cancel());
+        return emitter;
+    }
+
+    /**
+     * reads a history page tagged with the version of the history, or answers 304 when the client has the current one.
+     * the version is read before the page, so the tag is never newer than the page
+     */
+    private <T> ResponseEntity<T> history(Long id, String ifNoneMatch, Supplier<T> page) {
+        OptionalLong version = postalItemService.getHistoryVersion(id);
+        if (version.isEmpty())
+            return ResponseEntity.ok(page.get());
+        String etag = etag(version.getAsLong());
+        if (matches(ifNoneMatch, etag))
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        return ResponseEntity.ok().eTag(etag).body(page.get());
+    }
+
+    private static String etag(long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * @return whether If-None-Match holds the entity tag, tags are compared weakly as the header requires
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null)
+            return false;
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag))
+                return true;
+        }
+        return false;
+    }
 }
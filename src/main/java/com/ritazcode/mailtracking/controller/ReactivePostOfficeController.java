@@ -0,0 +1,54 @@
+package com.ritazcode.mailtracking.controller;
+
+import com.ritazcode.mailtracking.config.ReactiveConfig;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postOffice.ResponsePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postOffice.UpdatePostOfficeDto;
+import com.ritazcode.mailtracking.service.ReactivePostOfficeService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+/**
+ * webflux variant of {@link PostOfficeController} with the same paths, served under the reactive profile
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/v1/post-office")
+@Profile(ReactiveConfig.PROFILE)
+@Tag(name = "Post office controller", description = "Manage post office operations")
+public class ReactivePostOfficeController {
+    private final ReactivePostOfficeService postOfficeService;
+
+    @Operation(summary = "Get post office by its id")
+    @GetMapping("/")
+    public Mono<ResponseEntity<ResponsePostOfficeDto>> view(@Parameter(description = "id of post office") @RequestParam("id") Long id) {
+        return postOfficeService.view(id).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Add new post office")
+    @PostMapping("/create")
+    public Mono<ResponseEntity<ResponsePostOfficeDto>> create(@Valid @RequestBody CreatePostOfficeDto newPostDto) {
+        return postOfficeService.create(newPostDto).map(office -> new ResponseEntity<>(office, HttpStatus.CREATED));
+    }
+
+    @Operation(summary = "update existing post office")
+    @PutMapping("/update")
+    public Mono<ResponseEntity<ResponsePostOfficeDto>> update(@Valid @RequestBody UpdatePostOfficeDto updatedPost) {
+        return postOfficeService.update(updatedPost).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Delete an existing post office")
+    @DeleteMapping("/delete")
+    public Mono<ResponseEntity<HttpStatus>> delete(
+            @Parameter(description = "id of post office") @RequestParam("id") Long id) {
+        return postOfficeService.delete(id).thenReturn(new ResponseEntity<>(HttpStatus.OK));
+    }
+}
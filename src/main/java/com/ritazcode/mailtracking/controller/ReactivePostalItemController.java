@@ -0,0 +1,154 @@
+package com.ritazcode.mailtracking.controller;
+
+import com.ritazcode.mailtracking.config.ReactiveConfig;
+import com.ritazcode.mailtracking.dto.CursorPageDto;
+import com.ritazcode.mailtracking.dto.postalItem.ItemStatusChangedDto;
+import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.service.ReactivePostalItemService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * webflux variant of {@link PostalItemController} with the same paths, served under the reactive profile.
+ * batch scans, idempotency keys and entity tags (If-None-Match) are served only by the blocking stack
+ */
+@RestController
+@RequestMapping("/api/v1/postal-item")
+@RequiredArgsConstructor
+@Validated
+@Profile(ReactiveConfig.PROFILE)
+@Tag(name = "Postal Item Controller",
+        description = "Manages postal item operations")
+public class ReactivePostalItemController {
+
+    private final ReactivePostalItemService postalItemService;
+
+    @Operation(summary = "Get all postal items")
+    @GetMapping("/all-items")
+    public Mono<ResponseEntity<Page<ResponseItemDto>>> getAllItems(
+            @Parameter(description = "page number") @RequestParam(defaultValue = "1") final Integer pageNumber,
+            @Parameter(description = "count of records in a page") @RequestParam(defaultValue = "2") final Integer pageSize) {
+        return postalItemService.getPostalItems(PageRequest.of(pageNumber - 1, pageSize)).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Get a keyset page of postal items after a cursor")
+    @GetMapping("/all-items/cursor")
+    public Mono<ResponseEntity<CursorPageDto<ResponseItemDto>>> getAllItemsAfter(
+            @Parameter(description = "cursor returned with the previous page, empty for the first page") @RequestParam(required = false) final String after,
+            @Parameter(description = "count of records in a page") @RequestParam(defaultValue = "20") final Integer limit) {
+        return postalItemService.getPostalItems(after, limit).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Get postal item by its id")
+    @GetMapping("/view/{id}")
+    public Mono<ResponseEntity<ResponseItemDto>> view(@PathVariable Long id) {
+        return postalItemService.view(id).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Get postal item history")
+    @GetMapping("/history")
+    public Mono<ResponseEntity<Page<PostalItemHistoryDto>>> showItemHistory(
+            @Parameter(description = "page number") @RequestParam(defaultValue = "1") final Integer pageNumber,
+            @Parameter(description = "count of records in a page") @RequestParam(defaultValue = "2") final Integer pageSize,
+            @Parameter(description = "post item id") @RequestParam Long id) {
+        return postalItemService.getPostalItemHistory(id, PageRequest.of(pageNumber - 1, pageSize)).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Get a keyset page of postal item history after a cursor")
+    @GetMapping("/history/cursor")
+    public Mono<ResponseEntity<CursorPageDto<PostalItemHistoryDto>>> showItemHistoryAfter(
+            @Parameter(description = "cursor returned with the previous page, empty for the first page") @RequestParam(required = false) final String after,
+            @Parameter(description = "count of records in a page") @RequestParam(defaultValue = "20") final Integer limit,
+            @Parameter(description = "post item id") @RequestParam Long id) {
+        return postalItemService.getPostalItemHistory(id, after, limit).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Get all postal items of a post office")
+    @GetMapping("/all-office-items")
+    public Mono<ResponseEntity<Page<ResponseItemDto>>> getOfficeItems(
+            @Parameter(description = "page number") @RequestParam(defaultValue = "1") final Integer pageNumber,
+            @Parameter(description = "count of records in a page") @RequestParam(defaultValue = "2") final Integer pageSize,
+            @Parameter(description = "id of post office") @RequestParam("id") Long id) {
+        return postalItemService.getOfficeItems(id, PageRequest.of(pageNumber - 1, pageSize)).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Get a keyset page of postal items of a post office after a cursor")
+    @GetMapping("/all-office-items/cursor")
+    public Mono<ResponseEntity<CursorPageDto<ResponseItemDto>>> getOfficeItemsAfter(
+            @Parameter(description = "cursor returned with the previous page, empty for the first page") @RequestParam(required = false) final String after,
+            @Parameter(description = "count of records in a page") @RequestParam(defaultValue = "20") final Integer limit,
+            @Parameter(description = "id of post office") @RequestParam("id") Long id) {
+        return postalItemService.getOfficeItems(id, after, limit).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Export all postal items of a post office as newline-delimited json, in one response")
+    @GetMapping(path = "/all-office-items/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ResponseItemDto> exportOfficeItems(@Parameter(description = "id of post office") @RequestParam("id") Long id) {
+        return postalItemService.exportOfficeItems(id);
+    }
+
+    @Operation(summary = "Register new postal item")
+    @PostMapping("/create")
+    public Mono<ResponseEntity<ResponseItemDto>> register(@RequestBody @Valid RegisterItemDto newItem) {
+        return postalItemService.register(newItem).map(item -> new ResponseEntity<>(item, HttpStatus.CREATED));
+    }
+
+    @Operation(summary = "Register a batch of new postal items")
+    @PostMapping("/create-batch")
+    public Mono<ResponseEntity<List<ResponseItemDto>>> registerBatch(@RequestBody List<@Valid RegisterItemDto> newItems) {
+        return postalItemService.registerAll(newItems).map(items -> new ResponseEntity<>(items, HttpStatus.CREATED));
+    }
+
+    @Operation(summary = "Postal item arrived to post office")
+    @PostMapping("/arrive")
+    public Mono<ResponseEntity<ResponseItemDto>> arrive(@RequestBody @Valid UpdateItemDto updatedItem) {
+        return postalItemService.arriveToPostOffice(updatedItem).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Postal item departed from post office")
+    @PostMapping("/depart")
+    public Mono<ResponseEntity<ResponseItemDto>> send(@RequestBody @Valid UpdateItemDto updatedItem) {
+        return postalItemService.departFromPostOffice(updatedItem).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Postal item received by recipient")
+    @PostMapping("/receive")
+    public Mono<ResponseEntity<ResponseItemDto>> receive(@RequestBody @Valid UpdateItemDto updatedItem) {
+        return postalItemService.receiveByRecipient(updatedItem).map(ResponseEntity::ok);
+    }
+
+    @Operation(summary = "Stream the status changes of a postal item as server-sent events")
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<ItemStatusChangedDto>> itemEvents(@Parameter(description = "post item id") @RequestParam Long id) {
+        return postalItemService.itemEvents(id).map(ReactivePostalItemController::statusChanged);
+    }
+
+    @Operation(summary = "Stream the status changes of the postal items at a post office as server-sent events")
+    @GetMapping(path = "/office-events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<ItemStatusChangedDto>> officeEvents(@Parameter(description = "id of post office") @RequestParam("id") Long id) {
+        return postalItemService.officeEvents(id).map(ReactivePostalItemController::statusChanged);
+    }
+
+    private static ServerSentEvent<ItemStatusChangedDto> statusChanged(ItemStatusChangedDto event) {
+        return ServerSentEvent.builder(event).event(PostalItemController.STATUS_CHANGED_EVENT).build();
+    }
+}
@@ -0,0 +1,26 @@
+package com.ritazcode.mailtracking.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "A page of records that is fetched after a cursor (keyset pagination), without counting all records")
+public class CursorPageDto<T> {
+
+    @Schema(description = "records of the page")
+    List<T> content;
+
+    @Schema(description = "true if there are more records after this page")
+    boolean hasNext;
+
+    @Schema(description = "opaque cursor that is passed as `after` to fetch the next page, null when there are no more records")
+    String nextCursor;
+}
@@ -0,0 +1,24 @@
+package com.ritazcode.mailtracking.dto.postOffice;
+
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Count of the postal items at a post office in each status")
+public class OfficeStatsDto {
+
+    @Schema(description = "id of post office")
+    Long postOfficeId;
+
+    @Schema(description = "count of the postal items that are now at the post office, by their status")
+    Map<ItemStatus, Long> items;
+}
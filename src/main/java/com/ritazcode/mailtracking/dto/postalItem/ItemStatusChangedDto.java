@@ -0,0 +1,32 @@
+package com.ritazcode.mailtracking.dto.postalItem;
+
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Status change of a postal item, pushed to the clients that are subscribed to the item or its post office")
+public class ItemStatusChangedDto {
+    @Schema(description = "Postal item id")
+    Long itemId;
+
+    @Schema(description = "New status of postal item")
+    ItemStatus status;
+
+    @Schema(description = "Post office id")
+    Long postOfficeId;
+
+    @Schema(description = "Post office name, empty when the item is moved with the conditional update")
+    String postOfficeName;
+
+    @Schema(description = "time of operation")
+    Date timestamp;
+}
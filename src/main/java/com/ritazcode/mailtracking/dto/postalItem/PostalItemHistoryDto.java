@@ -16,6 +16,9 @@ import java.util.Date;
 @AllArgsConstructor
 @NoArgsConstructor
 public class PostalItemHistoryDto {
+    @Schema(description = "History record id")
+    Long id;
+
     @Schema(description = "Postal item id")
     Long itemId;
 
@@ -28,10 +31,12 @@ public class PostalItemHistoryDto {
     @Schema(description = "Postal item status, it might be registered, arrived, departed or received")
     ItemStatus status;
 
-    @Schema(description = "Post office id")
+    @Schema(description = "Id of the post office of the operation, null for the registration, for a deleted office "
+            + "and when the office is not known, for records older than the offices in history")
     Long postOfficeId;
 
-    @Schema(description = "Post office name")
+    @Schema(description = "Name of the post office at the time of operation, null for the registration "
+            + "and when the office is not known")
     String postOfficeName;
 
     @Schema(description = "time of operation")
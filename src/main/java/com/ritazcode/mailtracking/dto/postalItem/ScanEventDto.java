@@ -0,0 +1,28 @@
+package com.ritazcode.mailtracking.dto.postalItem;
+
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "DTO object for a single scan event of a batch (i.e. moving a postal item to a new status)")
+public class ScanEventDto {
+    @NotNull(message = "postal item id is required")
+    @Schema(description = "Postal item id")
+    Long itemId;
+
+    @NotNull(message = "post office id is required")
+    @Schema(description = "Post office id")
+    Long postOfficeId;
+
+    @NotNull(message = "target status is required")
+    @Schema(description = "Target status of postal item, it might be arrived, departed or received")
+    ItemStatus status;
+}
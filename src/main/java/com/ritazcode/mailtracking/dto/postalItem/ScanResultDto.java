@@ -0,0 +1,36 @@
+package com.ritazcode.mailtracking.dto.postalItem;
+
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(description = "Result of a single scan event of a batch")
+public class ScanResultDto {
+    @Schema(description = "Postal item id")
+    Long itemId;
+
+    @Schema(description = "Post office id")
+    Long postOfficeId;
+
+    @Schema(description = "Target status of postal item")
+    ItemStatus status;
+
+    @Schema(description = "true if the scan event is applied to the postal item")
+    boolean accepted;
+
+    @Schema(description = "Updated postal item information, set only when the scan event is accepted")
+    ResponseItemDto item;
+
+    @Schema(description = "name of the error, set only when the scan event is rejected")
+    String error;
+
+    @Schema(description = "message of the error, set only when the scan event is rejected")
+    String message;
+}
@@ -5,8 +5,12 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.Date;
 
 @Data
@@ -17,7 +21,9 @@ import java.util.Date;
 @Table(name = "history_item")
 public class HistoryItem {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "history_item_seq")
+    @GenericGenerator(name = "history_item_seq", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "history_item_seq"))
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -29,9 +35,28 @@ public class HistoryItem {
 
     private Date timestamp;
 
+    /**
+     * post office at which the operation was done, null for registration, for a deleted office
+     * and for the records that are older than the offices in history, their office is not known
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "office_id")
+    private PostOffice office;
+
+    /**
+     * name of the post office at the time of operation, null when the office is not known
+     */
+    private String officeName;
+
     public HistoryItem(ItemStatus status, PostalItem item) {
-        this.timestamp = new Timestamp(System.currentTimeMillis());
+        this.timestamp = Timestamp.from(Instant.now());
         this.status = status;
         this.item = item;
     }
+
+    public HistoryItem(ItemStatus status, PostalItem item, PostOffice office, String officeName) {
+        this(status, item);
+        this.office = office;
+        this.officeName = officeName;
+    }
 }
@@ -0,0 +1,29 @@
+package com.ritazcode.mailtracking.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * checkpoint of a local history journal, every entry up to it is written to the history_item table or aborted.
+ * it is saved in the same transaction as the history records that are written
+ */
+@Data
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "history_journal")
+public class HistoryJournalCheckpoint {
+
+    /**
+     * name of the journal, each instance of the application has its own journal
+     */
+    @Id
+    @Column(name = "journal_id")
+    private String id;
+
+    private long flushedSequence;
+}
@@ -0,0 +1,56 @@
+package com.ritazcode.mailtracking.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import java.util.Date;
+
+/**
+ * registration or status change of a postal item that waits to be sent to the outbox sinks,
+ * it is written in the transaction of the change. the item and the office are kept as plain ids,
+ * so the event outlives them and does not hold their rows
+ */
+@Data
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "outbox_event")
+public class OutboxEvent {
+
+    /**
+     * id of the event, the sinks use it to recognize an event that is sent again
+     */
+    @Id
+    @Column(name = "event_id")
+    @GeneratedValue(generator = "outbox_event_seq")
+    @GenericGenerator(name = "outbox_event_seq", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "outbox_event_seq"))
+    private Long id;
+
+    private Long itemId;
+
+    @Enumerated
+    private ItemStatus status;
+
+    /**
+     * post office at which the operation was done, null for registration
+     */
+    private Long postOfficeId;
+
+    /**
+     * name of the post office at the time of operation, null when it was not read
+     */
+    private String postOfficeName;
+
+    /**
+     * time of operation
+     */
+    private Date timestamp;
+}
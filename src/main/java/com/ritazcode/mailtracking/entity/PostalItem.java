@@ -5,9 +5,13 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 
 @Entity
 @Data
@@ -18,7 +22,9 @@ import java.util.Collection;
 public class PostalItem {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = "postal_item_seq")
+    @GenericGenerator(name = "postal_item_seq", type = PooledSequenceGenerator.class,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "postal_item_seq"))
     @Column(name = "item_id")
     Long id;
 
@@ -38,6 +44,25 @@ public class PostalItem {
     @JoinColumn(name = "office_id")
     private PostOffice postOffice;
 
+    /**
+     * time of the registration, no history record of the item is older than it
+     */
+    @Column(updatable = false)
+    @Builder.Default
+    private Date registeredAt = new Date();
+
+    /**
+     * time of the latest move, every move changes it, so a move that keeps the office and status
+     * is still written and checked against the version
+     */
+    private Date movedAt;
+
+    /**
+     * incremented on every update, an update of a stale item is rejected
+     */
+    @Version
+    private Long version;
+
     @OneToMany(mappedBy = "item", cascade = CascadeType.ALL)
     @Builder.Default
     private Collection<HistoryItem> history = new ArrayList<>();
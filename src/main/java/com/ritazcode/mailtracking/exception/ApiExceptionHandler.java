@@ -1,6 +1,9 @@
 package com.ritazcode.mailtracking.exception;
 
+import com.ritazcode.mailtracking.config.ReactiveConfig;
+import jakarta.validation.ConstraintViolationException;
 import jakarta.validation.constraints.NotNull;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
@@ -15,6 +18,7 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
  * Custom Exception handling class
  */
 @ControllerAdvice
+@Profile("!" + ReactiveConfig.PROFILE)
 public class ApiExceptionHandler extends ResponseEntityExceptionHandler {
 
     /**
@@ -34,6 +38,23 @@ public class ApiExceptionHandler extends ResponseEntityExceptionHandler {
                 , ex.getStatusCode());
     }
 
+    /**
+     * handle validation errors of method parameters (e.g. elements of a list request body)
+     * @param ex thrown exception
+     * @param request sent request
+     * @return Error response that contains information about the thrown exception, with list of detailed info about not valid attribute
+     */
+    @ExceptionHandler(value = ConstraintViolationException.class)
+    public ResponseEntity<ErrorResponse> handleConstraintViolation(ConstraintViolationException ex, WebRequest request) {
+        ErrorResponse response = new ErrorResponse(
+                ex.getClass().getSimpleName(),
+                ex.getMessage(),
+                ex.getStackTrace().toString(),
+                request.getDescription(false));
+        ex.getConstraintViolations().forEach(violation -> response.addValidationError(violation.getPropertyPath().toString(), violation.getMessage()));
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
     /**
      * handle all uncaught custom exceptions
      * @param ex thrown exception
@@ -0,0 +1,18 @@
+package com.ritazcode.mailtracking.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * custom concurrent update exception, thrown when an element keeps being changed by other requests
+ * and the update can not be applied within the allowed attempts
+ */
+public class ConcurrentUpdateException extends ApiBaseException {
+
+    public ConcurrentUpdateException(String message) {
+        super(message);
+    }
+
+    public HttpStatus getStatusCode() {
+        return HttpStatus.CONFLICT;
+    }
+}
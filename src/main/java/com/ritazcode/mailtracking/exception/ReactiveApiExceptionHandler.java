@@ -0,0 +1,87 @@
+package com.ritazcode.mailtracking.exception;
+
+import com.ritazcode.mailtracking.config.ReactiveConfig;
+import jakarta.validation.ConstraintViolationException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.ServerWebInputException;
+
+/**
+ * exception handling of the reactive controllers, with the same error responses as {@link ApiExceptionHandler}
+ */
+@RestControllerAdvice
+@Profile(ReactiveConfig.PROFILE)
+public class ReactiveApiExceptionHandler {
+
+    /**
+     * handle custom ApiExceptions
+     * @param ex thrown exception
+     * @param exchange current exchange
+     * @return Error response that contains information about the thrown exception
+     */
+    @ExceptionHandler(value = ApiBaseException.class)
+    public ResponseEntity<ErrorResponse> handleApiException(ApiBaseException ex, ServerWebExchange exchange) {
+        return new ResponseEntity<>(errorResponse(ex, exchange), ex.getStatusCode());
+    }
+
+    /**
+     * handle validation errors of request bodies
+     * @param ex thrown exception
+     * @param exchange current exchange
+     * @return Error response that contains information about the thrown exception, with list of detailed info about not valid attribute
+     */
+    @ExceptionHandler(value = WebExchangeBindException.class)
+    public ResponseEntity<ErrorResponse> handleBindException(WebExchangeBindException ex, ServerWebExchange exchange) {
+        ErrorResponse response = errorResponse(ex, exchange);
+        ex.getBindingResult().getFieldErrors().forEach(error -> response.addValidationError(error.getField(), error.getDefaultMessage()));
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * handle validation errors of method parameters (e.g. elements of a list request body)
+     * @param ex thrown exception
+     * @param exchange current exchange
+     * @return Error response that contains information about the thrown exception, with list of detailed info about not valid attribute
+     */
+    @ExceptionHandler(value = ConstraintViolationException.class)
+    public ResponseEntity<ErrorResponse> handleConstraintViolation(ConstraintViolationException ex, ServerWebExchange exchange) {
+        ErrorResponse response = errorResponse(ex, exchange);
+        ex.getConstraintViolations().forEach(violation -> response.addValidationError(violation.getPropertyPath().toString(), violation.getMessage()));
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * handle request parameters and bodies that can not be read
+     * @param ex thrown exception
+     * @param exchange current exchange
+     * @return Error response that contains information about the thrown exception
+     */
+    @ExceptionHandler(value = ServerWebInputException.class)
+    public ResponseEntity<ErrorResponse> handleInputException(ServerWebInputException ex, ServerWebExchange exchange) {
+        return new ResponseEntity<>(errorResponse(ex, exchange), ex.getStatusCode());
+    }
+
+    /**
+     * handle all uncaught custom exceptions
+     * @param ex thrown exception
+     * @param exchange current exchange
+     * @return Error response that contains information about the thrown exception
+     */
+    @ExceptionHandler(value = Exception.class)
+    public ResponseEntity<ErrorResponse> handleException(Exception ex, ServerWebExchange exchange) {
+        return new ResponseEntity<>(errorResponse(ex, exchange), HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private static ErrorResponse errorResponse(Exception ex, ServerWebExchange exchange) {
+        return new ErrorResponse(
+                ex.getClass().getSimpleName(),
+                ex.getMessage(),
+                ex.getStackTrace().toString(),
+                "uri=" + exchange.getRequest().getPath());
+    }
+}
@@ -0,0 +1,17 @@
+package com.ritazcode.mailtracking.exception;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * custom service unavailable exception, thrown when the request can not be accepted now because the service is overloaded
+ */
+public class ServiceUnavailableException extends ApiBaseException {
+
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+
+    public HttpStatus getStatusCode() {
+        return HttpStatus.SERVICE_UNAVAILABLE;
+    }
+}
@@ -2,9 +2,16 @@ package com.ritazcode.mailtracking.mapper;
 
 import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
 import com.ritazcode.mailtracking.entity.HistoryItem;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.repository.HistoryItemRow;
+import com.ritazcode.mailtracking.repository.reactive.HistoryItemView;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Date;
+
 @Mapper(componentModel = "spring")
 
 public interface HistoryItemMapper {
@@ -12,9 +19,28 @@ public interface HistoryItemMapper {
     @Mapping(target = "itemId", source = "item.id")
     @Mapping(target = "type", source = "item.type")
     @Mapping(target = "recipientName", source = "item.recipientName")
-    @Mapping(target = "postOfficeId", source = "item.postOffice.id")
-    @Mapping(target = "postOfficeName", source = "item.postOffice.name")
+    @Mapping(target = "postOfficeId", source = "office.id")
+    @Mapping(target = "postOfficeName", source = "officeName")
     @Mapping(target = "status", source = "status")
     @Mapping(target = "timestamp", source = "timestamp")
     PostalItemHistoryDto HistoryItem_To_PostalItemHistoryDto(HistoryItem historyItem);
+
+    @Mapping(target = "id", source = "historyId")
+    PostalItemHistoryDto HistoryItemRow_To_PostalItemHistoryDto(HistoryItemRow historyItemRow);
+
+    PostalItemHistoryDto HistoryItemView_To_PostalItemHistoryDto(HistoryItemView historyItemView);
+
+    /**
+     * the status of a history record is stored as its ordinal
+     */
+    default ItemStatus ordinal_To_ItemStatus(Integer ordinal) {
+        return ordinal == null ? null : ItemStatus.values()[ordinal];
+    }
+
+    /**
+     * local time of db, read the same way as jdbc reads it, with microseconds
+     */
+    default Date LocalDateTime_To_Date(LocalDateTime timestamp) {
+        return timestamp == null ? null : Timestamp.valueOf(timestamp);
+    }
 }
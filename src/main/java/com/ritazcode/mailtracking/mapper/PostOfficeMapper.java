@@ -4,6 +4,7 @@ import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
 import com.ritazcode.mailtracking.dto.postOffice.ResponsePostOfficeDto;
 import com.ritazcode.mailtracking.dto.postOffice.UpdatePostOfficeDto;
 import com.ritazcode.mailtracking.entity.PostOffice;
+import com.ritazcode.mailtracking.repository.reactive.PostOfficeRecord;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.MappingTarget;
@@ -20,4 +21,11 @@ public interface PostOfficeMapper {
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "postalItems", ignore = true)
     PostOffice CreatePostOfficeDto_To_DbPostOffice(CreatePostOfficeDto newDto);
+
+    ResponsePostOfficeDto PostOfficeRecord_To_ResponsePostOfficeDto(PostOfficeRecord officeRecord);
+
+    @Mapping(target = "id", ignore = true)
+    PostOfficeRecord CreatePostOfficeDto_To_PostOfficeRecord(CreatePostOfficeDto newDto);
+
+    PostOfficeRecord UpdatePostOfficeDto_To_PostOfficeRecord(UpdatePostOfficeDto updatedPostDto);
 }
@@ -4,6 +4,8 @@ import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
 import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
 import com.ritazcode.mailtracking.entity.ItemStatus;
 import com.ritazcode.mailtracking.entity.PostalItem;
+import com.ritazcode.mailtracking.repository.MovedItem;
+import com.ritazcode.mailtracking.repository.reactive.PostalItemRecord;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 
@@ -14,7 +16,22 @@ public interface PostalItemMapper {
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "postOffice", ignore = true)
     @Mapping(target = "history", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "movedAt", ignore = true)
+    @Mapping(target = "registeredAt", ignore = true)
     PostalItem RegisterItemDto_to_PostalItem(RegisterItemDto dto, ItemStatus status);
 
     ResponseItemDto PostalItem_To_ResponseItemDto(PostalItem dbItem);
+
+    ResponseItemDto MovedItem_To_ResponseItemDto(MovedItem movedItem);
+
+    @Mapping(target = "status", source = "status")
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "officeId", ignore = true)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "movedAt", ignore = true)
+    @Mapping(target = "registeredAt", ignore = true)
+    PostalItemRecord RegisterItemDto_to_PostalItemRecord(RegisterItemDto dto, ItemStatus status);
+
+    ResponseItemDto PostalItemRecord_To_ResponseItemDto(PostalItemRecord itemRecord);
 }
@@ -1,14 +1,94 @@
 package com.ritazcode.mailtracking.repository;
 
+import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
 import com.ritazcode.mailtracking.entity.HistoryItem;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
 @Repository
 public interface HistoryItemRepository extends JpaRepository<HistoryItem, Long> {
 
-    Page<HistoryItem> findByItemId(Long itemId, Pageable pageable);
+    /**
+     * a page of the history of a postal item ordered by (timestamp, id), read together with the item
+     * and the count of its history records in a single query. the item row is read and the records are counted once,
+     * not for every record of the page, the history records only need the columns of the history_item index. history_item is partitioned by month,
+     * the records are bound by the registration of the item, so the partitions of the months before it are not read.
+     * no row is returned when the item does not exist, a single row without history when the page is empty
+     *
+     * @param itemId id of postal item
+     * @param limit  page size
+     * @param offset count of records to skip
+     * @return history records of the page
+     */
+    @Query(nativeQuery = true, value = """
+            select p.item_id as "itemId", p.type as "type", p.recipient_name as "recipientName",
+                   h.office_id as "postOfficeId", h.office_name as "postOfficeName",
+                   h.id as "historyId", cast(h.status as integer) as "status", h.timestamp as "timestamp",
+                   c.total as "total"
+            from postal_item p
+            cross join lateral (select count(*) as total
+                                from history_item hc
+                                where hc.item_id = p.item_id
+                                  and hc.timestamp >= p.registered_at) c
+            left join lateral (select hi.id, hi.status, hi.office_id, hi.office_name, hi.timestamp
+                               from history_item hi
+                               where hi.item_id = p.item_id
+                                 and hi.timestamp >= p.registered_at
+                               order by hi.timestamp, hi.id
+                               limit :limit offset :offset) h on true
+            where p.item_id = :itemId
+            order by h.timestamp, h.id""")
+    List<HistoryItemRow> findPageByItemId(@Param("itemId") Long itemId,
+                                          @Param("limit") int limit,
+                                          @Param("offset") long offset);
+
+    /**
+     * keyset page of the history of a postal item ordered by (timestamp, id), no count query is run.
+     * the records are read as DTOs joined with the item in one select, so no item or office is loaded per record.
+     * each record reports the office it was scanned at. the records are bound by the registration of the item,
+     * so the partitions of history_item of the months before it are not read, also on the first page
+     *
+     * @param itemId    id of postal item
+     * @param timestamp time of the last history record of the previous page
+     * @param id        id of the last history record of the previous page
+     * @param pageable  page size
+     * @return history records that come after the passed record
+     */
+    @Query("""
+            select new com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto(
+                h.id, i.id, i.type, i.recipientName, h.status, h.office.id, h.officeName, h.timestamp)
+            from HistoryItem h
+            join h.item i
+            where i.id = :itemId
+              and h.timestamp >= i.registeredAt
+              and (h.timestamp > :timestamp or (h.timestamp = :timestamp and h.id > :id))
+            order by h.timestamp, h.id""")
+    Slice<PostalItemHistoryDto> findByItemIdAfter(@Param("itemId") Long itemId,
+                                                  @Param("timestamp") Date timestamp,
+                                                  @Param("id") Long id,
+                                                  Pageable pageable);
 
+    /**
+     * postal items, statuses and times of the history records of postal items, starting at the passed time,
+     * so only the partitions of history_item from its month on are read
+     *
+     * @param itemIds ids of postal items
+     * @param since   time of the oldest record that is read
+     * @return the records of the items from the passed time on
+     */
+    @Query("""
+            select new com.ritazcode.mailtracking.repository.HistoryRecordKey(h.item.id, h.status, h.timestamp)
+            from HistoryItem h
+            where h.item.id in :itemIds
+              and h.timestamp >= :since""")
+    List<HistoryRecordKey> findKeysByItemIdsSince(@Param("itemIds") Collection<Long> itemIds,
+                                                  @Param("since") Date since);
 }
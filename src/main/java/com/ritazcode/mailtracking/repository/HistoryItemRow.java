@@ -0,0 +1,34 @@
+package com.ritazcode.mailtracking.repository;
+
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+
+import java.util.Date;
+
+/**
+ * a history record of a postal item joined with the item, with the office the record was scanned at
+ * and the name the office had then. the history columns are null when the item exists but the requested page has no records
+ */
+public interface HistoryItemRow {
+
+    Long getItemId();
+
+    ItemType getType();
+
+    String getRecipientName();
+
+    Long getPostOfficeId();
+
+    String getPostOfficeName();
+
+    Long getHistoryId();
+
+    ItemStatus getStatus();
+
+    Date getTimestamp();
+
+    /**
+     * @return count of all history records of the item
+     */
+    long getTotal();
+}
@@ -0,0 +1,9 @@
+package com.ritazcode.mailtracking.repository;
+
+import com.ritazcode.mailtracking.entity.HistoryJournalCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface HistoryJournalRepository extends JpaRepository<HistoryJournalCheckpoint, String> {
+}
@@ -0,0 +1,15 @@
+package com.ritazcode.mailtracking.repository;
+
+import com.ritazcode.mailtracking.entity.ItemStatus;
+
+import java.util.Date;
+
+/**
+ * postal item, status and time of a history record, read without loading the record
+ *
+ * @param itemId    id of postal item
+ * @param status    status of the postal item
+ * @param timestamp time of the move
+ */
+public record HistoryRecordKey(Long itemId, ItemStatus status, Date timestamp) {
+}
@@ -0,0 +1,12 @@
+package com.ritazcode.mailtracking.repository;
+
+import java.util.Date;
+
+/**
+ * time of the latest move of a postal item, read without loading the item
+ *
+ * @param id      id of postal item
+ * @param movedAt time of the latest move, null when the item was not moved yet
+ */
+public record ItemMovedAt(Long id, Date movedAt) {
+}
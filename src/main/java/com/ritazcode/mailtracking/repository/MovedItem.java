@@ -0,0 +1,38 @@
+package com.ritazcode.mailtracking.repository;
+
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+
+import java.util.Date;
+
+/**
+ * a postal item moved by a guarded update, with the post office and the status it was moved from
+ */
+public interface MovedItem {
+
+    Long getId();
+
+    ItemType getType();
+
+    String getRecipientIndex();
+
+    String getRecipientAddress();
+
+    String getRecipientName();
+
+    ItemStatus getStatus();
+
+    Long getPostOfficeId();
+
+    Date getMovedAt();
+
+    /**
+     * @return status of the item before the move
+     */
+    ItemStatus getPreviousStatus();
+
+    /**
+     * @return id of the post office the item was in before the move, null when it was not in any
+     */
+    Long getPreviousPostOfficeId();
+}
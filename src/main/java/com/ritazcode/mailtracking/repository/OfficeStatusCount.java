@@ -0,0 +1,15 @@
+package com.ritazcode.mailtracking.repository;
+
+import com.ritazcode.mailtracking.entity.ItemStatus;
+
+/**
+ * count of the postal items at a post office in a status
+ */
+public interface OfficeStatusCount {
+
+    Long getPostOfficeId();
+
+    ItemStatus getStatus();
+
+    long getItems();
+}
@@ -0,0 +1,31 @@
+package com.ritazcode.mailtracking.repository;
+
+import com.ritazcode.mailtracking.entity.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * locks the oldest outbox events of a share of the postal items, the events that are locked by another
+     * transaction are skipped, so relays of several threads and instances never wait for each other
+     *
+     * @param shares count of shares the postal items are split into by their id
+     * @param share  share of the postal items
+     * @param limit  maximum count of events
+     * @return locked events ordered by id
+     */
+    @Query(nativeQuery = true, value = """
+            select *
+            from outbox_event
+            where mod(item_id, :shares) = :share
+            order by event_id
+            limit :limit
+            for update skip locked""")
+    List<OutboxEvent> lockNextEvents(@Param("shares") int shares, @Param("share") int share, @Param("limit") int limit);
+}
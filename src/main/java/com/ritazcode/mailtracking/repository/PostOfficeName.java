@@ -0,0 +1,10 @@
+package com.ritazcode.mailtracking.repository;
+
+/**
+ * id and name of a post office, read without loading the post office
+ *
+ * @param id   id of post office
+ * @param name name of post office
+ */
+public record PostOfficeName(Long id, String name) {
+}
@@ -1,9 +1,58 @@
 package com.ritazcode.mailtracking.repository;
 
 import com.ritazcode.mailtracking.entity.PostOffice;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface PostOfficeRepository extends JpaRepository<PostOffice, Long> {
+
+    /**
+     * name of the cache of post offices by id, size and expiry are set by spring.cache.caffeine.spec
+     */
+    String CACHE_NAME = "postOffices";
+
+    /**
+     * find a post office by its id, found offices are cached because they are read on every status change
+     * and almost never change. The cached office is shared, so it must not be modified.
+     *
+     * @param id id of post office
+     * @return post office or empty when it is not found (not cached)
+     */
+    @NonNull
+    @Override
+    @Cacheable(cacheNames = CACHE_NAME, unless = "#result == null")
+    Optional<PostOffice> findById(@NonNull Long id);
+
+    /**
+     * name of the cache of post office names by id, size and expiry are set by spring.cache.caffeine.spec
+     */
+    String NAME_CACHE_NAME = "postOfficeNames";
+
+    /**
+     * find the name of a post office without loading it, found names are cached
+     *
+     * @param id id of post office
+     * @return id and name of post office or empty when it is not found (not cached)
+     */
+    @Cacheable(cacheNames = NAME_CACHE_NAME, unless = "#result == null")
+    @Query("select new com.ritazcode.mailtracking.repository.PostOfficeName(o.id, o.name) from PostOffice o where o.id = :id")
+    Optional<PostOfficeName> findNameById(@Param("id") Long id);
+
+    /**
+     * find the names of the passed post offices without loading them
+     *
+     * @param ids ids of post offices
+     * @return ids and names of the post offices that exist
+     */
+    @Query("select new com.ritazcode.mailtracking.repository.PostOfficeName(o.id, o.name) from PostOffice o where o.id in :ids")
+    List<PostOfficeName> findNamesByIds(@Param("ids") Collection<Long> ids);
 }
@@ -1,13 +1,134 @@
 package com.ritazcode.mailtracking.repository;
 
+import com.ritazcode.mailtracking.entity.ItemStatus;
 import com.ritazcode.mailtracking.entity.PostalItem;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface PostalItemRepository extends JpaRepository<PostalItem, Long> {
     Page<PostalItem> findAll(Pageable pageable);
     Page<PostalItem> findAllByPostOfficeId(Long officeId,Pageable pageable);
+
+    /**
+     * keyset page of postal items, no count query is run
+     *
+     * @param id       id of the last item of the previous page
+     * @param pageable page size, sorted by id
+     * @return postal items with a greater id
+     */
+    Slice<PostalItem> findByIdGreaterThan(Long id, Pageable pageable);
+
+    /**
+     * keyset page of postal items that are now in a specific post office, no count query is run
+     *
+     * @param officeId id of post office
+     * @param id       id of the last item of the previous page
+     * @param pageable page size, sorted by id
+     * @return postal items of the office with a greater id
+     */
+    Slice<PostalItem> findByPostOfficeIdAndIdGreaterThan(Long officeId, Long id, Pageable pageable);
+
+    /**
+     * all postal items that are now in a specific post office ordered by id, read from a server-side cursor
+     * in blocks of the fetch size. the items are read only, and the stream must be consumed and closed
+     * in a transaction, the driver reads the whole result at once without it
+     *
+     * @param officeId id of post office
+     * @return stream of the postal items of the office
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")})
+    Stream<PostalItem> streamAllByPostOfficeIdOrderById(Long officeId);
+
+    /**
+     * version of a postal item without loading it, every change of the item increments it
+     *
+     * @param id id of postal item
+     * @return version of the item or empty when it is not found
+     */
+    @Query("select i.version from PostalItem i where i.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    /**
+     * moves the postal item to the post office with the new status and writes its history record and its outbox event,
+     * in a single statement. the item is changed only when it is not received yet, and when it departs,
+     * only from the office it is now in.
+     * the history and outbox ids are taken straight from their sequences, which skips the rest of their blocks of ids.
+     * the item row is locked before it is read, so the move time and the office and status it is moved from
+     * are those of the latest move, and concurrent moves of the item are recorded in their order
+     *
+     * @param itemId   id of postal item
+     * @param officeId id of post office
+     * @param status   new status of the postal item
+     * @return the updated postal item with its previous office and status, empty when the item is not found or it can not be moved
+     */
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            with previous as (
+                select item_id, status, office_id
+                from postal_item
+                where item_id = :itemId
+                for update),
+                 moved as (
+                     update postal_item i
+                     set status    = :#{#status.name()},
+                         office_id = :officeId,
+                         moved_at  = clock_timestamp(),
+                         version   = i.version + 1
+                     from previous p
+                     where i.item_id = p.item_id
+                       and p.status <> 'RECEIVED'
+                       and (:#{#status.name()} <> 'DEPARTED' or p.office_id = :officeId)
+                     returning i.*, p.status as previous_status, p.office_id as previous_office_id),
+                 history as (
+                     insert into history_item (id, item_id, status, timestamp, office_id, office_name)
+                         select nextval('history_item_seq'), m.item_id, :#{#status.ordinal()}, m.moved_at, o.office_id, o.name
+                         from moved m
+                                  join post_office o on o.office_id = m.office_id),
+                 outbox as (
+                     insert into outbox_event (event_id, item_id, status, post_office_id, post_office_name, timestamp)
+                         select nextval('outbox_event_seq'), m.item_id, :#{#status.ordinal()}, o.office_id, o.name, m.moved_at
+                         from moved m
+                                  join post_office o on o.office_id = m.office_id)
+            select m.item_id as "id", m.type as "type", m.recipient_index as "recipientIndex",
+                   m.recipient_address as "recipientAddress", m.recipient_name as "recipientName",
+                   m.status as "status", m.office_id as "postOfficeId", m.moved_at as "movedAt",
+                   m.previous_status as "previousStatus", m.previous_office_id as "previousPostOfficeId"
+            from moved m""")
+    Optional<MovedItem> moveItem(@Param("itemId") Long itemId, @Param("officeId") Long officeId, @Param("status") ItemStatus status);
+
+    /**
+     * count of the postal items at each post office in each status, items that are not at any office are left out
+     *
+     * @return rows of post office id, status and count of items
+     */
+    @Query("select i.postOffice.id as postOfficeId, i.status as status, count(i) as items from PostalItem i "
+            + "where i.postOffice is not null group by i.postOffice.id, i.status")
+    List<OfficeStatusCount> countByOfficeAndStatus();
+
+    /**
+     * times of the latest moves of postal items, without loading the items
+     *
+     * @param ids ids of postal items
+     * @return time of the latest move of each found item
+     */
+    @Query("select new com.ritazcode.mailtracking.repository.ItemMovedAt(i.id, i.movedAt) from PostalItem i where i.id in :ids")
+    List<ItemMovedAt> findMovedAtByIds(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,43 @@
+package com.ritazcode.mailtracking.repository.reactive;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * history_item row of the reactive stack, see {@link com.ritazcode.mailtracking.entity.HistoryItem}
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table("history_item")
+public class HistoryItemRecord {
+
+    @Id
+    Long id;
+
+    Long itemId;
+
+    /**
+     * ordinal of the status, as the blocking stack stores it
+     */
+    Integer status;
+
+    LocalDateTime timestamp;
+
+    /**
+     * post office at which the operation was done, null for registration
+     */
+    Long officeId;
+
+    /**
+     * name of the post office at the time of operation
+     */
+    String officeName;
+}
@@ -0,0 +1,21 @@
+package com.ritazcode.mailtracking.repository.reactive;
+
+import com.ritazcode.mailtracking.entity.ItemType;
+
+import java.time.LocalDateTime;
+
+/**
+ * history record joined with its postal item, as read by the history pages of the reactive stack
+ *
+ * @param id             id of history record
+ * @param itemId         id of postal item
+ * @param type           type of postal item
+ * @param recipientName  recipient name of postal item
+ * @param status         ordinal of the status of the operation
+ * @param postOfficeId   id of post office, null for registration
+ * @param postOfficeName name of post office at the time of operation
+ * @param timestamp      time of operation
+ */
+public record HistoryItemView(Long id, Long itemId, ItemType type, String recipientName, Integer status,
+                              Long postOfficeId, String postOfficeName, LocalDateTime timestamp) {
+}
@@ -0,0 +1,39 @@
+package com.ritazcode.mailtracking.repository.reactive;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * outbox_event row of the reactive stack, see {@link com.ritazcode.mailtracking.entity.OutboxEvent}
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table("outbox_event")
+public class OutboxEventRecord {
+
+    @Id
+    @Column("event_id")
+    Long id;
+
+    Long itemId;
+
+    /**
+     * ordinal of the status, as the blocking stack stores it
+     */
+    Integer status;
+
+    Long postOfficeId;
+
+    String postOfficeName;
+
+    LocalDateTime timestamp;
+}
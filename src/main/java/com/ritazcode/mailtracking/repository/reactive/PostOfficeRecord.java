@@ -0,0 +1,30 @@
+package com.ritazcode.mailtracking.repository.reactive;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * post_office row of the reactive stack, see {@link com.ritazcode.mailtracking.entity.PostOffice}
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table("post_office")
+public class PostOfficeRecord {
+
+    @Id
+    @Column("office_id")
+    Long id;
+
+    String index;
+
+    String name;
+
+    String address;
+}
@@ -0,0 +1,58 @@
+package com.ritazcode.mailtracking.repository.reactive;
+
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * postal_item row of the reactive stack, see {@link com.ritazcode.mailtracking.entity.PostalItem}.
+ * the office is referenced only by its id
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table("postal_item")
+public class PostalItemRecord {
+
+    @Id
+    @Column("item_id")
+    Long id;
+
+    ItemType type;
+
+    String recipientIndex;
+
+    String recipientAddress;
+
+    String recipientName;
+
+    ItemStatus status;
+
+    Long officeId;
+
+    /**
+     * time of the registration, no history record of the item is older than it
+     */
+    LocalDateTime registeredAt;
+
+    /**
+     * time of the latest move, every move changes it, so a move that keeps the office and status is still checked against the version
+     */
+    LocalDateTime movedAt;
+
+    /**
+     * incremented on every update, shared with the version of the blocking stack
+     */
+    @Version
+    Long version;
+}
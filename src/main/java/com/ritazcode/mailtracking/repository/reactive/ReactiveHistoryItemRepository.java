@@ -0,0 +1,81 @@
+package com.ritazcode.mailtracking.repository.reactive;
+
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface ReactiveHistoryItemRepository extends R2dbcRepository<HistoryItemRecord, Long> {
+
+    /**
+     * count of the history records of a postal item, bound by the registration of the item
+     * like the pages, so the partitions of history_item of the months before it are not read
+     *
+     * @param itemId id of postal item
+     * @return count of history records
+     */
+    @Query("""
+            select count(*)
+            from history_item h
+            join postal_item i on i.item_id = h.item_id
+            where h.item_id = :itemId
+              and h.timestamp >= i.registered_at""")
+    Mono<Long> countByItemId(@Param("itemId") Long itemId);
+
+    /**
+     * a page of the history of a postal item ordered by (timestamp, id), joined with the item.
+     * the records are bound by the registration of the item, so the partitions of history_item of the months before it are not read
+     *
+     * @param itemId id of postal item
+     * @param limit  page size
+     * @param offset count of records to skip
+     * @return history records of the page
+     */
+    @Query("""
+            select h.id, h.item_id, i.type, i.recipient_name, h.status,
+                   h.office_id as post_office_id, h.office_name as post_office_name, h.timestamp
+            from history_item h
+            join postal_item i on i.item_id = h.item_id
+            where h.item_id = :itemId
+              and h.timestamp >= i.registered_at
+            order by h.timestamp, h.id
+            limit :limit offset :offset""")
+    Flux<HistoryItemView> findPageByItemId(@Param("itemId") Long itemId,
+                                           @Param("limit") int limit,
+                                           @Param("offset") long offset);
+
+    /**
+     * keyset page of the history of a postal item ordered by (timestamp, id), joined with the item
+     *
+     * @param itemId    id of postal item
+     * @param timestamp time of the last history record of the previous page
+     * @param id        id of the last history record of the previous page
+     * @param limit     page size
+     * @return history records that come after the passed record
+     */
+    @Query("""
+            select h.id, h.item_id, i.type, i.recipient_name, h.status,
+                   h.office_id as post_office_id, h.office_name as post_office_name, h.timestamp
+            from history_item h
+            join postal_item i on i.item_id = h.item_id
+            where h.item_id = :itemId
+              and h.timestamp >= i.registered_at
+              and (h.timestamp > :timestamp or (h.timestamp = :timestamp and h.id > :id))
+            order by h.timestamp, h.id
+            limit :limit""")
+    Flux<HistoryItemView> findByItemIdAfter(@Param("itemId") Long itemId,
+                                            @Param("timestamp") LocalDateTime timestamp,
+                                            @Param("id") long id,
+                                            @Param("limit") int limit);
+
+    /**
+     * id of a new history record, taken straight from the sequence, which skips the rest of its block of ids
+     */
+    @Query("select nextval('history_item_seq')")
+    Mono<Long> nextId();
+}
@@ -0,0 +1,16 @@
+package com.ritazcode.mailtracking.repository.reactive;
+
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ReactiveOutboxEventRepository extends R2dbcRepository<OutboxEventRecord, Long> {
+
+    /**
+     * id of a new outbox event, taken straight from the sequence, which skips the rest of its block of ids
+     */
+    @Query("select nextval('outbox_event_seq')")
+    Mono<Long> nextId();
+}
@@ -0,0 +1,51 @@
+package com.ritazcode.mailtracking.repository.reactive;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ReactivePostalItemRepository extends R2dbcRepository<PostalItemRecord, Long> {
+
+    Flux<PostalItemRecord> findAllBy(Pageable pageable);
+
+    Flux<PostalItemRecord> findAllByOfficeId(Long officeId, Pageable pageable);
+
+    Mono<Long> countByOfficeId(Long officeId);
+
+    /**
+     * keyset page of postal items, no count query is run
+     *
+     * @param id       id of the last item of the previous page
+     * @param pageable page size, sorted by id
+     * @return postal items with a greater id
+     */
+    Flux<PostalItemRecord> findByIdGreaterThan(Long id, Pageable pageable);
+
+    /**
+     * keyset page of postal items that are now in a specific post office, no count query is run
+     *
+     * @param officeId id of post office
+     * @param id       id of the last item of the previous page
+     * @param pageable page size, sorted by id
+     * @return postal items of the office with a greater id
+     */
+    Flux<PostalItemRecord> findByOfficeIdAndIdGreaterThan(Long officeId, Long id, Pageable pageable);
+
+    /**
+     * all postal items that are now in a specific post office ordered by id, the rows are read as they are requested
+     *
+     * @param officeId id of post office
+     * @return postal items of the office
+     */
+    Flux<PostalItemRecord> findAllByOfficeIdOrderById(Long officeId);
+
+    /**
+     * id of a new postal item, taken straight from the sequence, which skips the rest of its block of ids
+     */
+    @Query("select nextval('postal_item_seq')")
+    Mono<Long> nextId();
+}
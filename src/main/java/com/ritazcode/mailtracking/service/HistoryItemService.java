@@ -1,33 +1,61 @@
 package com.ritazcode.mailtracking.service;
 
+import com.ritazcode.mailtracking.dto.CursorPageDto;
 import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
-import com.ritazcode.mailtracking.entity.PostalItem;
 import com.ritazcode.mailtracking.exception.BadAttributeValueException;
-import com.ritazcode.mailtracking.exception.NoSuchElementException;
 import com.ritazcode.mailtracking.mapper.HistoryItemMapper;
 import com.ritazcode.mailtracking.repository.HistoryItemRepository;
-import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import com.ritazcode.mailtracking.repository.HistoryItemRow;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
 
 @Service
 @RequiredArgsConstructor
 public class HistoryItemService {
     private final HistoryItemRepository repository;
     private final HistoryItemMapper mapper;
-    private final PostalItemRepository postalItemRepository;
 
-    Page<PostalItemHistoryDto> findByItemId(Long itemId, PageRequest pageRequest) {
+    /**
+     * page of the history of a postal item ordered by time of operation,
+     * the item existence, the page and the total count are read by a single query
+     *
+     * @param itemId      id of postal item
+     * @param pageRequest contains page number and page size
+     * @return page of history records, empty when the postal item is not found
+     */
+    Optional<Page<PostalItemHistoryDto>> findByItemId(Long itemId, PageRequest pageRequest) {
         if (itemId == null)
             throw new BadAttributeValueException("postal item id is not valid");
-        Optional<PostalItem> item = postalItemRepository.findById(itemId);
-        if (item.isEmpty())
-            throw new NoSuchElementException(String.format("postal item  with id (%s) is not found", itemId));
-        return repository.findByItemId(itemId, pageRequest).map(mapper::HistoryItem_To_PostalItemHistoryDto);
+        List<HistoryItemRow> rows = repository.findPageByItemId(itemId, pageRequest.getPageSize(), pageRequest.getOffset());
+        if (rows.isEmpty())
+            return Optional.empty();
+        List<PostalItemHistoryDto> content = rows.stream()
+                .filter(row -> row.getHistoryId() != null)
+                .map(mapper::HistoryItemRow_To_PostalItemHistoryDto)
+                .toList();
+        return Optional.of(new PageImpl<>(content, pageRequest, rows.get(0).getTotal()));
+    }
+
+    /**
+     * keyset page of the history of a postal item, ordered by time of operation
+     *
+     * @param itemId id of an existing postal item
+     * @param after  cursor of the last history record of the previous page
+     * @param limit  count of records in a page
+     * @return history records that come after the cursor
+     */
+    CursorPageDto<PostalItemHistoryDto> findByItemIdAfter(Long itemId, KeysetCursor after, int limit) {
+        return KeysetCursor.page(
+                repository.findByItemIdAfter(itemId, after.timestamp(), after.id(), PageRequest.of(0, limit)),
+                Function.identity(),
+                historyItem -> new KeysetCursor(historyItem.getTimestamp(), historyItem.getId()));
     }
 
 }
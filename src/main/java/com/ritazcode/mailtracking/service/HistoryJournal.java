@@ -0,0 +1,274 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.entity.ItemStatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * local append-only journal of history records that are not written to db yet.
+ * the journal is split in segments, each one named after the sequence of its first entry,
+ * a segment is deleted once all its entries are written to db.
+ * an entry is a single line, a line that was cut by a crash is ignored when the journal is read.
+ * the entries of a move that is rolled back are followed by abort markers, such entries are not read back
+ */
+class HistoryJournal implements Closeable {
+
+    static final String PARKED_SUFFIX = ".parked";
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String SEPARATOR = ";";
+    private static final String ABORTED = "ABORTED";
+
+    /**
+     * history record of a move in the journal
+     *
+     * @param sequence   position of the entry in the journal, entries are written to db in this order
+     * @param itemId     id of postal item
+     * @param status     new status of the postal item
+     * @param timestamp  time of the move
+     * @param officeId   id of post office
+     * @param officeName name of post office at the time of the move
+     */
+    record Entry(long sequence, Long itemId, ItemStatus status, Date timestamp, Long officeId, String officeName) {
+    }
+
+    /**
+     * history record that can not be appended to the journal, with the sequence it used up
+     */
+    static class AppendException extends IOException {
+
+        private final transient Entry entry;
+
+        AppendException(Entry entry, IOException cause) {
+            super(String.format("history journal entry (%s) can not be appended", entry.sequence()), cause);
+            this.entry = entry;
+        }
+
+        Entry getEntry() {
+            return entry;
+        }
+    }
+
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean fsync;
+
+    private FileChannel segment;
+    private long nextSequence;
+
+    HistoryJournal(Path directory, long segmentSize, boolean fsync) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+    }
+
+    /**
+     * reads the journal and starts a new segment for the next entries
+     *
+     * @param flushedSequence sequence of the last entry that is written to db
+     * @return entries after the flushed one, in the journal order
+     */
+    synchronized List<Entry> open(long flushedSequence) throws IOException {
+        Files.createDirectories(directory);
+        List<Entry> pending = new ArrayList<>();
+        Set<Long> aborted = new HashSet<>();
+        long lastSequence = flushedSequence;
+        for (Path path : segments()) {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                Long abortedSequence = parseAborted(line);
+                if (abortedSequence != null) {
+                    aborted.add(abortedSequence);
+                    continue;
+                }
+                Entry entry = parse(line);
+                if (entry == null)
+                    continue;
+                lastSequence = Math.max(lastSequence, entry.sequence());
+                if (entry.sequence() > flushedSequence)
+                    pending.add(entry);
+            }
+        }
+        pending.removeIf(entry -> aborted.contains(entry.sequence()));
+        nextSequence = lastSequence + 1;
+        startSegment();
+        release(flushedSequence);
+        return pending;
+    }
+
+    /**
+     * appends a history record to the journal. the sequence is used up also when the append fails, so no two entries
+     * share a sequence, and the next entries go to a new segment, so a line that was cut does not hide them
+     *
+     * @return appended entry with its sequence
+     * @throws AppendException when the entry can not be written, it holds the entry with its sequence
+     */
+    synchronized Entry append(Long itemId, ItemStatus status, Date timestamp, Long officeId, String officeName) throws AppendException {
+        Entry entry = new Entry(nextSequence, itemId, status, timestamp, officeId, officeName);
+        try {
+            if (segment.size() >= segmentSize)
+                startSegment();
+            ByteBuffer line = ByteBuffer.wrap(format(entry).getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining())
+                segment.write(line);
+            if (fsync)
+                segment.force(false);
+        } catch (IOException ex) {
+            nextSequence++;
+            try {
+                startSegment();
+            } catch (IOException segmentEx) {
+                ex.addSuppressed(segmentEx);
+            }
+            throw new AppendException(entry, ex);
+        }
+        nextSequence++;
+        return entry;
+    }
+
+    /**
+     * appends abort markers of entries, the entries are not read back by {@link #open}
+     *
+     * @param entries entries of a move that is rolled back, or that was not committed before a crash
+     */
+    synchronized void abort(List<Entry> entries) throws IOException {
+        if (entries.isEmpty())
+            return;
+        String lines = entries.stream()
+                .map(entry -> String.join(SEPARATOR, String.valueOf(entry.sequence()), ABORTED, "") + "\n")
+                .collect(Collectors.joining());
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining())
+            segment.write(buffer);
+        if (fsync)
+            segment.force(false);
+    }
+
+    /**
+     * @return sequence of the last appended entry
+     */
+    synchronized long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * writes entries that can not be written to db to a file of their own next to the segments,
+     * parked entries are not read back by {@link #open}, they are left to be written by hand
+     *
+     * @param entries entries that are parked
+     * @return file of the parked entries
+     */
+    synchronized Path park(List<Entry> entries) throws IOException {
+        Path file = directory.resolve(String.format("%020d%s", entries.get(0).sequence(), PARKED_SUFFIX));
+        Files.writeString(file, entries.stream().map(HistoryJournal::format).collect(Collectors.joining()), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return file;
+    }
+
+    /**
+     * deletes the segments of which all entries are written to db, the current segment is kept
+     *
+     * @param flushedSequence sequence of the last entry that is written to db
+     */
+    synchronized void release(long flushedSequence) throws IOException {
+        List<Path> segments = segments();
+        for (int i = 0; i < segments.size() - 1; i++) {
+            //the entries of a segment end right before the first entry of the next one
+            if (start(segments.get(i + 1)) - 1 <= flushedSequence)
+                Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (segment != null)
+            segment.close();
+    }
+
+    private void startSegment() throws IOException {
+        if (segment != null)
+            segment.close();
+        segment = FileChannel.open(directory.resolve(String.format("%020d%s", nextSequence, SEGMENT_SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @return segments ordered by the sequence of their first entry
+     */
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long start(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static String format(Entry entry) {
+        Timestamp timestamp = entry.timestamp() instanceof Timestamp exact ? exact : new Timestamp(entry.timestamp().getTime());
+        return String.join(SEPARATOR,
+                String.valueOf(entry.sequence()),
+                String.valueOf(entry.itemId()),
+                entry.status().name(),
+                String.valueOf(Math.floorDiv(timestamp.getTime(), 1000L)),
+                String.valueOf(timestamp.getNanos()),
+                entry.officeId() == null ? "" : String.valueOf(entry.officeId()),
+                entry.officeName() == null ? "" : Base64.getUrlEncoder().encodeToString(entry.officeName().getBytes(StandardCharsets.UTF_8)),
+                //the trailing separator marks a complete line
+                "") + "\n";
+    }
+
+    /**
+     * @return sequence of the entry that the abort marker of the line refers to, null when the line is not an abort marker
+     */
+    private static Long parseAborted(String line) {
+        String[] parts = line.split(SEPARATOR, -1);
+        if (parts.length != 3 || !ABORTED.equals(parts[1]))
+            return null;
+        try {
+            return Long.parseLong(parts[0]);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return entry of the line, null when the line was not written completely
+     */
+    private static Entry parse(String line) {
+        String[] parts = line.split(SEPARATOR, -1);
+        if (parts.length != 8)
+            return null;
+        try {
+            Timestamp timestamp = new Timestamp(Long.parseLong(parts[3]) * 1000L);
+            timestamp.setNanos(Integer.parseInt(parts[4]));
+            return new Entry(Long.parseLong(parts[0]),
+                    Long.parseLong(parts[1]),
+                    ItemStatus.valueOf(parts[2]),
+                    timestamp,
+                    parts[5].isEmpty() ? null : Long.parseLong(parts[5]),
+                    parts[6].isEmpty() ? null : new String(Base64.getUrlDecoder().decode(parts[6]), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
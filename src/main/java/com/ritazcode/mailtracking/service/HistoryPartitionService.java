@@ -0,0 +1,287 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * keeps the monthly partitions of history_item, see the V7 migration. every myConfig.tracking.history.partitions.maintenance-interval
+ * the partitions of the current month and of the next months-ahead months are created, so no history record falls
+ * into history_item_default, and the partitions of the months older than the retention are detached,
+ * so old history is removed without deleting its rows one by one.
+ * every partition is created in its own transaction, so a month that can not be created does not keep the next months
+ * from being created. records that were written to history_item_default, because the partition of their month
+ * was missing, are moved to the partition of their month when it is created.
+ * the instances take an advisory lock for the maintenance, so they do not create or detach the same partition.
+ * a partition is detached with a short lock of history_item, it is not detached concurrently,
+ * which postgres does not allow while there is a default partition.
+ * created and detached partitions are exposed as tracking.history.partitions.created and tracking.history.partitions.detached,
+ * months whose partition can not be created as tracking.history.partitions.failed and the records that are left
+ * in history_item_default as tracking.history.partitions.default.rows
+ */
+@Slf4j
+@Service
+public class HistoryPartitionService {
+
+    static final String CREATED_METRIC = "tracking.history.partitions.created";
+    static final String DETACHED_METRIC = "tracking.history.partitions.detached";
+    static final String FAILED_METRIC = "tracking.history.partitions.failed";
+    static final String DEFAULT_ROWS_METRIC = "tracking.history.partitions.default.rows";
+    static final String PARTITION_PREFIX = "history_item_p";
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final String MAINTENANCE_LOCK = "history_item_partitions";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TrackingProperties properties;
+    private final Counter created;
+    private final Counter detached;
+    private final Counter failed;
+    private final AtomicLong defaultRows = new AtomicLong();
+
+    private ScheduledExecutorService maintainer;
+
+    public HistoryPartitionService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                   TrackingProperties properties, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.properties = properties;
+        this.created = Counter.builder(CREATED_METRIC)
+                .description("monthly partitions of history_item that are created in advance")
+                .register(meterRegistry);
+        this.detached = Counter.builder(DETACHED_METRIC)
+                .description("monthly partitions of history_item that are detached after the retention")
+                .register(meterRegistry);
+        this.failed = Counter.builder(FAILED_METRIC)
+                .description("monthly partitions of history_item that can not be created")
+                .register(meterRegistry);
+        Gauge.builder(DEFAULT_ROWS_METRIC, defaultRows, AtomicLong::get)
+                .description("history records in history_item_default, which are outside of every monthly partition")
+                .register(meterRegistry);
+    }
+
+    /**
+     * starts the maintenance, the first one runs at once
+     */
+    @PostConstruct
+    void start() {
+        long interval = properties.getHistory().getPartitions().getMaintenanceInterval().toMillis();
+        if (interval <= 0)
+            return;
+        maintainer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "history-partitions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintainer.scheduleWithFixedDelay(this::maintainSafely, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (maintainer != null)
+            maintainer.shutdownNow();
+    }
+
+    /**
+     * creates the missing partitions of the month of the passed day, of the next months-ahead months and of the months
+     * that have records in history_item_default. a month that can not be created is logged and counted,
+     * the next months are still created
+     *
+     * @param today current day
+     * @return names of created partitions
+     */
+    List<String> createPartitions(LocalDate today) {
+        Set<YearMonth> months = new TreeSet<>(defaultMonths());
+        YearMonth current = YearMonth.from(today);
+        for (int ahead = 0; ahead <= properties.getHistory().getPartitions().getMonthsAhead(); ahead++)
+            months.add(current.plusMonths(ahead));
+        List<String> names = new ArrayList<>();
+        for (YearMonth month : months) {
+            try {
+                if (createPartition(month))
+                    names.add(partitionName(month));
+            } catch (RuntimeException ex) {
+                failed.increment();
+                log.error("partition {} of history_item can not be created", partitionName(month), ex);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * creates the partition of the month in its own transaction. postgres does not create it while history_item_default
+     * has records of the month, then history_item_default is detached, the partition is created, the records are moved
+     * to it and history_item_default is attached again. history_item stays locked until the transaction ends,
+     * so no record is written meanwhile
+     *
+     * @return false when the partition exists
+     */
+    private boolean createPartition(YearMonth month) {
+        String name = partitionName(month);
+        LocalDateTime from = month.atDay(1).atStartOfDay();
+        LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+        return inMaintenanceTransaction(partitions -> {
+            if (partitions.contains(name))
+                return false;
+            boolean misplaced = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "select exists (select 1 from history_item_default where timestamp >= ? and timestamp < ?)",
+                    Boolean.class, from, to));
+            if (misplaced)
+                jdbcTemplate.execute("alter table history_item detach partition history_item_default");
+            jdbcTemplate.execute(String.format("create table %s partition of history_item for values from ('%s') to ('%s')",
+                    name, from.toLocalDate(), to.toLocalDate()));
+            if (misplaced) {
+                int moved = jdbcTemplate.update("""
+                        with moved as (
+                            delete from history_item_default where timestamp >= ? and timestamp < ?
+                            returning id, item_id, status, timestamp, office_id, office_name)
+                        insert into history_item (id, item_id, status, timestamp, office_id, office_name)
+                        select id, item_id, status, timestamp, office_id, office_name from moved""", from, to);
+                jdbcTemplate.execute("alter table history_item attach partition history_item_default default");
+                log.warn("{} history records are moved from history_item_default to the created partition {}", moved, name);
+            }
+            created.increment();
+            return true;
+        });
+    }
+
+    /**
+     * @return months of the records in history_item_default
+     */
+    private List<YearMonth> defaultMonths() {
+        return jdbcTemplate.queryForList("select distinct to_char(timestamp, 'YYYYMM') from history_item_default", String.class)
+                .stream()
+                .map(month -> YearMonth.parse(month, MONTH))
+                .toList();
+    }
+
+    /**
+     * counts the records that are left in history_item_default and exposes them as tracking.history.partitions.default.rows
+     *
+     * @return number of the records
+     */
+    long countDefaultRows() {
+        Long rows = jdbcTemplate.queryForObject("select count(*) from history_item_default", Long.class);
+        defaultRows.set(rows == null ? 0 : rows);
+        return defaultRows.get();
+    }
+
+    /**
+     * detaches the partitions of the months that ended before the retention, and drops them in the drop archive mode
+     *
+     * @param today current day
+     * @return names of detached partitions
+     */
+    List<String> detachPartitions(LocalDate today) {
+        TrackingProperties.Partitions settings = properties.getHistory().getPartitions();
+        if (settings.getRetention().isZero())
+            return List.of();
+        LocalDate keptFrom = today.minus(settings.getRetention());
+        return inMaintenanceTransaction(partitions -> {
+            List<String> names = new ArrayList<>();
+            for (String name : partitions) {
+                YearMonth month = partitionMonth(name);
+                if (month == null || month.plusMonths(1).atDay(1).isAfter(keptFrom))
+                    continue;
+                jdbcTemplate.execute("alter table history_item detach partition " + name);
+                if (settings.getArchiveMode() == TrackingProperties.PartitionArchiveMode.DROP)
+                    jdbcTemplate.execute("drop table " + name);
+                names.add(name);
+            }
+            detached.increment(names.size());
+            return names;
+        });
+    }
+
+    private void maintainSafely() {
+        LocalDate today = LocalDate.now();
+        try {
+            List<String> names = createPartitions(today);
+            if (!names.isEmpty())
+                log.info("partitions {} of history_item are created", names);
+        } catch (RuntimeException ex) {
+            log.warn("partitions of history_item can not be created", ex);
+        }
+        try {
+            long rows = countDefaultRows();
+            if (rows > 0)
+                log.error("{} history records are left in history_item_default, outside of every monthly partition", rows);
+        } catch (RuntimeException ex) {
+            log.warn("history records of history_item_default can not be counted", ex);
+        }
+        try {
+            List<String> names = detachPartitions(today);
+            if (!names.isEmpty())
+                log.info("partitions {} of history_item are detached", names);
+        } catch (RuntimeException ex) {
+            log.warn("partitions of history_item can not be detached", ex);
+        }
+    }
+
+    /**
+     * runs a maintenance step in a transaction that holds the maintenance lock and waits for the locks of history_item
+     * no longer than myConfig.tracking.history.partitions.lock-timeout
+     *
+     * @param step gets the names of the current partitions
+     * @return result of the step
+     */
+    private <T> T inMaintenanceTransaction(Function<Set<String>, T> step) {
+        return transactionTemplate.execute(status -> {
+            jdbcTemplate.queryForList("select pg_advisory_xact_lock(hashtext(?))", MAINTENANCE_LOCK);
+            jdbcTemplate.execute(String.format("set local lock_timeout = %d",
+                    properties.getHistory().getPartitions().getLockTimeout().toMillis()));
+            return step.apply(partitions());
+        });
+    }
+
+    /**
+     * @return names of the partitions of history_item, in the order of their months
+     */
+    private Set<String> partitions() {
+        return new TreeSet<>(jdbcTemplate.queryForList("""
+                select c.relname
+                from pg_inherits i
+                join pg_class c on c.oid = i.inhrelid
+                where i.inhparent = 'history_item'::regclass""", String.class));
+    }
+
+    static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + MONTH.format(month);
+    }
+
+    /**
+     * @return month of the partition or null when it is not a monthly partition, like history_item_default
+     */
+    static YearMonth partitionMonth(String name) {
+        if (!name.startsWith(PARTITION_PREFIX))
+            return null;
+        try {
+            return YearMonth.parse(name.substring(PARTITION_PREFIX.length()), MONTH);
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+}
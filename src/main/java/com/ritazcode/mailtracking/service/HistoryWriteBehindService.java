@@ -0,0 +1,433 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.config.TrackingProperties.HistoryWriteMode;
+import com.ritazcode.mailtracking.entity.HistoryItem;
+import com.ritazcode.mailtracking.entity.HistoryJournalCheckpoint;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.exception.ServiceUnavailableException;
+import com.ritazcode.mailtracking.repository.HistoryItemRepository;
+import com.ritazcode.mailtracking.repository.HistoryJournalRepository;
+import com.ritazcode.mailtracking.repository.PostOfficeRepository;
+import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * writes the history records of moved items behind the moves, when myConfig.tracking.history.write-mode is write-behind.
+ * a move reserves space in a bounded buffer before its transaction commits, and waits when the buffer is full.
+ * the records are appended to a local {@link HistoryJournal} right before the move commits, a move whose records
+ * can not be journaled is rolled back. once the move is committed its records are added to the buffer,
+ * and a move that is rolled back marks its records as aborted in the journal.
+ * a background flusher writes the buffered records to db in large batches, together with the checkpoint of the journal,
+ * the sequence up to which every entry is written or aborted. concurrent moves commit in any order,
+ * so the checkpoint stays before the first entry of a move that is not done yet.
+ * on startup the entries after the checkpoint are read back from the journal and written first. the entries that are
+ * written to db already are skipped, and the entries of a move that was not committed before a crash are aborted,
+ * such a move did not change the moved_at time of its item.
+ * the journal survives a crash of the machine only with myConfig.tracking.history.journal.fsync.
+ * a batch that fails myConfig.tracking.history.max-flush-attempts times is written one record at a time,
+ * the records that still fail are parked in a file of the journal directory and logged as errors
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class HistoryWriteBehindService {
+
+    private static final String SEPARATOR = ";";
+
+    private final TrackingProperties properties;
+    private final HistoryItemRepository historyItemRepository;
+    private final HistoryJournalRepository journalRepository;
+    private final PostalItemRepository itemRepository;
+    private final PostOfficeRepository postOfficeRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final BlockingQueue<HistoryJournal.Entry> buffer = new LinkedBlockingQueue<>();
+    /**
+     * sequences of the journaled entries that are neither written to db nor aborted
+     */
+    private final TreeSet<Long> unresolved = new TreeSet<>();
+    private Semaphore capacity;
+    private HistoryJournal journal;
+    private Thread flusher;
+    private volatile boolean running;
+
+    /**
+     * @return true if the history records are written behind the moves
+     */
+    public boolean isEnabled() {
+        return properties.getHistory().getWriteMode() == HistoryWriteMode.WRITE_BEHIND;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        if (!isEnabled())
+            return;
+        TrackingProperties.History history = properties.getHistory();
+        if (history.getBufferCapacity() < properties.getScan().getMaxBatchSize())
+            throw new IllegalStateException(String.format("history buffer capacity (%s) can not hold a scan batch (%s)",
+                    history.getBufferCapacity(), properties.getScan().getMaxBatchSize()));
+        capacity = new Semaphore(history.getBufferCapacity(), true);
+        long checkpoint = journalRepository.findById(history.getJournal().getName())
+                .map(HistoryJournalCheckpoint::getFlushedSequence)
+                .orElse(0L);
+        journal = new HistoryJournal(history.getJournal().getDirectory(),
+                history.getJournal().getSegmentSize().toBytes(), history.getJournal().isFsync());
+        List<HistoryJournal.Entry> pending = replay(journal.open(checkpoint));
+        //the replayed entries are written first, they do not wait for space in the buffer
+        pending.forEach(entry -> unresolved.add(entry.sequence()));
+        buffer.addAll(pending);
+        running = true;
+        flusher = new Thread(this::flushLoop, "history-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * writes what is in the buffer and stops the flusher, what can not be written is left in the journal
+     */
+    @PreDestroy
+    void stop() throws IOException, InterruptedException {
+        if (flusher == null)
+            return;
+        running = false;
+        flusher.join(properties.getHistory().getAppendTimeout().toMillis());
+        journal.close();
+    }
+
+    /**
+     * reserves space for the history records of moves in the current transaction, the records are journaled
+     * before the transaction commits and buffered once it is committed
+     *
+     * @param history history records of the moved items, the items are already flushed
+     * @throws ServiceUnavailableException when there is no space for the records in time or they can not be journaled,
+     *                                     then the transaction is rolled back
+     */
+    public void append(List<HistoryItem> history) {
+        if (history.isEmpty())
+            return;
+        reserve(history.size());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<HistoryJournal.Entry> entries = new ArrayList<>(history.size());
+            try {
+                journal(history, entries);
+            } catch (RuntimeException ex) {
+                abort(entries);
+                capacity.release(history.size());
+                throw ex;
+            }
+            buffer.addAll(entries);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private final List<HistoryJournal.Entry> entries = new ArrayList<>(history.size());
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                journal(history, entries);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    buffer.addAll(entries);
+                    return;
+                }
+                if (status == STATUS_UNKNOWN) {
+                    //the commit may have failed after db committed it, the moved items tell which records are kept
+                    Set<HistoryJournal.Entry> committed = new HashSet<>(committed(entries));
+                    abort(entries.stream().filter(entry -> !committed.contains(entry)).toList());
+                    capacity.release(history.size() - committed.size());
+                    buffer.addAll(committed);
+                    return;
+                }
+                abort(entries);
+                capacity.release(history.size());
+            }
+        });
+    }
+
+    /**
+     * waits until all the appended history records are written to db
+     *
+     * @param timeout maximum time to wait
+     * @return true if all the records are written
+     */
+    boolean awaitFlushed(Duration timeout) throws InterruptedException {
+        long target = journal.lastSequence();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (checkpoint(List.of()) < target) {
+            if (System.nanoTime() > deadline)
+                return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private void reserve(int count) {
+        try {
+            if (capacity.tryAcquire(count, properties.getHistory().getAppendTimeout().toMillis(), TimeUnit.MILLISECONDS))
+                return;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        throw new ServiceUnavailableException("history of moved items is not written fast enough, try again");
+    }
+
+    /**
+     * appends the history records to the journal, the appended entries are added to the passed list
+     * also when a later record fails, so they can be aborted
+     */
+    private void journal(List<HistoryItem> history, List<HistoryJournal.Entry> entries) {
+        for (HistoryItem historyItem : history) {
+            try {
+                synchronized (unresolved) {
+                    HistoryJournal.Entry entry = journal.append(historyItem.getItem().getId(), historyItem.getStatus(),
+                            historyItem.getTimestamp(), historyItem.getOffice() == null ? null : historyItem.getOffice().getId(),
+                            historyItem.getOfficeName());
+                    unresolved.add(entry.sequence());
+                    entries.add(entry);
+                }
+            } catch (IOException ex) {
+                log.error("history journal can not be written", ex);
+                throw new ServiceUnavailableException("history of moved items can not be journaled, try again");
+            }
+        }
+    }
+
+    /**
+     * marks the entries of a move that is not committed as aborted, so they are not read back from the journal
+     */
+    private void abort(List<HistoryJournal.Entry> entries) {
+        if (entries.isEmpty())
+            return;
+        try {
+            journal.abort(entries);
+        } catch (IOException ex) {
+            //the entries are read back on startup, where the moved items tell that they were not committed
+            log.error("history journal entries {} can not be marked as aborted", entries, ex);
+        }
+        resolve(entries);
+    }
+
+    private void resolve(List<HistoryJournal.Entry> entries) {
+        synchronized (unresolved) {
+            entries.forEach(entry -> unresolved.remove(entry.sequence()));
+        }
+    }
+
+    /**
+     * @param written entries that are written to db with the checkpoint
+     * @return sequence up to which every journal entry is written to db or aborted, once the passed entries are written
+     */
+    private long checkpoint(List<HistoryJournal.Entry> written) {
+        Set<Long> writtenSequences = written.stream().map(HistoryJournal.Entry::sequence).collect(Collectors.toSet());
+        synchronized (unresolved) {
+            for (Long sequence : unresolved) {
+                if (!writtenSequences.contains(sequence))
+                    return sequence - 1;
+            }
+            return journal.lastSequence();
+        }
+    }
+
+    /**
+     * checks the entries that are read back from the journal on startup. the entries that are written to db already
+     * are skipped, and the entries of moves that were not committed before a crash are aborted,
+     * the moved_at time of their items is older than the entries, or the items do not exist
+     *
+     * @param pending entries after the checkpoint
+     * @return entries that are still to be written, in the journal order
+     */
+    private List<HistoryJournal.Entry> replay(List<HistoryJournal.Entry> pending) throws IOException {
+        List<HistoryJournal.Entry> committed = committed(pending);
+        Set<HistoryJournal.Entry> kept = new HashSet<>(committed);
+        List<HistoryJournal.Entry> aborted = pending.stream().filter(entry -> !kept.contains(entry)).toList();
+        journal.abort(aborted);
+        Set<String> written = new HashSet<>();
+        for (List<HistoryJournal.Entry> chunk : chunks(committed)) {
+            Date since = chunk.stream().map(HistoryJournal.Entry::timestamp).min(Date::compareTo).orElseThrow();
+            historyItemRepository.findKeysByItemIdsSince(chunk.stream().map(HistoryJournal.Entry::itemId).collect(Collectors.toSet()), since)
+                    .forEach(key -> written.add(recordKey(key.itemId(), key.status(), key.timestamp())));
+        }
+        List<HistoryJournal.Entry> replayed = committed.stream()
+                .filter(entry -> !written.contains(recordKey(entry.itemId(), entry.status(), entry.timestamp())))
+                .toList();
+        if (!pending.isEmpty())
+            log.info("history journal is replayed, {} entries are written, {} are written already and {} were not committed",
+                    replayed.size(), committed.size() - replayed.size(), aborted.size());
+        return replayed;
+    }
+
+    /**
+     * @return the entries of which the moves are committed, the moved_at time of their items is not older than them
+     */
+    private List<HistoryJournal.Entry> committed(List<HistoryJournal.Entry> entries) {
+        Map<Long, Date> movedAt = new HashMap<>();
+        for (List<HistoryJournal.Entry> chunk : chunks(entries)) {
+            itemRepository.findMovedAtByIds(chunk.stream().map(HistoryJournal.Entry::itemId).collect(Collectors.toSet()))
+                    .stream()
+                    .filter(item -> item.movedAt() != null)
+                    .forEach(item -> movedAt.put(item.id(), item.movedAt()));
+        }
+        return entries.stream()
+                .filter(entry -> movedAt.containsKey(entry.itemId())
+                        && micros(movedAt.get(entry.itemId())) >= micros(entry.timestamp()))
+                .toList();
+    }
+
+    private List<List<HistoryJournal.Entry>> chunks(List<HistoryJournal.Entry> entries) {
+        int size = properties.getHistory().getBatchSize();
+        List<List<HistoryJournal.Entry>> chunks = new ArrayList<>();
+        for (int from = 0; from < entries.size(); from += size)
+            chunks.add(entries.subList(from, Math.min(from + size, entries.size())));
+        return chunks;
+    }
+
+    private static String recordKey(Long itemId, ItemStatus status, Date timestamp) {
+        return itemId + SEPARATOR + status + SEPARATOR + micros(timestamp);
+    }
+
+    /**
+     * @return microseconds since the epoch, db keeps the times in microseconds and rounds finer ones
+     */
+    private static long micros(Date date) {
+        Instant instant = date.toInstant();
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000L), Math.round(instant.getNano() / 1000.0));
+    }
+
+    private void flushLoop() {
+        TrackingProperties.History history = properties.getHistory();
+        List<HistoryJournal.Entry> batch = new ArrayList<>(history.getBatchSize());
+        int attempts = 0;
+        while (running || !buffer.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    attempts = 0;
+                    HistoryJournal.Entry first = buffer.poll(history.getFlushInterval().toMillis(), TimeUnit.MILLISECONDS);
+                    if (first == null)
+                        continue;
+                    batch.add(first);
+                    buffer.drainTo(batch, history.getBatchSize() - 1);
+                }
+                if (attempts < history.getMaxFlushAttempts())
+                    write(batch);
+                else
+                    writeEachOrPark(batch);
+                batch.clear();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                attempts++;
+                log.warn("history batch of {} records can not be written, attempt {} of {}",
+                        batch.size(), attempts, history.getMaxFlushAttempts(), ex);
+                if (!running)
+                    return;
+                //the waits double, so a short outage of db does not park the records
+                sleep(history.getFlushInterval().multipliedBy(1L << Math.min(attempts - 1, 10)));
+            }
+        }
+    }
+
+    /**
+     * writes the records of a batch that could not be written one at a time, each with its own checkpoint,
+     * and parks the records that still fail, so a single bad record does not stop the history of all moves.
+     * the written and parked records are removed from the batch, so a pass that fails on the checkpoint
+     * does not write them again
+     */
+    private void writeEachOrPark(List<HistoryJournal.Entry> batch) {
+        List<HistoryJournal.Entry> parked = new ArrayList<>();
+        for (Iterator<HistoryJournal.Entry> entries = batch.iterator(); entries.hasNext(); ) {
+            HistoryJournal.Entry entry = entries.next();
+            try {
+                write(List.of(entry));
+            } catch (RuntimeException ex) {
+                log.error("history record {} can not be written, it is parked", entry, ex);
+                parked.add(entry);
+            }
+            entries.remove();
+        }
+        if (parked.isEmpty())
+            return;
+        try {
+            log.error("{} history records are parked in {}", parked.size(), journal.park(parked));
+        } catch (IOException ex) {
+            log.error("history records {} can not be parked, they are lost", parked, ex);
+        }
+        resolve(parked);
+        capacity.release(parked.size());
+        //the checkpoint passes the parked records, so they are not read back from the journal
+        writeInTransaction(List.of(), checkpoint(List.of()), false);
+    }
+
+    /**
+     * writes a batch of journal entries with the checkpoint, in a single transaction
+     */
+    private void write(List<HistoryJournal.Entry> batch) {
+        long checkpoint = checkpoint(batch);
+        try {
+            writeInTransaction(batch, checkpoint, false);
+        } catch (DataIntegrityViolationException ex) {
+            //the office of a record was deleted meanwhile, such records keep only the office name
+            writeInTransaction(batch, checkpoint, true);
+        }
+        resolve(batch);
+        capacity.release(batch.size());
+        try {
+            journal.release(checkpoint);
+        } catch (IOException ex) {
+            log.warn("written history journal segments can not be deleted", ex);
+        }
+    }
+
+    private void writeInTransaction(List<HistoryJournal.Entry> batch, long checkpoint, boolean checkOffices) {
+        transactionTemplate.executeWithoutResult(tx -> {
+            List<HistoryItem> history = new ArrayList<>(batch.size());
+            for (HistoryJournal.Entry entry : batch) {
+                boolean officeExists = entry.officeId() != null
+                        && (!checkOffices || postOfficeRepository.existsById(entry.officeId()));
+                HistoryItem historyItem = new HistoryItem(entry.status(), itemRepository.getReferenceById(entry.itemId()),
+                        officeExists ? postOfficeRepository.getReferenceById(entry.officeId()) : null, entry.officeName());
+                historyItem.setTimestamp(entry.timestamp());
+                history.add(historyItem);
+            }
+            historyItemRepository.saveAllAndFlush(history);
+            journalRepository.save(new HistoryJournalCheckpoint(properties.getHistory().getJournal().getName(), checkpoint));
+        });
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.ritazcode.mailtracking.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * remembers the results of scans by their idempotency key, so a scan that is sent again by a scanner
+ * returns the first result without touching db.
+ * a scan sent again while the first one is still running waits for its result.
+ * a rejected scan is forgotten, so it can be sent again with the same key.
+ * the number of keys is bounded by myConfig.tracking.idempotency.max-keys and they expire after expire-after
+ */
+@Component
+public class IdempotentScanCache {
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    /**
+     * scan that was accepted under an idempotency key
+     *
+     * @param status      new status of the scan
+     * @param updatedItem postal item id and post office id of the scan
+     * @param result      updated postal item information, completed once the scan is done
+     */
+    private record Scan(ItemStatus status, UpdateItemDto updatedItem, CompletableFuture<ResponseItemDto> result) {
+    }
+
+    private final ConcurrentMap<String, Scan> scans;
+
+    public IdempotentScanCache(TrackingProperties properties) {
+        Cache<String, Scan> cache = Caffeine.newBuilder()
+                .maximumSize(properties.getIdempotency().getMaxKeys())
+                .expireAfterWrite(properties.getIdempotency().getExpireAfter())
+                .build();
+        this.scans = cache.asMap();
+    }
+
+    /**
+     * runs a scan once per idempotency key
+     *
+     * @param key         idempotency key sent with the scan, the scan is always run when it is null
+     * @param status      new status of the scan
+     * @param updatedItem contains postal item id and post office id
+     * @param scan        runs the scan
+     * @return updated postal item information, the remembered one when the key was already used.
+     * it is shared between the repeated scans, so it must not be modified
+     */
+    public ResponseItemDto apply(String key, ItemStatus status, UpdateItemDto updatedItem, Supplier<ResponseItemDto> scan) {
+        if (key == null)
+            return scan.get();
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH)
+            throw new BadAttributeValueException(String.format("idempotency key must not be blank or longer than %s characters", MAX_KEY_LENGTH));
+        Scan accepted = new Scan(status, new UpdateItemDto(updatedItem.getId(), updatedItem.getPostOfficeId()), new CompletableFuture<>());
+        Scan previous = scans.putIfAbsent(key, accepted);
+        if (previous != null)
+            return repeat(previous, status, updatedItem);
+        try {
+            ResponseItemDto result = scan.get();
+            accepted.result().complete(result);
+            return result;
+        } catch (RuntimeException ex) {
+            scans.remove(key, accepted);
+            accepted.result().completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * @return result of the previous scan with the same key, it must be the same scan
+     */
+    private static ResponseItemDto repeat(Scan previous, ItemStatus status, UpdateItemDto updatedItem) {
+        if (previous.status() != status || !previous.updatedItem().equals(updatedItem))
+            throw new BadAttributeValueException("idempotency key is already used by another scan");
+        try {
+            return previous.result().join();
+        } catch (CompletionException ex) {
+            //the waiting scan is rejected the same way as the first one
+            if (ex.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw ex;
+        }
+    }
+}
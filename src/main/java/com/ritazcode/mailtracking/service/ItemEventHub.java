@@ -0,0 +1,255 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.dto.postalItem.ItemStatusChangedDto;
+import com.ritazcode.mailtracking.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * in-process publish/subscribe of the status changes, a client subscribes to one postal item or one post office.
+ * a status change is published once its transaction commits, and it is only put into the bounded queue of each subscriber,
+ * so the request that changed the status never waits for the clients.
+ * the queues are drained by myConfig.tracking.events.dispatch-threads threads, a subscriber whose queue is full is dropped,
+ * the client subscribes again and reads the current state.
+ * open subscriptions are exposed as tracking.events.subscribers and dropped ones as tracking.events.dropped
+ */
+@Slf4j
+@Component
+public class ItemEventHub implements DisposableBean {
+
+    static final String SUBSCRIBERS_METRIC = "tracking.events.subscribers";
+    static final String DROPPED_METRIC = "tracking.events.dropped";
+
+    /**
+     * receiver of the status changes of a single subscription, it is always called by one dispatch thread at a time
+     */
+    public interface Sink {
+
+        /**
+         * sends a status change to the client
+         *
+         * @param event status change
+         * @throws Exception when the client can not receive it, the subscription is then cancelled
+         */
+        void send(ItemStatusChangedDto event) throws Exception;
+
+        /**
+         * ends the stream of the client, called when the hub drops the subscription or shuts down
+         */
+        void close();
+    }
+
+    private final Map<Long, Set<Subscription>> itemSubscriptions = new ConcurrentHashMap<>();
+    private final Map<Long, Set<Subscription>> officeSubscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final int maxSubscribers;
+    private final int queueCapacity;
+    private final ExecutorService dispatcher;
+    private final Counter dropped;
+
+    public ItemEventHub(TrackingProperties properties, MeterRegistry meterRegistry) {
+        TrackingProperties.Events events = properties.getEvents();
+        this.maxSubscribers = events.getMaxSubscribers();
+        this.queueCapacity = events.getQueueCapacity();
+        AtomicInteger threads = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(events.getDispatchThreads(), task -> {
+            Thread thread = new Thread(task, "item-events-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder(SUBSCRIBERS_METRIC, subscribers, AtomicInteger::get)
+                .description("open subscriptions to the status changes")
+                .register(meterRegistry);
+        this.dropped = Counter.builder(DROPPED_METRIC)
+                .description("subscriptions dropped because their clients did not keep up with the status changes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * subscribes to the status changes of a postal item
+     *
+     * @param itemId id of postal item
+     * @param sink   receiver of the status changes
+     * @return subscription, it is cancelled when the client goes away
+     */
+    public Subscription subscribeToItem(Long itemId, Sink sink) {
+        return subscribe(itemSubscriptions, itemId, sink);
+    }
+
+    /**
+     * subscribes to the status changes of the postal items at a post office
+     *
+     * @param officeId id of post office
+     * @param sink     receiver of the status changes
+     * @return subscription, it is cancelled when the client goes away
+     */
+    public Subscription subscribeToOffice(Long officeId, Sink sink) {
+        return subscribe(officeSubscriptions, officeId, sink);
+    }
+
+    /**
+     * publishes a status change once the transaction that made it commits,
+     * or at once when it is published outside of a transaction
+     *
+     * @param event status change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void publish(ItemStatusChangedDto event) {
+        offer(itemSubscriptions.get(event.getItemId()), event);
+        if (event.getPostOfficeId() != null)
+            offer(officeSubscriptions.get(event.getPostOfficeId()), event);
+    }
+
+    /**
+     * @return count of open subscriptions
+     */
+    int getSubscriberCount() {
+        return subscribers.get();
+    }
+
+    @Override
+    public void destroy() {
+        List<Subscription> open = new ArrayList<>();
+        itemSubscriptions.values().forEach(open::addAll);
+        officeSubscriptions.values().forEach(open::addAll);
+        open.forEach(Subscription::drop);
+        dispatcher.shutdown();
+        try {
+            dispatcher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Subscription subscribe(Map<Long, Set<Subscription>> subscriptions, Long key, Sink sink) {
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            throw new ServiceUnavailableException(String.format("count of subscriptions reached the limit (%s), try again later", maxSubscribers));
+        }
+        Subscription subscription = new Subscription(subscriptions, key, sink);
+        subscriptions.compute(key, (id, current) -> {
+            Set<Subscription> updated = current == null ? ConcurrentHashMap.newKeySet() : current;
+            updated.add(subscription);
+            return updated;
+        });
+        return subscription;
+    }
+
+    private void offer(Set<Subscription> subscriptions, ItemStatusChangedDto event) {
+        if (subscriptions == null)
+            return;
+        for (Subscription subscription : subscriptions)
+            subscription.offer(event);
+    }
+
+    /**
+     * subscription of a single client with its bounded queue of status changes
+     */
+    public final class Subscription {
+
+        private final Map<Long, Set<Subscription>> subscriptions;
+        private final Long key;
+        private final Sink sink;
+        private final Queue<ItemStatusChangedDto> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean removed = new AtomicBoolean();
+        private final AtomicBoolean closing = new AtomicBoolean();
+
+        private Subscription(Map<Long, Set<Subscription>> subscriptions, Long key, Sink sink) {
+            this.subscriptions = subscriptions;
+            this.key = key;
+            this.sink = sink;
+        }
+
+        /**
+         * stops the status changes of this subscription, called when the client goes away
+         */
+        public void cancel() {
+            remove();
+        }
+
+        private void offer(ItemStatusChangedDto event) {
+            if (removed.get())
+                return;
+            if (!queue.offer(event)) {
+                log.debug("subscriber of ({}) is dropped, its queue of {} status changes is full", key, queueCapacity);
+                dropped.increment();
+                drop();
+                return;
+            }
+            schedule();
+        }
+
+        /**
+         * removes the subscription and closes the stream of its client on a dispatch thread
+         */
+        private void drop() {
+            if (remove()) {
+                closing.set(true);
+                schedule();
+            }
+        }
+
+        private boolean remove() {
+            if (!removed.compareAndSet(false, true))
+                return false;
+            subscriptions.computeIfPresent(key, (id, current) -> {
+                current.remove(this);
+                return current.isEmpty() ? null : current;
+            });
+            subscribers.decrementAndGet();
+            return true;
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true))
+                return;
+            try {
+                dispatcher.execute(this::drain);
+            } catch (RejectedExecutionException ex) {
+                //the hub is shut down
+                scheduled.set(false);
+            }
+        }
+
+        private void drain() {
+            try {
+                ItemStatusChangedDto event;
+                while (!removed.get() && (event = queue.poll()) != null)
+                    sink.send(event);
+            } catch (Exception ex) {
+                log.debug("subscriber of ({}) is cancelled, its client can not receive status changes", key, ex);
+                remove();
+            } finally {
+                scheduled.set(false);
+            }
+            if (closing.compareAndSet(true, false)) {
+                queue.clear();
+                sink.close();
+            } else if (!removed.get() && !queue.isEmpty()) {
+                //an event was offered after the queue was found empty
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.exception.ConcurrentUpdateException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * serializes the status changes of the same postal item inside this instance, before they reach db.
+ * an item is guarded by one of a fixed number of locks, chosen by the hash of its id,
+ * so different items mostly proceed in parallel and the locks take constant memory.
+ * the versioned update stays in place, it still guards against other instances.
+ * wait times are recorded as tracking.item.lock.wait and timeouts as tracking.item.lock.timeouts,
+ * when myConfig.tracking.lock.metrics is enabled
+ */
+@Component
+public class ItemLockManager {
+
+    static final String WAIT_METRIC = "tracking.item.lock.wait";
+    static final String TIMEOUT_METRIC = "tracking.item.lock.timeouts";
+
+    private final boolean enabled;
+    private final ReentrantLock[] stripes;
+    private final long timeoutNanos;
+    private final Timer waits;
+    private final Counter timeouts;
+
+    public ItemLockManager(TrackingProperties properties, MeterRegistry meterRegistry) {
+        TrackingProperties.Lock lock = properties.getLock();
+        this.enabled = lock.isEnabled();
+        //a power of two count, so a stripe is picked by a mask
+        int count = lock.getStripes() <= 1 ? 1 : Integer.highestOneBit(lock.getStripes() - 1) << 1;
+        this.stripes = new ReentrantLock[enabled ? count : 0];
+        for (int i = 0; i < stripes.length; i++)
+            stripes[i] = new ReentrantLock();
+        this.timeoutNanos = lock.getTimeout().toNanos();
+        this.waits = lock.isMetrics() ? Timer.builder(WAIT_METRIC)
+                .description("time waited for the lock of a postal item")
+                .register(meterRegistry) : null;
+        this.timeouts = lock.isMetrics() ? Counter.builder(TIMEOUT_METRIC)
+                .description("status changes rejected because the lock of a postal item was not released in time")
+                .register(meterRegistry) : null;
+    }
+
+    /**
+     * runs the work while holding the lock of the postal item
+     *
+     * @param itemId id of postal item
+     * @param work   work to run
+     * @return result of the work
+     */
+    public <T> T withLock(Long itemId, Supplier<T> work) {
+        if (!enabled || itemId == null)
+            return work.get();
+        return withStripes(List.of(stripes[stripe(itemId)]), work);
+    }
+
+    /**
+     * runs the work while holding the locks of all the postal items,
+     * the locks are always taken in the same order, so two batches can not wait for each other
+     *
+     * @param itemIds ids of postal items
+     * @param work    work to run
+     * @return result of the work
+     */
+    public <T> T withLocks(Collection<Long> itemIds, Supplier<T> work) {
+        if (!enabled || itemIds.isEmpty())
+            return work.get();
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (Long itemId : itemIds)
+            indexes.add(stripe(itemId));
+        List<ReentrantLock> locks = new ArrayList<>(indexes.size());
+        for (int index : indexes)
+            locks.add(stripes[index]);
+        return withStripes(locks, work);
+    }
+
+    /**
+     * @return count of locks, zero when the locks are disabled
+     */
+    int getStripeCount() {
+        return stripes.length;
+    }
+
+    int stripe(long itemId) {
+        int hash = Long.hashCode(itemId);
+        //spread the high bits, ids that differ only in them still fall into different stripes
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    private <T> T withStripes(List<ReentrantLock> locks, Supplier<T> work) {
+        long start = System.nanoTime();
+        long deadline = start + timeoutNanos;
+        int locked = 0;
+        try {
+            for (ReentrantLock lock : locks) {
+                if (!lock.tryLock(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    if (timeouts != null)
+                        timeouts.increment();
+                    throw new ConcurrentUpdateException("postal item is being updated by other requests, try again");
+                }
+                locked++;
+            }
+            if (waits != null)
+                waits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return work.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrentUpdateException("postal item is being updated by other requests, try again");
+        } finally {
+            for (int i = locked - 1; i >= 0; i--)
+                locks.get(i).unlock();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.exception.NoSuchElementException;
+import com.ritazcode.mailtracking.repository.PostOfficeName;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * rules of the postal item status transitions, shared by the blocking {@link PostalItemService}
+ * and the reactive {@link ReactivePostalItemService}, so both stacks accept and reject the same moves with the same errors
+ */
+final class ItemTransitions {
+
+    /**
+     * foreign keys from postal_item and history_item to post_office, see db/migration.
+     * history records are inserted before the item is updated, so either of them reports an office that is deleted meanwhile
+     */
+    static final Set<String> OFFICE_FOREIGN_KEYS = Set.of("postal_item_office_fk", "history_item_office_fk");
+
+    private ItemTransitions() {
+    }
+
+    /**
+     * validates the attributes of a single status update
+     *
+     * @param updatedItem contains postal item id and post office id
+     */
+    static void checkUpdate(UpdateItemDto updatedItem) {
+        if (updatedItem.getId() == null)
+            throw new BadAttributeValueException("item id is not valid");
+        if (updatedItem.getPostOfficeId() == null)
+            throw new BadAttributeValueException("post office id is not valid");
+    }
+
+    /**
+     * checks that the postal item exists and it can still change its status
+     *
+     * @param itemId id of postal item
+     * @param status current status of the postal item, null if the item is not found
+     */
+    static void checkItemCanMove(Long itemId, ItemStatus status) {
+        if (status == null)
+            throw itemNotFound(itemId);
+        //if item is already received, no further modifications can be done
+        if (status == ItemStatus.RECEIVED)
+            throw new BadAttributeValueException(String.format("item with id (%s) has already been RECEIVED", itemId));
+    }
+
+    /**
+     * checks that the post office exists and that the postal item can get the new status at it
+     *
+     * @param itemId          id of postal item that can still change its status
+     * @param currentOfficeId id of post office the item is now in, null if it did not arrive anywhere yet
+     * @param officeId        id of post office
+     * @param office          id and name of post office, null if it is not found
+     * @param status          new status that will be set to the postal item
+     */
+    static void checkMove(Long itemId, Long currentOfficeId, Long officeId, PostOfficeName office, ItemStatus status) {
+        if (office == null)
+            throw officeNotFound(officeId);
+
+        //postal item can not depart from an office that is different from the one it arrived to
+        //or in case it hasn't even arrived to this office (meaning its current status is not Arrived)
+        if (status == ItemStatus.DEPARTED) {
+            //if item has not arrived to post office
+            if (currentOfficeId == null)
+                throw new BadAttributeValueException(String.format("item with id (%s) did NOT ARRIVE to post office yet", itemId));
+            //if the item is departed from a different office (other that the one it arrived to)
+            if (!Objects.equals(currentOfficeId, office.id()))
+                throw new BadAttributeValueException(String.format("item with id (%s) can not DEPART from a post office (%s) to which it did NOT ARRIVE", itemId, officeId));
+        }
+    }
+
+    static NoSuchElementException itemNotFound(Long itemId) {
+        return new NoSuchElementException(String.format("item with id (%s) is not found", itemId));
+    }
+
+    static NoSuchElementException officeNotFound(Long postOfficeId) {
+        return new NoSuchElementException(String.format("post office  with id (%s) is not found", postOfficeId));
+    }
+}
@@ -0,0 +1,107 @@
+package com.ritazcode.mailtracking.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.dto.postalItem.ItemStatusChangedDto;
+import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.function.Function;
+
+/**
+ * remembers the looked up postal items by their id, a few items that are out for delivery take most of the lookups.
+ * the cache is bounded by myConfig.tracking.view.max-items and keeps the frequently looked up items (W-TinyLFU).
+ * an item is evicted once its status change commits, a lookup that loaded it before the commit
+ * is finished before the eviction, so it is never cached after it.
+ * status changes of other instances are seen once the item expires after myConfig.tracking.view.expire-after.
+ * hits, misses and evictions are exposed as cache.gets and cache.evictions with the tag cache=postalItems,
+ * the hit ratio as tracking.view.cache.hit-ratio and the time of the lookups that go to db as tracking.view.cache.load
+ */
+@Component
+public class ItemViewCache {
+
+    static final String CACHE_NAME = "postalItems";
+    static final String HIT_RATIO_METRIC = "tracking.view.cache.hit-ratio";
+    static final String LOAD_METRIC = "tracking.view.cache.load";
+
+    /**
+     * looked up postal item with the version it was read at
+     *
+     * @param item    postal item information, it is shared between the lookups, so it must not be modified
+     * @param version version of the postal item
+     */
+    public record CachedItem(ResponseItemDto item, long version) {
+    }
+
+    private final boolean enabled;
+    private final Cache<Long, CachedItem> items;
+    private final Timer load;
+
+    public ItemViewCache(TrackingProperties properties, MeterRegistry meterRegistry) {
+        TrackingProperties.View view = properties.getView();
+        this.enabled = view.isCacheEnabled();
+        this.items = Caffeine.newBuilder()
+                .maximumSize(view.getMaxItems())
+                .expireAfterWrite(view.getExpireAfter())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, items, CACHE_NAME);
+        Gauge.builder(HIT_RATIO_METRIC, items, cache -> cache.stats().hitRate())
+                .description("share of the postal item lookups that are served from the cache")
+                .register(meterRegistry);
+        this.load = Timer.builder(LOAD_METRIC)
+                .description("time of the postal item lookups that are not cached")
+                .register(meterRegistry);
+    }
+
+    /**
+     * gets a postal item from the cache, or loads and caches it
+     *
+     * @param id     postal item id
+     * @param loader loads the postal item from db, an exception it throws is not cached
+     * @return postal item information with its version
+     */
+    public CachedItem get(Long id, Function<Long, CachedItem> loader) {
+        if (!enabled)
+            return loader.apply(id);
+        return items.get(id, key -> load.record(() -> loader.apply(key)));
+    }
+
+    /**
+     * @param id postal item id
+     * @return version of the cached postal item or null when it is not cached
+     */
+    public Long getVersion(Long id) {
+        CachedItem item = enabled ? items.getIfPresent(id) : null;
+        return item == null ? null : item.version();
+    }
+
+    /**
+     * evicts a postal item once the transaction that changed its status commits,
+     * or at once when the change is published outside of a transaction.
+     * it runs before {@link ItemEventHub} publishes the change, so a subscriber that looks the item up sees it
+     *
+     * @param event status change
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void evict(ItemStatusChangedDto event) {
+        items.invalidate(event.getItemId());
+    }
+
+    /**
+     * @return count of cached postal items
+     */
+    long size() {
+        items.cleanUp();
+        return items.estimatedSize();
+    }
+}
@@ -0,0 +1,115 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.dto.CursorPageDto;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * position of the last returned record of a keyset (seek) page.
+ * it is passed to the clients as an opaque token, so the encoding can change without breaking them
+ *
+ * @param timestamp time of the last record, null when the records are ordered only by id.
+ *                  it is kept with microseconds, as stored in db, so records of the same millisecond are not skipped or repeated
+ * @param id        id of the last record
+ */
+record KeysetCursor(Date timestamp, long id) {
+
+    /**
+     * cursor placed before the first record, all ids are positive and all timestamps are after the epoch
+     */
+    static final KeysetCursor START = new KeysetCursor(new Date(0), 0L);
+
+    private static final String SEPARATOR = ":";
+
+    /**
+     * decodes a cursor token that was returned to a client
+     *
+     * @param token       opaque cursor token, null or blank for the first page
+     * @param timestamped true if the records are ordered by (timestamp, id), false if they are ordered only by id
+     * @return decoded cursor
+     */
+    static KeysetCursor decode(String token, boolean timestamped) {
+        if (token == null || token.isBlank())
+            return START;
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR);
+            if (!timestamped && parts.length == 1)
+                return new KeysetCursor(null, Long.parseLong(parts[0]));
+            if (timestamped && parts.length == 2)
+                return new KeysetCursor(fromMicros(Long.parseLong(parts[0])), Long.parseLong(parts[1]));
+        } catch (IllegalArgumentException ex) {
+            //not a cursor that was created by this api
+        }
+        throw new BadAttributeValueException(String.format("cursor (%s) is not valid", token));
+    }
+
+    /**
+     * @return opaque token of this cursor
+     */
+    String encode() {
+        String value = timestamp == null ? String.valueOf(id) : toMicros(timestamp) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return time of the last record as local time of db, with microseconds, null when the records are ordered only by id
+     */
+    LocalDateTime localTimestamp() {
+        if (timestamp == null)
+            return null;
+        return timestamp instanceof Timestamp exact ? exact.toLocalDateTime() : new Timestamp(timestamp.getTime()).toLocalDateTime();
+    }
+
+    private static long toMicros(Date timestamp) {
+        long seconds = Math.floorDiv(timestamp.getTime(), 1000L);
+        int nanos = timestamp instanceof Timestamp exact ? exact.getNanos() : (int) Math.floorMod(timestamp.getTime(), 1000L) * 1_000_000;
+        return seconds * 1_000_000L + nanos / 1000;
+    }
+
+    private static Timestamp fromMicros(long micros) {
+        Timestamp timestamp = new Timestamp(Math.floorDiv(micros, 1_000_000L) * 1000L);
+        timestamp.setNanos((int) Math.floorMod(micros, 1_000_000L) * 1000);
+        return timestamp;
+    }
+
+    /**
+     * maps a slice of records to a cursor page, the cursor of the next page points at the last record of the slice
+     *
+     * @param slice  fetched records
+     * @param mapper maps a record to its dto
+     * @param cursor gets the cursor of a record
+     * @return cursor page
+     */
+    static <E, T> CursorPageDto<T> page(Slice<E> slice, Function<E, T> mapper, Function<E, KeysetCursor> cursor) {
+        String nextCursor = slice.hasNext() && slice.hasContent()
+                ? cursor.apply(slice.getContent().get(slice.getNumberOfElements() - 1)).encode()
+                : null;
+        return CursorPageDto.<T>builder()
+                .content(slice.getContent().stream().map(mapper).toList())
+                .hasNext(nextCursor != null)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    /**
+     * slice of records that were fetched with one record more than the page size, the extra record only tells that there is a next page
+     *
+     * @param fetched fetched records, at most limit + 1
+     * @param limit   count of records in a page
+     * @return slice of at most limit records
+     */
+    static <E> Slice<E> slice(List<E> fetched, int limit) {
+        boolean hasNext = fetched.size() > limit;
+        return new SliceImpl<>(hasNext ? fetched.subList(0, limit) : fetched, PageRequest.of(0, limit), hasNext);
+    }
+}
@@ -0,0 +1,195 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.dto.postOffice.OfficeStatsDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.repository.OfficeStatusCount;
+import com.ritazcode.mailtracking.repository.PostOfficeRepository;
+import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * count of the postal items at each post office in each status, kept in memory so a dashboard reads it without db.
+ * the counts are changed by each move once its transaction commits, items that are not at any office are not counted.
+ * a reconciliation thread recounts the items in db every myConfig.tracking.stats.reconcile-interval and corrects the counts
+ * that drifted, e.g. by the moves of other instances or of the reactive stack. a count that changes while it is recounted
+ * is left for the next reconciliation. corrected counts are exposed as tracking.office.stats.corrected
+ */
+@Slf4j
+@Service
+public class OfficeStatsService {
+
+    static final String CORRECTED_METRIC = "tracking.office.stats.corrected";
+
+    private static final ItemStatus[] STATUSES = ItemStatus.values();
+
+    private final PostalItemRepository itemRepository;
+    private final PostOfficeRepository postOfficeRepository;
+    private final TrackingProperties properties;
+    private final Counter corrected;
+    private final ConcurrentMap<Long, LongAdder[]> counts = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService reconciler;
+
+    public OfficeStatsService(PostalItemRepository itemRepository, PostOfficeRepository postOfficeRepository,
+                              TrackingProperties properties, MeterRegistry meterRegistry) {
+        this.itemRepository = itemRepository;
+        this.postOfficeRepository = postOfficeRepository;
+        this.properties = properties;
+        this.corrected = Counter.builder(CORRECTED_METRIC)
+                .description("counts of postal items at a post office that were corrected by the reconciliation")
+                .register(meterRegistry);
+    }
+
+    /**
+     * starts the reconciliation, the first one seeds the counts
+     */
+    @PostConstruct
+    void start() {
+        long interval = properties.getStats().getReconcileInterval().toMillis();
+        if (interval <= 0)
+            return;
+        reconciler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "office-stats-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconciler.scheduleWithFixedDelay(this::reconcileSafely, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (reconciler != null)
+            reconciler.shutdownNow();
+    }
+
+    /**
+     * moves a postal item between the counts once the current transaction commits,
+     * or at once when there is no transaction. a transaction that is rolled back or repeated changes nothing
+     *
+     * @param fromOfficeId id of post office the item was in, null when it was not in any
+     * @param fromStatus   status the item had
+     * @param toOfficeId   id of post office the item is in now
+     * @param toStatus     status the item has now
+     */
+    public void moved(Long fromOfficeId, ItemStatus fromStatus, Long toOfficeId, ItemStatus toStatus) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(fromOfficeId, fromStatus, toOfficeId, toStatus);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(fromOfficeId, fromStatus, toOfficeId, toStatus);
+            }
+        });
+    }
+
+    /**
+     * get the count of the postal items at a specific post office in each status
+     *
+     * @param postOfficeId id of post office
+     * @return count of items in each status
+     */
+    public OfficeStatsDto getStats(Long postOfficeId) {
+        if (postOfficeId == null)
+            throw new BadAttributeValueException("post office id is not valid");
+        //the office name is read through the cache
+        if (postOfficeRepository.findNameById(postOfficeId).isEmpty())
+            throw ItemTransitions.officeNotFound(postOfficeId);
+        LongAdder[] office = counts.get(postOfficeId);
+        Map<ItemStatus, Long> items = new EnumMap<>(ItemStatus.class);
+        for (ItemStatus status : STATUSES)
+            items.put(status, office == null ? 0 : office[status.ordinal()].sum());
+        return OfficeStatsDto.builder()
+                .postOfficeId(postOfficeId)
+                .items(items)
+                .build();
+    }
+
+    /**
+     * recounts the postal items in db and corrects the counts that drifted
+     *
+     * @return count of corrected counts
+     */
+    int reconcile() {
+        Map<Long, long[]> before = snapshot();
+        List<OfficeStatusCount> rows = itemRepository.countByOfficeAndStatus();
+        Map<Long, long[]> actual = new HashMap<>();
+        for (OfficeStatusCount row : rows)
+            actual.computeIfAbsent(row.getPostOfficeId(), id -> new long[STATUSES.length])[row.getStatus().ordinal()] = row.getItems();
+        before.keySet().forEach(officeId -> actual.putIfAbsent(officeId, new long[STATUSES.length]));
+        int fixed = 0;
+        for (Map.Entry<Long, long[]> office : actual.entrySet()) {
+            LongAdder[] current = office(office.getKey());
+            long[] counted = before.get(office.getKey());
+            for (int status = 0; status < STATUSES.length; status++) {
+                long was = counted == null ? 0 : counted[status];
+                long drift = office.getValue()[status] - was;
+                //a count that changed meanwhile may already hold a move that the recount did not see
+                if (drift != 0 && current[status].sum() == was) {
+                    current[status].add(drift);
+                    fixed++;
+                }
+            }
+        }
+        corrected.increment(fixed);
+        return fixed;
+    }
+
+    private void reconcileSafely() {
+        try {
+            int fixed = reconcile();
+            if (fixed > 0)
+                log.info("{} counts of postal items at post offices are corrected", fixed);
+        } catch (RuntimeException ex) {
+            log.warn("counts of postal items at post offices can not be reconciled", ex);
+        }
+    }
+
+    private void apply(Long fromOfficeId, ItemStatus fromStatus, Long toOfficeId, ItemStatus toStatus) {
+        if (fromOfficeId != null)
+            office(fromOfficeId)[fromStatus.ordinal()].decrement();
+        if (toOfficeId != null)
+            office(toOfficeId)[toStatus.ordinal()].increment();
+    }
+
+    private LongAdder[] office(Long officeId) {
+        return counts.computeIfAbsent(officeId, id -> {
+            LongAdder[] office = new LongAdder[STATUSES.length];
+            for (int status = 0; status < office.length; status++)
+                office[status] = new LongAdder();
+            return office;
+        });
+    }
+
+    private Map<Long, long[]> snapshot() {
+        Map<Long, long[]> snapshot = new HashMap<>();
+        counts.forEach((officeId, office) -> {
+            long[] sums = new long[office.length];
+            for (int status = 0; status < office.length; status++)
+                sums[status] = office[status].sum();
+            snapshot.put(officeId, sums);
+        });
+        return snapshot;
+    }
+}
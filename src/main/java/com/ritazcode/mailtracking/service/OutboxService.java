@@ -0,0 +1,158 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.dto.postalItem.ItemStatusChangedDto;
+import com.ritazcode.mailtracking.entity.OutboxEvent;
+import com.ritazcode.mailtracking.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * transactional outbox of the registrations and status changes of postal items, for the downstream {@link OutboxSink}s.
+ * a change is written to outbox_event in its own transaction, so it is published if and only if it commits,
+ * and the request never waits for the sinks.
+ * myConfig.tracking.outbox.relay-threads threads each lock a batch of their share of the postal items with skip locked,
+ * send it to all sinks and delete it in one transaction, so a batch that fails is sent again.
+ * the delivery is at least once and unordered, see {@link OutboxSink}.
+ * sent events are exposed as tracking.outbox.dispatched, the time from a change to its sending as tracking.outbox.lag
+ * and failed batches as tracking.outbox.failed
+ */
+@Slf4j
+@Service
+public class OutboxService {
+
+    static final String DISPATCHED_METRIC = "tracking.outbox.dispatched";
+    static final String LAG_METRIC = "tracking.outbox.lag";
+    static final String FAILED_METRIC = "tracking.outbox.failed";
+
+    private final TrackingProperties properties;
+    private final OutboxEventRepository outboxRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final List<OutboxSink> sinks;
+    private final Counter dispatched;
+    private final Timer lag;
+    private final Counter failed;
+
+    private final List<Thread> relays = new ArrayList<>();
+    private volatile boolean running;
+
+    public OutboxService(TrackingProperties properties, OutboxEventRepository outboxRepository,
+                         TransactionTemplate transactionTemplate, List<OutboxSink> sinks, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.outboxRepository = outboxRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.sinks = sinks;
+        this.dispatched = Counter.builder(DISPATCHED_METRIC)
+                .description("outbox events sent to the sinks")
+                .register(meterRegistry);
+        this.lag = Timer.builder(LAG_METRIC)
+                .description("time from a change of a postal item to the sending of its outbox event")
+                .register(meterRegistry);
+        this.failed = Counter.builder(FAILED_METRIC)
+                .description("batches of outbox events that could not be sent and are sent again")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        int threads = properties.getOutbox().getRelayThreads();
+        running = true;
+        for (int share = 0; share < threads; share++) {
+            int relayShare = share;
+            Thread relay = new Thread(() -> relayLoop(threads, relayShare), "outbox-relay-" + (share + 1));
+            relay.setDaemon(true);
+            relay.start();
+            relays.add(relay);
+        }
+    }
+
+    /**
+     * stops the relay threads after their current batch, the events that are not sent stay in the outbox
+     */
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        for (Thread relay : relays)
+            relay.join(properties.getOutbox().getPollInterval().toMillis() + TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * writes a registration or status change to the outbox, it is flushed with the other changes of the current transaction.
+     * the conditional update mode and the reactive stack insert their outbox events themselves
+     *
+     * @param event registration or status change of a postal item
+     */
+    public void write(ItemStatusChangedDto event) {
+        outboxRepository.save(OutboxEvent.builder()
+                .itemId(event.getItemId())
+                .status(event.getStatus())
+                .postOfficeId(event.getPostOfficeId())
+                .postOfficeName(event.getPostOfficeName())
+                .timestamp(event.getTimestamp())
+                .build());
+    }
+
+    /**
+     * sends the oldest batch of events of a share of the postal items to all sinks and deletes it
+     *
+     * @param shares count of shares the postal items are split into
+     * @param share  share of the postal items
+     * @return count of sent events
+     */
+    int relay(int shares, int share) {
+        List<OutboxEvent> events = transactionTemplate.execute(tx -> {
+            List<OutboxEvent> batch = outboxRepository.lockNextEvents(shares, share, properties.getOutbox().getBatchSize());
+            if (batch.isEmpty())
+                return batch;
+            for (OutboxSink sink : sinks) {
+                try {
+                    sink.send(batch);
+                } catch (Exception ex) {
+                    throw new IllegalStateException(String.format("outbox sink (%s) can not send %s events",
+                            sink.getClass().getSimpleName(), batch.size()), ex);
+                }
+            }
+            outboxRepository.deleteAllByIdInBatch(batch.stream().map(OutboxEvent::getId).toList());
+            return batch;
+        });
+        long now = System.currentTimeMillis();
+        for (OutboxEvent event : events)
+            lag.record(Math.max(0, now - event.getTimestamp().getTime()), TimeUnit.MILLISECONDS);
+        dispatched.increment(events.size());
+        return events.size();
+    }
+
+    private void relayLoop(int shares, int share) {
+        TrackingProperties.Outbox outbox = properties.getOutbox();
+        while (running) {
+            try {
+                //a full batch means that more events are waiting
+                if (relay(shares, share) < outbox.getBatchSize())
+                    sleep(outbox.getPollInterval());
+            } catch (RuntimeException ex) {
+                failed.increment();
+                log.warn("batch of outbox events can not be sent, it is sent again", ex);
+                sleep(outbox.getPollInterval());
+            }
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.entity.OutboxEvent;
+
+import java.util.List;
+
+/**
+ * downstream receiver of the outbox events (e.g. notifications, billing), every sink bean gets every event.
+ * an event is sent at least once, it is sent again when a sink fails or the relay stops before the event is deleted,
+ * so a sink recognizes the events it already has by their id.
+ * the events are not ordered: each instance takes its event ids from its own block of the sequence, and the relays
+ * of other instances skip a batch that is being sent, so a later change of an item can be sent before an earlier one.
+ * a sink that needs the latest state of an item compares the timestamps of its events or reads the item from the api
+ */
+public interface OutboxSink {
+
+    /**
+     * sends a batch of events, it is called by one relay thread at a time for the same share of the postal items
+     *
+     * @param events events ordered by id, which is not the order of the changes across instances
+     * @throws Exception when the events can not be sent, the whole batch is then sent again later
+     */
+    void send(List<OutboxEvent> events) throws Exception;
+}
@@ -9,6 +9,7 @@ import com.ritazcode.mailtracking.exception.NoSuchElementException;
 import com.ritazcode.mailtracking.mapper.PostOfficeMapper;
 import com.ritazcode.mailtracking.repository.PostOfficeRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 
 import java.util.Optional;
@@ -35,21 +36,22 @@ public class PostOfficeService {
     }
 
     /**
-     * update a specific post office
+     * update a specific post office, the cached office and its cached name are evicted
      *
      * @param updatedOfficeDto updated post office
      * @return updated post office information
      */
+    @CacheEvict(cacheNames = {PostOfficeRepository.CACHE_NAME, PostOfficeRepository.NAME_CACHE_NAME}, key = "#p0.id")
     public ResponsePostOfficeDto update(UpdatePostOfficeDto updatedOfficeDto) {
         if (updatedOfficeDto == null || updatedOfficeDto.getId() == null)
             throw new BadAttributeValueException("the passed post office values or post office id is not valid");
-        Optional<PostOffice> dbPost = repository.findById(updatedOfficeDto.getId());
-        if (dbPost.isEmpty())
+        if (repository.findById(updatedOfficeDto.getId()).isEmpty())
             throw new NoSuchElementException(String.format("No such post office with id (%s)", updatedOfficeDto.getId()));
 
+        //the found office may be the cached one, it is shared and not modified
         PostOffice updatedOffice = repository.save(
                 mapper.UpdatePostOfficeDto_To_DbPostOffice(updatedOfficeDto,
-                        dbPost.get()));
+                        PostOffice.builder().id(updatedOfficeDto.getId()).build()));
         return mapper.DbPostOffice_To_ResponsePostOfficeDto(updatedOffice);
     }
 
@@ -70,10 +72,11 @@ public class PostOfficeService {
     }
 
     /**
-     * delete a specific post office by its id
+     * delete a specific post office by its id, the cached office and its cached name are evicted
      *
      * @param id id of post office
      */
+    @CacheEvict(cacheNames = {PostOfficeRepository.CACHE_NAME, PostOfficeRepository.NAME_CACHE_NAME}, key = "#p0")
     public void delete(Long id) {
         if (id == null)
             throw new BadAttributeValueException(String.format("the passed id (%s) is not valid", id));
@@ -1,25 +1,51 @@
 package com.ritazcode.mailtracking.service;
 
-import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
-import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
-import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
-import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.config.TrackingProperties.UpdateMode;
+import com.ritazcode.mailtracking.dto.CursorPageDto;
+import com.ritazcode.mailtracking.dto.postalItem.*;
 import com.ritazcode.mailtracking.entity.HistoryItem;
 import com.ritazcode.mailtracking.entity.ItemStatus;
 import com.ritazcode.mailtracking.entity.PostOffice;
 import com.ritazcode.mailtracking.entity.PostalItem;
+import com.ritazcode.mailtracking.exception.ApiBaseException;
 import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.exception.ConcurrentUpdateException;
 import com.ritazcode.mailtracking.exception.NoSuchElementException;
 import com.ritazcode.mailtracking.mapper.PostalItemMapper;
+import com.ritazcode.mailtracking.repository.HistoryItemRepository;
+import com.ritazcode.mailtracking.repository.MovedItem;
+import com.ritazcode.mailtracking.repository.PostOfficeName;
 import com.ritazcode.mailtracking.repository.PostOfficeRepository;
 import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.function.ThrowingSupplier;
 
-import java.util.Objects;
-import java.util.Optional;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -29,6 +55,19 @@ public class PostalItemService {
     private final PostalItemRepository itemRepository;
     private final PostOfficeRepository postOfficeRepository;
     private final HistoryItemService historyItemService;
+    private final HistoryItemRepository historyItemRepository;
+    private final TrackingProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final HistoryWriteBehindService historyWriteBehind;
+    private final IdempotentScanCache idempotentScans;
+    private final ItemViewCache viewCache;
+    private final OfficeStatsService officeStats;
+    private final ItemLockManager itemLocks;
+    private final ItemEventHub eventHub;
+    private final ApplicationEventPublisher eventPublisher;
+    private final OutboxService outbox;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
 
 
     /**
@@ -44,18 +83,76 @@ public class PostalItemService {
     }
 
     /**
-     * get a specific postal item information
+     * get a keyset page of postal items, ordered by id
+     *
+     * @param after cursor returned with the previous page, null for the first page
+     * @param limit count of records in a page
+     * @return page of postal items that come after the cursor
+     */
+    public CursorPageDto<ResponseItemDto> getPostalItems(String after, Integer limit) {
+        KeysetCursor cursor = KeysetCursor.decode(after, false);
+        return KeysetCursor.page(
+                itemRepository.findByIdGreaterThan(cursor.id(), seekPageRequest(limit)),
+                itemMapper::PostalItem_To_ResponseItemDto,
+                item -> new KeysetCursor(null, item.getId()));
+    }
+
+    /**
+     * get a specific postal item information, it is read through {@link ItemViewCache}
      *
      * @param id postal item id
-     * @return postal item information
+     * @return postal item information, it may be the cached one, so it must not be modified
      */
     public ResponseItemDto view(Long id) {
+        return viewWithVersion(id).item();
+    }
+
+    /**
+     * get a specific postal item information with the version it was read at, it is read through {@link ItemViewCache}
+     *
+     * @param id postal item id
+     * @return postal item information and its version, it may be the cached one, so it must not be modified
+     */
+    public ItemViewCache.CachedItem viewWithVersion(Long id) {
         if (id == null)
             throw new BadAttributeValueException("item id is not valid");
+        return viewCache.get(id, this::loadItem);
+    }
+
+    private ItemViewCache.CachedItem loadItem(Long id) {
         Optional<PostalItem> dbItem = itemRepository.findById(id);
         if (dbItem.isEmpty())
             throw new NoSuchElementException(String.format("item with id (%s) is not found", id));
-        return itemMapper.PostalItem_To_ResponseItemDto(dbItem.get());
+        return new ItemViewCache.CachedItem(itemMapper.PostalItem_To_ResponseItemDto(dbItem.get()), dbItem.get().getVersion());
+    }
+
+    /**
+     * get the version of a specific postal item without loading it, from {@link ItemViewCache} when the item is cached.
+     * every change of the item increments it, so it tells whether a client already has the current item
+     *
+     * @param id postal item id
+     * @return version of postal item
+     */
+    public long getItemVersion(Long id) {
+        if (id == null)
+            throw new BadAttributeValueException("item id is not valid");
+        Long version = viewCache.getVersion(id);
+        if (version != null)
+            return version;
+        return itemRepository.findVersionById(id).orElseThrow(() -> ItemTransitions.itemNotFound(id));
+    }
+
+    /**
+     * get the version of the history of a specific postal item, it is the version of the item
+     * when every status change writes its history record with it
+     *
+     * @param id postal item id
+     * @return version of the history, empty when history is written behind the status changes
+     */
+    public OptionalLong getHistoryVersion(Long id) {
+        if (historyWriteBehind.isEnabled())
+            return OptionalLong.empty();
+        return OptionalLong.of(getItemVersion(id));
     }
 
     /**
@@ -67,29 +164,136 @@ public class PostalItemService {
     public Page<ResponseItemDto> getOfficeItems(Long postOfficeId,PageRequest pageRequest) {
         if (postOfficeId == null)
             throw new BadAttributeValueException("post office id is not valid");
-        Optional<PostOffice> office = postOfficeRepository.findById(postOfficeId);
-        if (office.isEmpty())
-            throw new NoSuchElementException(String.format("post office  with id (%s) is not found", postOfficeId));
-        return itemRepository.findAllByPostOfficeId(postOfficeId, pageRequest).map(
-                itemMapper::PostalItem_To_ResponseItemDto
-        );
+        Page<PostalItem> items = itemRepository.findAllByPostOfficeId(postOfficeId, pageRequest);
+        //an empty page is the only case in which the office may not exist
+        if (items.isEmpty())
+            checkOfficeExists(postOfficeId);
+        return items.map(itemMapper::PostalItem_To_ResponseItemDto);
+    }
+
+    /**
+     * get a keyset page of postal items that are now in a specific post office, ordered by id
+     *
+     * @param postOfficeId id of post office
+     * @param after        cursor returned with the previous page, null for the first page
+     * @param limit        count of records in a page
+     * @return page of postal items of a specific office that come after the cursor
+     */
+    public CursorPageDto<ResponseItemDto> getOfficeItems(Long postOfficeId, String after, Integer limit) {
+        if (postOfficeId == null)
+            throw new BadAttributeValueException("post office id is not valid");
+        KeysetCursor cursor = KeysetCursor.decode(after, false);
+        Slice<PostalItem> items = itemRepository.findByPostOfficeIdAndIdGreaterThan(postOfficeId, cursor.id(), seekPageRequest(limit));
+        if (items.isEmpty())
+            checkOfficeExists(postOfficeId);
+        return KeysetCursor.page(items, itemMapper::PostalItem_To_ResponseItemDto, item -> new KeysetCursor(null, item.getId()));
+    }
+
+    /**
+     * writes all postal items that are now in a specific post office as newline-delimited json, ordered by id.
+     * the items are read from a server-side cursor and each one is detached once it is written,
+     * so the export takes the same heap whatever the count of items is
+     *
+     * @param postOfficeId id of post office
+     * @param out          opens the stream the items are written to, once the office is found. it is flushed but not closed
+     * @return count of written items
+     */
+    @Transactional(readOnly = true)
+    public long exportOfficeItems(Long postOfficeId, ThrowingSupplier<OutputStream> out) throws IOException {
+        if (postOfficeId == null)
+            throw new BadAttributeValueException("post office id is not valid");
+        checkOfficeExists(postOfficeId);
+        //the output stream is flushed by its own buffer, not after every item
+        ObjectWriter writer = objectMapper.writerFor(ResponseItemDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(out.get()).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setRootValueSeparator(null);
+        long count = 0;
+        try (Stream<PostalItem> items = itemRepository.streamAllByPostOfficeIdOrderById(postOfficeId)) {
+            for (Iterator<PostalItem> iterator = items.iterator(); iterator.hasNext(); count++) {
+                PostalItem item = iterator.next();
+                writer.writeValue(generator, itemMapper.PostalItem_To_ResponseItemDto(item));
+                generator.writeRaw('\n');
+                entityManager.detach(item);
+            }
+        }
+        generator.flush();
+        return count;
+    }
+
+    /**
+     * checks that the post office exists without loading it
+     *
+     * @param postOfficeId id of post office
+     */
+    private void checkOfficeExists(Long postOfficeId) {
+        if (!postOfficeRepository.existsById(postOfficeId))
+            throw ItemTransitions.officeNotFound(postOfficeId);
+    }
+
+    /**
+     * validates the limit of a keyset page
+     *
+     * @param limit count of records in a page
+     * @return first page of the passed size, ordered by id
+     */
+    private PageRequest seekPageRequest(Integer limit) {
+        if (limit == null || limit < 1 || limit > properties.getPage().getMaxLimit())
+            throw new BadAttributeValueException(String.format("limit (%s) is not valid, it should be between 1 and %s",
+                    limit, properties.getPage().getMaxLimit()));
+        return PageRequest.of(0, limit, Sort.by("id"));
     }
 
     /**
-     * register a new postal item
+     * register a new postal item, the item and its first history record are written in a single flush
      *
      * @param newItem new item information
      * @return registered item information
      */
+    @Transactional
     public ResponseItemDto register(RegisterItemDto newItem) {
         if (newItem == null)
             throw new BadAttributeValueException("the passed value of postal item is not valid");
-        PostalItem postalItem = itemRepository.save(itemMapper.RegisterItemDto_to_PostalItem(newItem, ItemStatus.REGISTERED));
-        postalItem.getHistory().add(new HistoryItem(ItemStatus.REGISTERED, postalItem));
-        itemRepository.save(postalItem);
+        PostalItem postalItem = itemRepository.save(newPostalItem(newItem));
+        publishRegistered(postalItem);
         return itemMapper.PostalItem_To_ResponseItemDto(postalItem);
     }
 
+    /**
+     * register a batch of new postal items (e.g. a manifest upload), all items are registered or none of them
+     *
+     * @param newItems new items information
+     * @return registered items information, in the same order as the passed items
+     */
+    @Transactional
+    public List<ResponseItemDto> registerAll(List<RegisterItemDto> newItems) {
+        if (newItems == null || newItems.isEmpty() || newItems.stream().anyMatch(Objects::isNull))
+            throw new BadAttributeValueException("the passed values of postal items are not valid");
+        if (newItems.size() > properties.getRegister().getMaxBatchSize())
+            throw new BadAttributeValueException(String.format("count of postal items (%s) exceeds the limit (%s)",
+                    newItems.size(), properties.getRegister().getMaxBatchSize()));
+        List<PostalItem> postalItems = newItems.stream().map(this::newPostalItem).toList();
+        List<PostalItem> registered = itemRepository.saveAll(postalItems);
+        registered.forEach(this::publishRegistered);
+        return registered.stream()
+                .map(itemMapper::PostalItem_To_ResponseItemDto)
+                .toList();
+    }
+
+    /**
+     * creates a new REGISTERED postal item together with its first history record,
+     * the history record is persisted by cascade when the item is saved
+     *
+     * @param newItem new item information
+     * @return new postal item that is not saved yet
+     */
+    private PostalItem newPostalItem(RegisterItemDto newItem) {
+        PostalItem postalItem = itemMapper.RegisterItemDto_to_PostalItem(newItem, ItemStatus.REGISTERED);
+        HistoryItem registered = new HistoryItem(ItemStatus.REGISTERED, postalItem);
+        postalItem.setRegisteredAt(registered.getTimestamp());
+        postalItem.getHistory().add(registered);
+        return postalItem;
+    }
+
     /**
      * update postal item status to arrived to post office
      *
@@ -100,6 +304,17 @@ public class PostalItemService {
         return updateItem(updatedItem, ItemStatus.ARRIVED);
     }
 
+    /**
+     * update postal item status to arrived to post office once per idempotency key
+     *
+     * @param updatedItem    contains postal item id and post office id
+     * @param idempotencyKey key of the scan, a scan sent again with the same key returns the first result
+     * @return updated postal item information
+     */
+    public ResponseItemDto arriveToPostOffice(UpdateItemDto updatedItem, String idempotencyKey) {
+        return idempotentScans.apply(idempotencyKey, ItemStatus.ARRIVED, updatedItem, () -> arriveToPostOffice(updatedItem));
+    }
+
     /**
      * update postal item status to departed from post office
      *
@@ -110,6 +325,17 @@ public class PostalItemService {
         return updateItem(updatedItem, ItemStatus.DEPARTED);
     }
 
+    /**
+     * update postal item status to departed from post office once per idempotency key
+     *
+     * @param updatedItem    contains postal item id and post office id
+     * @param idempotencyKey key of the scan, a scan sent again with the same key returns the first result
+     * @return updated postal item information
+     */
+    public ResponseItemDto departFromPostOffice(UpdateItemDto updatedItem, String idempotencyKey) {
+        return idempotentScans.apply(idempotencyKey, ItemStatus.DEPARTED, updatedItem, () -> departFromPostOffice(updatedItem));
+    }
+
     /**
      * update postal item status to received by recipient
      *
@@ -121,49 +347,332 @@ public class PostalItemService {
     }
 
     /**
-     * updates a specific postal item status to the new status that is passed
+     * update postal item status to received by recipient once per idempotency key
+     *
+     * @param updatedItem    contains postal item id and post office id
+     * @param idempotencyKey key of the scan, a scan sent again with the same key returns the first result
+     * @return updated postal item information
+     */
+    public ResponseItemDto receiveByRecipient(UpdateItemDto updatedItem, String idempotencyKey) {
+        return idempotentScans.apply(idempotencyKey, ItemStatus.RECEIVED, updatedItem, () -> receiveByRecipient(updatedItem));
+    }
+
+    /**
+     * updates a specific postal item status to the new status that is passed.
+     * the new history record is inserted on its own, so the history collection of the item is never loaded.
+     * the update runs in its own transaction, which is repeated when the item is changed by another request meanwhile.
+     * the update holds the lock of the item in this instance until its transaction is done
      *
      * @param updatedItem contains postal item id and post office id
      * @param status      new status that will be set to the postal item
      * @return updated postal item information
      */
     ResponseItemDto updateItem(UpdateItemDto updatedItem, ItemStatus status) {
-        if (updatedItem.getId() == null)
-            throw new BadAttributeValueException("item id is not valid");
-        if (updatedItem.getPostOfficeId() == null)
-            throw new BadAttributeValueException("post office id is not valid");
+        ItemTransitions.checkUpdate(updatedItem);
+        TransactionCallback<ResponseItemDto> update = properties.getUpdate().getMode() == UpdateMode.CONDITIONAL
+                ? tx -> applyConditionalUpdate(updatedItem, status)
+                : tx -> applyUpdate(updatedItem, status);
+        //changes of the same item in this instance wait for each other, so they do not conflict in db
+        return itemLocks.withLock(updatedItem.getId(), () -> inTransaction(update,
+                () -> String.format("item with id (%s) is being updated by other requests, try again", updatedItem.getId())));
+    }
+
+    /**
+     * loads and validates the postal item, then flushes its changes with the history record.
+     * the post office is not loaded, its name is read through the cache and the item refers to it by id,
+     * an office that is deleted meanwhile is detected by its foreign key
+     */
+    private ResponseItemDto applyUpdate(UpdateItemDto updatedItem, ItemStatus status) {
         //get postal item from db
         Optional<PostalItem> dbItem = itemRepository.findById(updatedItem.getId());
-        if (dbItem.isEmpty())
-            throw new NoSuchElementException(String.format("item with id (%s) is not found", updatedItem.getId()));
-        //if item is already received, no further modifications can be done
-        if (dbItem.get().getStatus() == ItemStatus.RECEIVED)
-            throw new BadAttributeValueException(String.format("item with id (%s) has already been RECEIVED", updatedItem.getId()));
-        //get post office from db
-
-        Optional<PostOffice> postOffice = postOfficeRepository.findById(updatedItem.getPostOfficeId());
-        if (postOffice.isEmpty())
-            throw new NoSuchElementException(String.format("post office  with id (%s) is not found", updatedItem.getPostOfficeId()));
-
-        //postal item can not depart from an office that is different from the one it arrived to
-        //or in case it hasn't even arrived to this office (meaning its current status is not Arrived)
-        if (status == ItemStatus.DEPARTED) {
-            //if item has not arrived to post office
-            if (dbItem.get().getPostOffice() == null)
-                throw new BadAttributeValueException(String.format("item with id (%s) did NOT ARRIVE to post office yet", updatedItem.getId()));
-            //if the item is departed from a different office (other that the one it arrived to)
-            if ((!Objects.equals(dbItem.get().getPostOffice().getId(), postOffice.get().getId())))
-                throw new BadAttributeValueException(String.format("item with id (%s) can not DEPART from a post office (%s) to which it did NOT ARRIVE", updatedItem.getId(), updatedItem.getPostOfficeId()));
+        checkItemCanMove(updatedItem.getId(), dbItem.orElse(null));
+        //get post office name from the cache or db
+        Optional<PostOfficeName> postOffice = postOfficeRepository.findNameById(updatedItem.getPostOfficeId());
+        HistoryItem historyItem = moveItem(dbItem.get(), updatedItem.getPostOfficeId(), postOffice.orElse(null), status);
+        try {
+            if (historyWriteBehind.isEnabled())
+                appendHistory(List.of(historyItem));
+            else
+                historyItemRepository.saveAndFlush(historyItem);
+        } catch (DataIntegrityViolationException ex) {
+            throw officeViolation(ex, updatedItem.getPostOfficeId());
         }
+
+        //return updated item information, the item changes are flushed with the history record
+        return itemMapper.PostalItem_To_ResponseItemDto(dbItem.get());
+    }
+
+    /**
+     * moves the postal item with a single guarded update that also inserts the history record.
+     * when the update is rejected, the item is loaded and validated to report why with the same errors as {@link #applyUpdate}
+     */
+    private ResponseItemDto applyConditionalUpdate(UpdateItemDto updatedItem, ItemStatus status) {
+        Optional<MovedItem> movedItem;
+        try {
+            movedItem = itemRepository.moveItem(updatedItem.getId(), updatedItem.getPostOfficeId(), status);
+        } catch (DataIntegrityViolationException ex) {
+            throw officeViolation(ex, updatedItem.getPostOfficeId());
+        }
+        if (movedItem.isPresent()) {
+            MovedItem item = movedItem.get();
+            //the guarded update inserts the outbox event itself, and it does not read the office,
+            //so its name is left out of the status change
+            eventPublisher.publishEvent(statusChanged(item.getId(), item.getStatus(), updatedItem.getPostOfficeId(), null, item.getMovedAt()));
+            officeStats.moved(item.getPreviousPostOfficeId(), item.getPreviousStatus(), item.getPostOfficeId(), item.getStatus());
+            return itemMapper.MovedItem_To_ResponseItemDto(item);
+        }
+
+        PostalItem dbItem = itemRepository.findById(updatedItem.getId()).orElse(null);
+        checkItemCanMove(updatedItem.getId(), dbItem);
+        checkMove(dbItem, updatedItem.getPostOfficeId(), postOfficeRepository.findNameById(updatedItem.getPostOfficeId()).orElse(null), status);
+        //the item could be moved now, it was changed by another request after the update was rejected
+        throw new ObjectOptimisticLockingFailureException(PostalItem.class, updatedItem.getId());
+    }
+
+    /**
+     * translates a violation of the office foreign key of the postal item or of its history record, the office was deleted meanwhile
+     *
+     * @param ex       violation raised when the item changes are written
+     * @param officeId id of post office
+     * @return not found exception of the office, or the passed violation when another constraint is violated
+     */
+    private RuntimeException officeViolation(DataIntegrityViolationException ex, Long officeId) {
+        if (isOfficeViolation(ex))
+            return ItemTransitions.officeNotFound(officeId);
+        return ex;
+    }
+
+    private static boolean isOfficeViolation(DataIntegrityViolationException ex) {
+        return ex.getCause() instanceof ConstraintViolationException violation
+                && ItemTransitions.OFFICE_FOREIGN_KEYS.contains(violation.getConstraintName());
+    }
+
+    /**
+     * applies a batch of scan events, each event is validated with the same rules as a single status update.
+     * all referenced postal items and post offices are loaded up front, and the history records are written together.
+     * the batch runs in a single transaction, which is repeated when one of its items is changed by another request meanwhile,
+     * or when one of its offices is deleted meanwhile, then the events of the deleted office are rejected.
+     * the batch holds the locks of all its items in this instance until its transaction is done
+     *
+     * @param events scan events, applied in the passed order
+     * @return result of each scan event, in the same order as the passed events
+     */
+    public List<ScanResultDto> scanAll(List<ScanEventDto> events) {
+        if (events == null || events.isEmpty())
+            throw new BadAttributeValueException("the passed scan events are not valid");
+        if (events.size() > properties.getScan().getMaxBatchSize())
+            throw new BadAttributeValueException(String.format("count of scan events (%s) exceeds the limit (%s)",
+                    events.size(), properties.getScan().getMaxBatchSize()));
+        return itemLocks.withLocks(collectIds(events, ScanEventDto::getItemId), () -> inTransaction(tx -> applyScanEvents(events),
+                () -> "the scanned items are being updated by other requests, try again"));
+    }
+
+    private List<ScanResultDto> applyScanEvents(List<ScanEventDto> events) {
+        Map<Long, PostalItem> items = itemRepository.findAllById(collectIds(events, ScanEventDto::getItemId))
+                .stream().collect(Collectors.toMap(PostalItem::getId, Function.identity()));
+        Map<Long, PostOfficeName> offices = postOfficeRepository.findNamesByIds(collectIds(events, ScanEventDto::getPostOfficeId))
+                .stream().collect(Collectors.toMap(PostOfficeName::id, Function.identity()));
+
+        List<HistoryItem> history = new ArrayList<>(events.size());
+        List<ScanResultDto> results = new ArrayList<>(events.size());
+        for (ScanEventDto event : events) {
+            ScanResultDto.ScanResultDtoBuilder result = ScanResultDto.builder()
+                    .itemId(event.getItemId())
+                    .postOfficeId(event.getPostOfficeId())
+                    .status(event.getStatus());
+            try {
+                checkScanEvent(event);
+                PostalItem item = items.get(event.getItemId());
+                checkItemCanMove(event.getItemId(), item);
+                history.add(moveItem(item, event.getPostOfficeId(), offices.get(event.getPostOfficeId()), event.getStatus()));
+                result.accepted(true).item(itemMapper.PostalItem_To_ResponseItemDto(item));
+            } catch (ApiBaseException ex) {
+                result.accepted(false).error(ex.getClass().getSimpleName()).message(ex.getMessage());
+            }
+            results.add(result.build());
+        }
+        try {
+            if (historyWriteBehind.isEnabled())
+                appendHistory(history);
+            else
+                historyItemRepository.saveAllAndFlush(history);
+        } catch (DataIntegrityViolationException ex) {
+            //an office was deleted after it was read, the batch is repeated on fresh data, which rejects its events
+            if (isOfficeViolation(ex))
+                throw new ObjectOptimisticLockingFailureException(PostOffice.class, offices.keySet(), ex);
+            throw ex;
+        }
+        return results;
+    }
+
+    /**
+     * flushes the moved items, so a conflicting move fails before its history records are reserved,
+     * then passes the records to be written behind the transaction
+     *
+     * @param history history records of the moved items
+     */
+    private void appendHistory(List<HistoryItem> history) {
+        itemRepository.flush();
+        historyWriteBehind.append(history);
+    }
+
+    /**
+     * runs the work in a new transaction. postal items are versioned, when one of them is changed by another
+     * request before the transaction commits, the whole transaction is repeated on fresh data,
+     * up to myConfig.tracking.update.max-attempts times
+     *
+     * @param work            work to run in the transaction
+     * @param conflictMessage message of the exception that is thrown when all attempts fail
+     * @return result of the work
+     */
+    private <T> T inTransaction(TransactionCallback<T> work, Supplier<String> conflictMessage) {
+        int maxAttempts = properties.getUpdate().getMaxAttempts();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(work);
+            } catch (OptimisticLockingFailureException ex) {
+                if (attempt >= maxAttempts)
+                    throw new ConcurrentUpdateException(conflictMessage.get());
+            }
+        }
+    }
+
+    /**
+     * validates the attributes of a single scan event
+     *
+     * @param event scan event
+     */
+    private void checkScanEvent(ScanEventDto event) {
+        if (event == null || event.getItemId() == null)
+            throw new BadAttributeValueException("item id is not valid");
+        if (event.getPostOfficeId() == null)
+            throw new BadAttributeValueException("post office id is not valid");
+        if (event.getStatus() == null || event.getStatus() == ItemStatus.REGISTERED)
+            throw new BadAttributeValueException(String.format("status (%s) is not a valid scan status", event.getStatus()));
+    }
+
+    private static Set<Long> collectIds(List<ScanEventDto> events, Function<ScanEventDto, Long> id) {
+        return events.stream()
+                .filter(Objects::nonNull)
+                .map(id)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * checks that the postal item exists and it can still change its status, see {@link ItemTransitions}
+     *
+     * @param itemId id of postal item
+     * @param item   postal item loaded from db, null if it is not found
+     */
+    private void checkItemCanMove(Long itemId, PostalItem item) {
+        ItemTransitions.checkItemCanMove(itemId, item == null ? null : item.getStatus());
+    }
+
+    /**
+     * checks that the post office exists and that the postal item can get the new status at it, see {@link ItemTransitions}
+     *
+     * @param item     postal item that can still change its status
+     * @param officeId id of post office
+     * @param office   id and name of post office, null if it is not found
+     * @param status   new status that will be set to the postal item
+     */
+    private void checkMove(PostalItem item, Long officeId, PostOfficeName office, ItemStatus status) {
+        ItemTransitions.checkMove(item.getId(), item.getPostOffice() == null ? null : item.getPostOffice().getId(),
+                officeId, office, status);
+    }
+
+    /**
+     * moves the postal item to the post office with the new status, the item refers to the office by id
+     *
+     * @param item     postal item that can still change its status
+     * @param officeId id of post office
+     * @param office   id and name of post office, null if it is not found
+     * @param status   new status that will be set to the postal item
+     * @return history record of the move, with the office and its current name
+     */
+    private HistoryItem moveItem(PostalItem item, Long officeId, PostOfficeName office, ItemStatus status) {
+        checkMove(item, officeId, office, status);
+        officeStats.moved(item.getPostOffice() == null ? null : item.getPostOffice().getId(), item.getStatus(), officeId, status);
         //update item
-        dbItem.get().setPostOffice(postOffice.get());
-        dbItem.get().setStatus(status);
-        dbItem.get().getHistory().add(new HistoryItem(status, dbItem.get()));
+        item.setPostOffice(postOfficeRepository.getReferenceById(officeId));
+        item.setStatus(status);
+        HistoryItem historyItem = new HistoryItem(status, item, item.getPostOffice(), office.name());
+        item.setMovedAt(historyItem.getTimestamp());
+        publishStatusChanged(item, officeId, office.name(), historyItem.getTimestamp());
+        return historyItem;
+    }
 
-        //return updated item information
-        return itemMapper.PostalItem_To_ResponseItemDto(
-                itemRepository.save(dbItem.get())
-        );
+    /**
+     * publishes the registration of the postal item, with the time of its first history record
+     *
+     * @param item registered postal item, its id is assigned
+     */
+    private void publishRegistered(PostalItem item) {
+        publishStatusChanged(item, null, null, item.getHistory().iterator().next().getTimestamp());
+    }
+
+    /**
+     * writes the status change of the postal item to the {@link OutboxService} outbox in the current transaction,
+     * and publishes it to the subscribers of {@link ItemEventHub}, which get it once the transaction commits.
+     * a transaction that is rolled back or repeated publishes nothing
+     *
+     * @param item       moved postal item
+     * @param officeId   id of post office
+     * @param officeName name of post office
+     * @param timestamp  time of operation
+     */
+    private void publishStatusChanged(PostalItem item, Long officeId, String officeName, Date timestamp) {
+        ItemStatusChangedDto event = statusChanged(item.getId(), item.getStatus(), officeId, officeName, timestamp);
+        outbox.write(event);
+        eventPublisher.publishEvent(event);
+    }
+
+    /**
+     * @param itemId     id of moved postal item
+     * @param status     new status of postal item
+     * @param officeId   id of post office
+     * @param officeName name of post office, null if it was not read
+     * @param timestamp  time of operation
+     * @return status change of the postal item
+     */
+    private static ItemStatusChangedDto statusChanged(Long itemId, ItemStatus status, Long officeId, String officeName, Date timestamp) {
+        return ItemStatusChangedDto.builder()
+                .itemId(itemId)
+                .status(status)
+                .postOfficeId(officeId)
+                .postOfficeName(officeName)
+                .timestamp(timestamp)
+                .build();
+    }
+
+    /**
+     * subscribes to the status changes of a specific postal item
+     *
+     * @param itemId id of postal item
+     * @param sink   receiver of the status changes
+     * @return subscription, it is cancelled when the client goes away
+     */
+    public ItemEventHub.Subscription subscribeToItem(Long itemId, ItemEventHub.Sink sink) {
+        if (itemId == null)
+            throw new BadAttributeValueException("item id is not valid");
+        if (!itemRepository.existsById(itemId))
+            throw ItemTransitions.itemNotFound(itemId);
+        return eventHub.subscribeToItem(itemId, sink);
+    }
+
+    /**
+     * subscribes to the status changes of the postal items at a specific post office
+     *
+     * @param postOfficeId id of post office
+     * @param sink         receiver of the status changes
+     * @return subscription, it is cancelled when the client goes away
+     */
+    public ItemEventHub.Subscription subscribeToOffice(Long postOfficeId, ItemEventHub.Sink sink) {
+        if (postOfficeId == null)
+            throw new BadAttributeValueException("post office id is not valid");
+        checkOfficeExists(postOfficeId);
+        return eventHub.subscribeToOffice(postOfficeId, sink);
     }
 
     /**
@@ -176,11 +685,28 @@ public class PostalItemService {
     public Page<PostalItemHistoryDto> getPostalItemHistory(Long postalItemId, PageRequest pageRequest) {
         if (postalItemId == null)
             throw new BadAttributeValueException("item id is not valid");
-        if (!itemRepository.existsById(postalItemId))
-            throw new NoSuchElementException(String.format("item with id (%s) is not found", postalItemId));
-        return historyItemService.findByItemId(postalItemId, pageRequest);
+        return historyItemService.findByItemId(postalItemId, pageRequest)
+                .orElseThrow(() -> ItemTransitions.itemNotFound(postalItemId));
 
     }
 
-
+    /**
+     * get a keyset page of the history of a specific postal item, ordered by time of operation
+     *
+     * @param postalItemId id of postal item
+     * @param after        cursor returned with the previous page, null for the first page
+     * @param limit        count of records in a page
+     * @return page of history records of a postal item that come after the cursor
+     */
+    public CursorPageDto<PostalItemHistoryDto> getPostalItemHistory(Long postalItemId, String after, Integer limit) {
+        if (postalItemId == null)
+            throw new BadAttributeValueException("item id is not valid");
+        KeysetCursor cursor = KeysetCursor.decode(after, true);
+        int pageSize = seekPageRequest(limit).getPageSize();
+        CursorPageDto<PostalItemHistoryDto> page = historyItemService.findByItemIdAfter(postalItemId, cursor, pageSize);
+        //an empty page is the only case in which the item may not exist
+        if (page.getContent().isEmpty() && !itemRepository.existsById(postalItemId))
+            throw ItemTransitions.itemNotFound(postalItemId);
+        return page;
+    }
 }
@@ -0,0 +1,89 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.config.ReactiveConfig;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postOffice.ResponsePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postOffice.UpdatePostOfficeDto;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.exception.NoSuchElementException;
+import com.ritazcode.mailtracking.mapper.PostOfficeMapper;
+import com.ritazcode.mailtracking.repository.reactive.PostOfficeRecord;
+import com.ritazcode.mailtracking.repository.reactive.ReactivePostOfficeRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+/**
+ * post office operations of the reactive stack, with the same validation and errors as {@link PostOfficeService}
+ */
+@Service
+@Profile(ReactiveConfig.PROFILE)
+@RequiredArgsConstructor
+public class ReactivePostOfficeService {
+    private final ReactivePostOfficeRepository repository;
+    private final R2dbcEntityTemplate template;
+    private final PostOfficeMapper mapper;
+
+    /**
+     * get post office information from db
+     *
+     * @param id id of post office
+     * @return post office information
+     */
+    public Mono<ResponsePostOfficeDto> view(Long id) {
+        if (id == null)
+            return Mono.error(new BadAttributeValueException("post office id is not valid"));
+        return findOffice(id).map(mapper::PostOfficeRecord_To_ResponsePostOfficeDto);
+    }
+
+    /**
+     * update a specific post office
+     *
+     * @param updatedOfficeDto updated post office
+     * @return updated post office information
+     */
+    public Mono<ResponsePostOfficeDto> update(UpdatePostOfficeDto updatedOfficeDto) {
+        if (updatedOfficeDto == null || updatedOfficeDto.getId() == null)
+            return Mono.error(new BadAttributeValueException("the passed post office values or post office id is not valid"));
+        return findOffice(updatedOfficeDto.getId())
+                .flatMap(dbOffice -> template.update(mapper.UpdatePostOfficeDto_To_PostOfficeRecord(updatedOfficeDto)))
+                .map(mapper::PostOfficeRecord_To_ResponsePostOfficeDto);
+    }
+
+    /**
+     * create a new post office by user
+     *
+     * @param newDto new post office information
+     * @return created post office information
+     */
+    public Mono<ResponsePostOfficeDto> create(CreatePostOfficeDto newDto) {
+        if (newDto == null)
+            return Mono.error(new BadAttributeValueException("the passed value of post office is not valid"));
+        PostOfficeRecord newOffice = mapper.CreatePostOfficeDto_To_PostOfficeRecord(newDto);
+        return repository.nextId()
+                .flatMap(id -> {
+                    newOffice.setId(id);
+                    return template.insert(newOffice);
+                })
+                .map(mapper::PostOfficeRecord_To_ResponsePostOfficeDto);
+    }
+
+    /**
+     * delete a specific post office by its id
+     *
+     * @param id id of post office
+     * @return completes when the office is deleted
+     */
+    public Mono<Void> delete(Long id) {
+        if (id == null)
+            return Mono.error(new BadAttributeValueException(String.format("the passed id (%s) is not valid", id)));
+        return findOffice(id).flatMap(repository::delete);
+    }
+
+    private Mono<PostOfficeRecord> findOffice(Long id) {
+        return repository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new NoSuchElementException(String.format("No such post office with id (%s)", id))));
+    }
+}
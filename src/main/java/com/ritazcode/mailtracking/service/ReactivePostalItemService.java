@@ -0,0 +1,508 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.config.ReactiveConfig;
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.dto.CursorPageDto;
+import com.ritazcode.mailtracking.dto.postalItem.ItemStatusChangedDto;
+import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.exception.ConcurrentUpdateException;
+import com.ritazcode.mailtracking.mapper.HistoryItemMapper;
+import com.ritazcode.mailtracking.mapper.PostalItemMapper;
+import com.ritazcode.mailtracking.repository.PostOfficeName;
+import com.ritazcode.mailtracking.repository.reactive.HistoryItemRecord;
+import com.ritazcode.mailtracking.repository.reactive.HistoryItemView;
+import com.ritazcode.mailtracking.repository.reactive.OutboxEventRecord;
+import com.ritazcode.mailtracking.repository.reactive.PostalItemRecord;
+import com.ritazcode.mailtracking.repository.reactive.ReactiveHistoryItemRepository;
+import com.ritazcode.mailtracking.repository.reactive.ReactiveOutboxEventRepository;
+import com.ritazcode.mailtracking.repository.reactive.ReactivePostOfficeRepository;
+import com.ritazcode.mailtracking.repository.reactive.ReactivePostalItemRepository;
+import io.r2dbc.postgresql.api.PostgresqlException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * postal item operations of the reactive stack, served under the reactive profile.
+ * the status changes follow the same {@link ItemTransitions} as {@link PostalItemService}, so both stacks
+ * accept and reject the same moves with the same errors. a move is a versioned update of the item and an insert
+ * of its history record and its outbox event in one transaction, which is repeated when the item is changed
+ * by another request meanwhile
+ */
+@Service
+@Profile(ReactiveConfig.PROFILE)
+@RequiredArgsConstructor
+public class ReactivePostalItemService {
+
+    private final PostalItemMapper itemMapper;
+    private final HistoryItemMapper historyMapper;
+    private final ReactivePostalItemRepository itemRepository;
+    private final ReactivePostOfficeRepository postOfficeRepository;
+    private final ReactiveHistoryItemRepository historyItemRepository;
+    private final ReactiveOutboxEventRepository outboxRepository;
+    private final R2dbcEntityTemplate template;
+    private final TransactionalOperator transactionalOperator;
+    private final TrackingProperties properties;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ItemEventHub eventHub;
+
+    /**
+     * postal item moved in a transaction, with the name of its new post office
+     */
+    private record Move(PostalItemRecord item, PostOfficeName office) {
+    }
+
+    /**
+     * get a paged list of postal items
+     *
+     * @param pageRequest contains page number and page size
+     * @return paged list of postal items
+     */
+    public Mono<Page<ResponseItemDto>> getPostalItems(PageRequest pageRequest) {
+        return itemRepository.findAllBy(pageRequest)
+                .map(itemMapper::PostalItemRecord_To_ResponseItemDto)
+                .collectList()
+                .zipWith(itemRepository.count(), (content, total) -> new PageImpl<>(content, pageRequest, total));
+    }
+
+    /**
+     * get a keyset page of postal items, ordered by id
+     *
+     * @param after cursor returned with the previous page, null for the first page
+     * @param limit count of records in a page
+     * @return page of postal items that come after the cursor
+     */
+    public Mono<CursorPageDto<ResponseItemDto>> getPostalItems(String after, Integer limit) {
+        return Mono.defer(() -> {
+            KeysetCursor cursor = KeysetCursor.decode(after, false);
+            int pageSize = checkLimit(limit);
+            return itemPage(itemRepository.findByIdGreaterThan(cursor.id(), seekPageRequest(pageSize)), pageSize);
+        });
+    }
+
+    /**
+     * get a specific postal item information
+     *
+     * @param id postal item id
+     * @return postal item information
+     */
+    public Mono<ResponseItemDto> view(Long id) {
+        if (id == null)
+            return Mono.error(new BadAttributeValueException("item id is not valid"));
+        return itemRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> ItemTransitions.itemNotFound(id)))
+                .map(itemMapper::PostalItemRecord_To_ResponseItemDto);
+    }
+
+    /**
+     * get a paged list of postal items that are now in a specific post office
+     *
+     * @param postOfficeId id of post office
+     * @param pageRequest  contains page number and page size
+     * @return paged list of postal items of a specific office
+     */
+    public Mono<Page<ResponseItemDto>> getOfficeItems(Long postOfficeId, PageRequest pageRequest) {
+        if (postOfficeId == null)
+            return Mono.error(new BadAttributeValueException("post office id is not valid"));
+        return itemRepository.findAllByOfficeId(postOfficeId, pageRequest)
+                .map(itemMapper::PostalItemRecord_To_ResponseItemDto)
+                .collectList()
+                //an empty page is the only case in which the office may not exist
+                .flatMap(content -> content.isEmpty() ? checkOfficeExists(postOfficeId).thenReturn(content) : Mono.just(content))
+                .zipWith(itemRepository.countByOfficeId(postOfficeId), (content, total) -> new PageImpl<>(content, pageRequest, total));
+    }
+
+    /**
+     * get a keyset page of postal items that are now in a specific post office, ordered by id
+     *
+     * @param postOfficeId id of post office
+     * @param after        cursor returned with the previous page, null for the first page
+     * @param limit        count of records in a page
+     * @return page of postal items of a specific office that come after the cursor
+     */
+    public Mono<CursorPageDto<ResponseItemDto>> getOfficeItems(Long postOfficeId, String after, Integer limit) {
+        if (postOfficeId == null)
+            return Mono.error(new BadAttributeValueException("post office id is not valid"));
+        return Mono.defer(() -> {
+            KeysetCursor cursor = KeysetCursor.decode(after, false);
+            int pageSize = checkLimit(limit);
+            return itemPage(itemRepository.findByOfficeIdAndIdGreaterThan(postOfficeId, cursor.id(), seekPageRequest(pageSize)), pageSize);
+        }).flatMap(page -> page.getContent().isEmpty() ? checkOfficeExists(postOfficeId).thenReturn(page) : Mono.just(page));
+    }
+
+    /**
+     * all postal items that are now in a specific post office, ordered by id. the items are read from db
+     * as the client takes them, so the export takes the same heap whatever the count of items is
+     *
+     * @param postOfficeId id of post office
+     * @return postal items of the office
+     */
+    public Flux<ResponseItemDto> exportOfficeItems(Long postOfficeId) {
+        if (postOfficeId == null)
+            return Flux.error(new BadAttributeValueException("post office id is not valid"));
+        return checkOfficeExists(postOfficeId)
+                .thenMany(itemRepository.findAllByOfficeIdOrderById(postOfficeId))
+                .map(itemMapper::PostalItemRecord_To_ResponseItemDto);
+    }
+
+    private Mono<CursorPageDto<ResponseItemDto>> itemPage(Flux<PostalItemRecord> items, int limit) {
+        return items.collectList().map(fetched -> KeysetCursor.page(KeysetCursor.slice(fetched, limit),
+                itemMapper::PostalItemRecord_To_ResponseItemDto, item -> new KeysetCursor(null, item.getId())));
+    }
+
+    private Mono<Void> checkOfficeExists(Long postOfficeId) {
+        return postOfficeRepository.existsById(postOfficeId)
+                .flatMap(exists -> exists ? Mono.<Void>empty() : Mono.error(ItemTransitions.officeNotFound(postOfficeId)));
+    }
+
+    /**
+     * validates the limit of a keyset page
+     *
+     * @param limit count of records in a page
+     * @return the passed limit
+     */
+    private int checkLimit(Integer limit) {
+        if (limit == null || limit < 1 || limit > properties.getPage().getMaxLimit())
+            throw new BadAttributeValueException(String.format("limit (%s) is not valid, it should be between 1 and %s",
+                    limit, properties.getPage().getMaxLimit()));
+        return limit;
+    }
+
+    /**
+     * @return first page ordered by id, with one record more than the limit to tell if there is a next page
+     */
+    private static PageRequest seekPageRequest(int limit) {
+        return PageRequest.of(0, limit + 1, Sort.by("id"));
+    }
+
+    /**
+     * register a new postal item together with its first history record
+     *
+     * @param newItem new item information
+     * @return registered item information
+     */
+    public Mono<ResponseItemDto> register(RegisterItemDto newItem) {
+        if (newItem == null)
+            return Mono.error(new BadAttributeValueException("the passed value of postal item is not valid"));
+        return insertItem(newItem)
+                .map(itemMapper::PostalItemRecord_To_ResponseItemDto)
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * register a batch of new postal items (e.g. a manifest upload), all items are registered or none of them
+     *
+     * @param newItems new items information
+     * @return registered items information, in the same order as the passed items
+     */
+    public Mono<List<ResponseItemDto>> registerAll(List<RegisterItemDto> newItems) {
+        if (newItems == null || newItems.isEmpty() || newItems.stream().anyMatch(Objects::isNull))
+            return Mono.error(new BadAttributeValueException("the passed values of postal items are not valid"));
+        if (newItems.size() > properties.getRegister().getMaxBatchSize())
+            return Mono.error(new BadAttributeValueException(String.format("count of postal items (%s) exceeds the limit (%s)",
+                    newItems.size(), properties.getRegister().getMaxBatchSize())));
+        return Flux.fromIterable(newItems)
+                .concatMap(this::insertItem)
+                .map(itemMapper::PostalItemRecord_To_ResponseItemDto)
+                .collectList()
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * inserts a new REGISTERED postal item, its first history record and its outbox event
+     *
+     * @param newItem new item information
+     * @return inserted postal item
+     */
+    private Mono<PostalItemRecord> insertItem(RegisterItemDto newItem) {
+        PostalItemRecord item = itemMapper.RegisterItemDto_to_PostalItemRecord(newItem, ItemStatus.REGISTERED);
+        LocalDateTime registeredAt = now();
+        item.setRegisteredAt(registeredAt);
+        return itemRepository.nextId()
+                .flatMap(id -> {
+                    item.setId(id);
+                    return template.insert(item);
+                })
+                .flatMap(inserted -> insertHistory(inserted, null, registeredAt)
+                        .then(insertOutboxEvent(inserted, null, registeredAt))
+                        .thenReturn(inserted));
+    }
+
+    /**
+     * update postal item status to arrived to post office
+     *
+     * @param updatedItem contains postal item id and post office id
+     * @return updated postal item information
+     */
+    public Mono<ResponseItemDto> arriveToPostOffice(UpdateItemDto updatedItem) {
+        return updateItem(updatedItem, ItemStatus.ARRIVED);
+    }
+
+    /**
+     * update postal item status to departed from post office
+     *
+     * @param updatedItem contains postal item id and post office id
+     * @return updated postal item information
+     */
+    public Mono<ResponseItemDto> departFromPostOffice(UpdateItemDto updatedItem) {
+        return updateItem(updatedItem, ItemStatus.DEPARTED);
+    }
+
+    /**
+     * update postal item status to received by recipient
+     *
+     * @param updatedItem contains postal item id and post office id
+     * @return updated postal item information
+     */
+    public Mono<ResponseItemDto> receiveByRecipient(UpdateItemDto updatedItem) {
+        return updateItem(updatedItem, ItemStatus.RECEIVED);
+    }
+
+    /**
+     * updates a specific postal item status to the new status that is passed.
+     * the update runs in its own transaction, which is repeated when the item is changed by another request meanwhile,
+     * up to myConfig.tracking.update.max-attempts times. the status change is published to {@link ItemEventHub} once it commits
+     *
+     * @param updatedItem contains postal item id and post office id
+     * @param status      new status that will be set to the postal item
+     * @return updated postal item information
+     */
+    Mono<ResponseItemDto> updateItem(UpdateItemDto updatedItem, ItemStatus status) {
+        return Mono.fromRunnable(() -> ItemTransitions.checkUpdate(updatedItem))
+                .then(Mono.defer(() -> applyUpdate(updatedItem, status).as(transactionalOperator::transactional)))
+                .retryWhen(Retry.max(properties.getUpdate().getMaxAttempts() - 1L)
+                        .filter(OptimisticLockingFailureException.class::isInstance)
+                        .onRetryExhaustedThrow((spec, signal) -> new ConcurrentUpdateException(
+                                String.format("item with id (%s) is being updated by other requests, try again", updatedItem.getId()))))
+                .doOnNext(this::publishStatusChanged)
+                .map(move -> itemMapper.PostalItemRecord_To_ResponseItemDto(move.item()));
+    }
+
+    /**
+     * loads and validates the postal item, then writes its versioned update with the history record
+     */
+    private Mono<Move> applyUpdate(UpdateItemDto updatedItem, ItemStatus status) {
+        Long itemId = updatedItem.getId();
+        Long officeId = updatedItem.getPostOfficeId();
+        return itemRepository.findById(itemId)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(dbItem -> {
+                    ItemTransitions.checkItemCanMove(itemId, dbItem.map(PostalItemRecord::getStatus).orElse(null));
+                    return findOfficeName(officeId).flatMap(office -> moveItem(dbItem.get(), officeId, office.orElse(null), status));
+                })
+                .onErrorMap(DataIntegrityViolationException.class, ex -> officeViolation(ex, officeId));
+    }
+
+    private Mono<Move> moveItem(PostalItemRecord item, Long officeId, PostOfficeName office, ItemStatus status) {
+        ItemTransitions.checkMove(item.getId(), item.getOfficeId(), officeId, office, status);
+        LocalDateTime movedAt = now();
+        item.setOfficeId(officeId);
+        item.setStatus(status);
+        item.setMovedAt(movedAt);
+        //the update is rejected with an optimistic locking failure when the version was changed meanwhile
+        return template.update(item)
+                .flatMap(updated -> insertHistory(updated, office, movedAt)
+                        .then(insertOutboxEvent(updated, office, movedAt))
+                        .thenReturn(new Move(updated, office)));
+    }
+
+    private void publishStatusChanged(Move move) {
+        eventPublisher.publishEvent(ItemStatusChangedDto.builder()
+                .itemId(move.item().getId())
+                .status(move.item().getStatus())
+                .postOfficeId(move.item().getOfficeId())
+                .postOfficeName(move.office().name())
+                .timestamp(historyMapper.LocalDateTime_To_Date(move.item().getMovedAt()))
+                .build());
+    }
+
+    /**
+     * stream of the status changes of a specific postal item
+     *
+     * @param itemId id of postal item
+     * @return status changes committed after the subscription, it ends when the client falls behind or the subscription times out
+     */
+    public Flux<ItemStatusChangedDto> itemEvents(Long itemId) {
+        if (itemId == null)
+            return Flux.error(new BadAttributeValueException("item id is not valid"));
+        return itemRepository.existsById(itemId)
+                .flatMapMany(exists -> exists
+                        ? events(sink -> eventHub.subscribeToItem(itemId, sink))
+                        : Flux.error(ItemTransitions.itemNotFound(itemId)));
+    }
+
+    /**
+     * stream of the status changes of the postal items at a specific post office
+     *
+     * @param postOfficeId id of post office
+     * @return status changes committed after the subscription, it ends when the client falls behind or the subscription times out
+     */
+    public Flux<ItemStatusChangedDto> officeEvents(Long postOfficeId) {
+        if (postOfficeId == null)
+            return Flux.error(new BadAttributeValueException("post office id is not valid"));
+        return checkOfficeExists(postOfficeId)
+                .thenMany(events(sink -> eventHub.subscribeToOffice(postOfficeId, sink)));
+    }
+
+    /**
+     * bridges a subscription of the hub to a flux, the events that the client did not request yet wait in a buffer
+     * of myConfig.tracking.events.queue-capacity, a client that falls further behind gets an error and is dropped
+     */
+    private Flux<ItemStatusChangedDto> events(Function<ItemEventHub.Sink, ItemEventHub.Subscription> subscribe) {
+        TrackingProperties.Events events = properties.getEvents();
+        return Flux.<ItemStatusChangedDto>create(emitter -> {
+                    ItemEventHub.Subscription subscription = subscribe.apply(new ItemEventHub.Sink() {
+                        @Override
+                        public void send(ItemStatusChangedDto event) {
+                            emitter.next(event);
+                        }
+
+                        @Override
+                        public void close() {
+                            emitter.complete();
+                        }
+                    });
+                    emitter.onDispose(subscription::cancel);
+                })
+                .onBackpressureBuffer(events.getQueueCapacity())
+                .take(events.getTimeout());
+    }
+
+    private Mono<Optional<PostOfficeName>> findOfficeName(Long officeId) {
+        return postOfficeRepository.findById(officeId)
+                .map(office -> Optional.of(new PostOfficeName(office.getId(), office.getName())))
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    /**
+     * inserts the history record of the current status of the postal item
+     *
+     * @param item      postal item with its new status
+     * @param office    id and name of post office, null for registration
+     * @param timestamp time of operation
+     * @return inserted history record
+     */
+    private Mono<HistoryItemRecord> insertHistory(PostalItemRecord item, PostOfficeName office, LocalDateTime timestamp) {
+        return historyItemRepository.nextId()
+                .flatMap(id -> template.insert(HistoryItemRecord.builder()
+                        .id(id)
+                        .itemId(item.getId())
+                        .status(item.getStatus().ordinal())
+                        .timestamp(timestamp)
+                        .officeId(office == null ? null : office.id())
+                        .officeName(office == null ? null : office.name())
+                        .build()));
+    }
+
+    /**
+     * inserts the outbox event of the current status of the postal item, see {@link OutboxService}
+     *
+     * @param item      postal item with its new status
+     * @param office    id and name of post office, null for registration
+     * @param timestamp time of operation
+     * @return inserted outbox event
+     */
+    private Mono<OutboxEventRecord> insertOutboxEvent(PostalItemRecord item, PostOfficeName office, LocalDateTime timestamp) {
+        return outboxRepository.nextId()
+                .flatMap(id -> template.insert(OutboxEventRecord.builder()
+                        .id(id)
+                        .itemId(item.getId())
+                        .status(item.getStatus().ordinal())
+                        .postOfficeId(office == null ? null : office.id())
+                        .postOfficeName(office == null ? null : office.name())
+                        .timestamp(timestamp)
+                        .build()));
+    }
+
+    /**
+     * translates a violation of the office foreign key of the postal item or of its history record, the office was deleted meanwhile
+     *
+     * @param ex       violation raised when the item changes are written
+     * @param officeId id of post office
+     * @return not found exception of the office, or the passed violation when another constraint is violated
+     */
+    private static Throwable officeViolation(DataIntegrityViolationException ex, Long officeId) {
+        if (ex.getCause() instanceof PostgresqlException violation
+                && violation.getErrorDetails().getConstraintName().filter(ItemTransitions.OFFICE_FOREIGN_KEYS::contains).isPresent())
+            return ItemTransitions.officeNotFound(officeId);
+        return ex;
+    }
+
+    /**
+     * @return current time with the precision of db
+     */
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+    }
+
+    /**
+     * get history of a specific postal item
+     *
+     * @param postalItemId id of postal item
+     * @param pageRequest  contains page number and page size
+     * @return paged list of history record of a postal item
+     */
+    public Mono<Page<PostalItemHistoryDto>> getPostalItemHistory(Long postalItemId, PageRequest pageRequest) {
+        if (postalItemId == null)
+            return Mono.error(new BadAttributeValueException("item id is not valid"));
+        //every registered item has at least its registration record, so no record means no item
+        return historyItemRepository.countByItemId(postalItemId)
+                .flatMap(total -> total == 0
+                        ? Mono.error(ItemTransitions.itemNotFound(postalItemId))
+                        : historyItemRepository.findPageByItemId(postalItemId, pageRequest.getPageSize(), pageRequest.getOffset())
+                        .map(historyMapper::HistoryItemView_To_PostalItemHistoryDto)
+                        .collectList()
+                        .map(content -> new PageImpl<>(content, pageRequest, total)));
+    }
+
+    /**
+     * get a keyset page of the history of a specific postal item, ordered by time of operation
+     *
+     * @param postalItemId id of postal item
+     * @param after        cursor returned with the previous page, null for the first page
+     * @param limit        count of records in a page
+     * @return page of history records of a postal item that come after the cursor
+     */
+    public Mono<CursorPageDto<PostalItemHistoryDto>> getPostalItemHistory(Long postalItemId, String after, Integer limit) {
+        if (postalItemId == null)
+            return Mono.error(new BadAttributeValueException("item id is not valid"));
+        return Mono.defer(() -> {
+            KeysetCursor cursor = KeysetCursor.decode(after, true);
+            int pageSize = checkLimit(limit);
+            return historyItemRepository.findByItemIdAfter(postalItemId, cursor.localTimestamp(), cursor.id(), pageSize + 1)
+                    .collectList()
+                    .map(fetched -> KeysetCursor.page(KeysetCursor.slice(fetched, pageSize),
+                            historyMapper::HistoryItemView_To_PostalItemHistoryDto,
+                            (HistoryItemView historyItem) -> new KeysetCursor(historyMapper.LocalDateTime_To_Date(historyItem.timestamp()), historyItem.id())));
+        }).flatMap(page -> page.getContent().isEmpty()
+                //an empty page is the only case in which the item may not exist
+                ? itemRepository.existsById(postalItemId)
+                .flatMap(exists -> exists ? Mono.just(page) : Mono.error(ItemTransitions.itemNotFound(postalItemId)))
+                : Mono.just(page));
+    }
+}
@@ -0,0 +1,91 @@
+package com.ritazcode.mailtracking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.entity.OutboxEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * outbox sink that writes every event as a json line to local files, so the events are published without a broker.
+ * a file is named after the time it was started and the id of its first event, a new one is started when it reaches
+ * myConfig.tracking.outbox.file.max-file-size, and only the newest max-files files are kept
+ */
+@Component
+@ConditionalOnProperty(name = "my-config.tracking.outbox.file.enabled", havingValue = "true", matchIfMissing = true)
+public class RollingFileOutboxSink implements OutboxSink {
+
+    private static final String FILE_SUFFIX = ".ndjson";
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final boolean fsync;
+
+    private FileChannel file;
+
+    public RollingFileOutboxSink(TrackingProperties properties, ObjectMapper objectMapper) {
+        TrackingProperties.OutboxFile outboxFile = properties.getOutbox().getFile();
+        this.objectMapper = objectMapper;
+        this.directory = outboxFile.getDirectory();
+        this.maxFileSize = outboxFile.getMaxFileSize().toBytes();
+        this.maxFiles = outboxFile.getMaxFiles();
+        this.fsync = outboxFile.isFsync();
+    }
+
+    @Override
+    public synchronized void send(List<OutboxEvent> events) throws IOException {
+        if (events.isEmpty())
+            return;
+        if (file == null || file.size() >= maxFileSize)
+            startFile(events.get(0).getId());
+        StringBuilder lines = new StringBuilder();
+        for (OutboxEvent event : events)
+            lines.append(objectMapper.writeValueAsString(event)).append('\n');
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining())
+            file.write(buffer);
+        if (fsync)
+            file.force(false);
+    }
+
+    @PreDestroy
+    synchronized void close() throws IOException {
+        if (file != null)
+            file.close();
+        file = null;
+    }
+
+    private void startFile(long firstId) throws IOException {
+        close();
+        Files.createDirectories(directory);
+        file = FileChannel.open(directory.resolve(String.format("%020d-%020d%s", System.currentTimeMillis(), firstId, FILE_SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        List<Path> files = files();
+        for (int i = 0; i < files.size() - maxFiles; i++)
+            Files.deleteIfExists(files.get(i));
+    }
+
+    /**
+     * @return outbox files ordered by the time they were started
+     */
+    List<Path> files() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+}
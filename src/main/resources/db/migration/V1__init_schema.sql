@@ -0,0 +1,47 @@
+-- ids are reserved by hibernate in blocks, the increment must match mail_tracking.id.allocation_size
+create sequence post_office_seq start with 1 increment by 50;
+create sequence postal_item_seq start with 1 increment by 50;
+create sequence history_item_seq start with 1 increment by 50;
+
+create table post_office
+(
+    office_id bigint not null,
+    index     varchar(255),
+    name      varchar(255),
+    address   varchar(255),
+    constraint post_office_pkey primary key (office_id)
+);
+
+create table postal_item
+(
+    item_id           bigint not null,
+    type              varchar(255),
+    recipient_index   varchar(255),
+    recipient_address varchar(255),
+    recipient_name    varchar(255),
+    status            varchar(255),
+    office_id         bigint,
+    constraint postal_item_pkey primary key (item_id),
+    constraint postal_item_type_check check (type in ('LETTER', 'PARCEL', 'PACKAGE', 'POSTCARD')),
+    constraint postal_item_status_check check (status in ('REGISTERED', 'ARRIVED', 'DEPARTED', 'RECEIVED')),
+    constraint postal_item_office_fk foreign key (office_id) references post_office (office_id)
+);
+
+create table history_item
+(
+    id        bigint not null,
+    item_id   bigint,
+    status    smallint,
+    timestamp timestamp(6),
+    constraint history_item_pkey primary key (id),
+    constraint history_item_status_check check (status between 0 and 3),
+    constraint history_item_item_fk foreign key (item_id) references postal_item (item_id)
+);
+
+-- items of an office ordered by id: findAllByPostOfficeId and the office keyset page,
+-- also covers the foreign key to post_office
+create index postal_item_office_id_item_id_idx on postal_item (office_id, item_id);
+
+-- history of an item ordered by (timestamp, id): findByItemId and the history keyset page,
+-- also covers the foreign key to postal_item
+create index history_item_item_id_timestamp_id_idx on history_item (item_id, timestamp, id);
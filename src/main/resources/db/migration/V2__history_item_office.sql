@@ -0,0 +1,16 @@
+-- each history record keeps the office it was scanned at and the name the office had at that time,
+-- the name stays when the office is deleted
+alter table history_item
+    add column office_id   bigint,
+    add column office_name varchar(255),
+    add constraint history_item_office_fk foreign key (office_id) references post_office (office_id) on delete set null;
+
+-- the office of older records is not known, the current office of their item is not the one they were scanned at,
+-- so their office columns are left null, history pages report no office for them
+
+-- history pages read only history_item columns, so they can be served by an index only scan
+drop index history_item_item_id_timestamp_id_idx;
+create index history_item_item_id_timestamp_id_idx on history_item (item_id, timestamp, id)
+    include (status, office_id, office_name);
+
+create index history_item_office_id_idx on history_item (office_id);
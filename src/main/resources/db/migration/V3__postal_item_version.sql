@@ -0,0 +1,3 @@
+-- optimistic locking of postal items, see PostalItem.version
+alter table postal_item
+    add column version bigint not null default 0;
@@ -0,0 +1,5 @@
+-- time of the latest move of the item, null until it is first scanned
+alter table postal_item add column moved_at timestamp(6);
+
+update postal_item p
+set moved_at = (select max(h.timestamp) from history_item h where h.item_id = p.item_id and h.status <> 0);
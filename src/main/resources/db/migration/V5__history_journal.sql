@@ -0,0 +1,7 @@
+-- last journal entry of each application instance that is written to history_item, see myConfig.tracking.history
+create table history_journal
+(
+    journal_id       varchar(255) not null,
+    flushed_sequence bigint       not null,
+    constraint history_journal_pkey primary key (journal_id)
+);
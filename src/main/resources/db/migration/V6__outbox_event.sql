@@ -0,0 +1,15 @@
+-- registrations and status changes that are not sent to the outbox sinks yet, see myConfig.tracking.outbox.
+-- a row is written in the transaction of its change and deleted once it is sent, so the table stays small
+create sequence outbox_event_seq start with 1 increment by 50;
+
+create table outbox_event
+(
+    event_id         bigint   not null,
+    item_id          bigint   not null,
+    status           smallint not null,
+    post_office_id   bigint,
+    post_office_name varchar(255),
+    timestamp        timestamp(6) not null,
+    constraint outbox_event_pkey primary key (event_id),
+    constraint outbox_event_status_check check (status between 0 and 3)
+);
@@ -0,0 +1,66 @@
+-- time of the registration of the item, no history record of the item is older,
+-- so history lookups bound by it and by moved_at read only the partitions of the months the item was tracked in
+alter table postal_item add column registered_at timestamp(6);
+
+update postal_item p
+set registered_at = coalesce((select min(h.timestamp) from history_item h where h.item_id = p.item_id), localtimestamp);
+
+alter table postal_item
+    alter column registered_at set default localtimestamp,
+    alter column registered_at set not null;
+
+-- history_item is range partitioned by timestamp, one partition per month named history_item_pYYYYMM.
+-- partitions of the next months are created by HistoryPartitionService, which also detaches the partitions
+-- older than myConfig.tracking.history.partitions.retention. records that fall outside of every monthly
+-- partition are kept in history_item_default
+alter table history_item rename to history_item_unpartitioned;
+alter index history_item_pkey rename to history_item_unpartitioned_pkey;
+alter index history_item_item_id_timestamp_id_idx rename to history_item_unpartitioned_item_id_timestamp_id_idx;
+alter index history_item_office_id_idx rename to history_item_unpartitioned_office_id_idx;
+
+-- the primary key of a partitioned table must hold the partition key
+create table history_item
+(
+    id          bigint       not null,
+    item_id     bigint,
+    status      smallint,
+    timestamp   timestamp(6) not null,
+    office_id   bigint,
+    office_name varchar(255),
+    constraint history_item_pkey primary key (id, timestamp),
+    constraint history_item_status_check check (status between 0 and 3),
+    constraint history_item_item_fk foreign key (item_id) references postal_item (item_id),
+    constraint history_item_office_fk foreign key (office_id) references post_office (office_id) on delete set null
+) partition by range (timestamp);
+
+do
+$$
+    declare
+        month      date := date_trunc('month', least(localtimestamp,
+                                                      coalesce((select min(timestamp) from history_item_unpartitioned), localtimestamp)));
+        last_month date := date_trunc('month', localtimestamp) + interval '3 months';
+    begin
+        while month <= last_month
+            loop
+                execute format('create table %I partition of history_item for values from (%L) to (%L)',
+                               'history_item_p' || to_char(month, 'YYYYMM'), month, month + interval '1 month');
+                month := month + interval '1 month';
+            end loop;
+    end
+$$;
+
+create table history_item_default partition of history_item default;
+
+insert into history_item (id, item_id, status, timestamp, office_id, office_name)
+select id, item_id, status, timestamp, office_id, office_name
+from history_item_unpartitioned;
+
+drop table history_item_unpartitioned;
+
+-- created on the parent, so every partition gets its own copy of the indexes
+create index history_item_item_id_timestamp_id_idx on history_item (item_id, timestamp, id)
+    include (status, office_id, office_name);
+
+create index history_item_office_id_idx on history_item (office_id);
+
+analyze history_item;
@@ -0,0 +1,73 @@
+package com.ritazcode.mailtracking.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConnectionLimitingDataSourceTest {
+
+    @Mock
+    private DataSource target;
+    @Mock
+    private Connection connection;
+
+    private ConnectionLimitingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        //arrange
+        dataSource = new ConnectionLimitingDataSource(target, 1, Duration.ofMillis(50));
+    }
+
+    @Test
+    @DisplayName("getConnection() should fail when all permits are taken until the timeout")
+    void getConnection_ThrowException_WhenNoPermitIsFree() throws SQLException {
+        //arrange
+        when(target.getConnection()).thenReturn(connection);
+        dataSource.getConnection();
+        //act
+        //assert
+        SQLTransientConnectionException thrown = assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        assertThat(thrown.getMessage()).isEqualTo("no database permit is free after 50 ms");
+        verify(target, times(1)).getConnection();
+    }
+
+    @Test
+    @DisplayName("close() should return the permit of the connection once")
+    void close_ReleasePermitOnce() throws SQLException {
+        //arrange
+        when(target.getConnection()).thenReturn(connection);
+        Connection actualConnection = dataSource.getConnection();
+        //act
+        actualConnection.close();
+        actualConnection.close();
+        //assert
+        assertThat(dataSource.getAvailablePermits()).isEqualTo(1);
+        verify(connection, times(2)).close();
+    }
+
+    @Test
+    @DisplayName("getConnection() should return the permit when the target data source fails")
+    void getConnection_ReleasePermit_WhenTargetFails() throws SQLException {
+        //arrange
+        when(target.getConnection()).thenThrow(new SQLException("connection refused"));
+        //act
+        //assert
+        assertThrows(SQLException.class, dataSource::getConnection);
+        assertThat(dataSource.getAvailablePermits()).isEqualTo(1);
+    }
+}
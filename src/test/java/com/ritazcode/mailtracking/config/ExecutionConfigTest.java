@@ -0,0 +1,56 @@
+package com.ritazcode.mailtracking.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ExecutionConfigTest {
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    @DisplayName("virtual threads mode should be rejected when the runtime has no virtual threads")
+    void newVirtualThreadPerTaskExecutor_ThrowException_WhenRuntimeIsOlderThan21() {
+        //act
+        //assert
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, ExecutionConfig::newVirtualThreadPerTaskExecutor);
+        assertThat(thrown.getMessage()).startsWith("VIRTUAL threads need java 21 or later");
+    }
+
+    @Test
+    @EnabledForJreRange(max = JRE.JAVA_20)
+    @DisplayName("the application should fail to start in the virtual threads mode when the runtime has no virtual threads")
+    void start_Fail_WhenVirtualThreadsModeRunsOnRuntimeOlderThan21() {
+        //act
+        new ApplicationContextRunner()
+                .withPropertyValues("my-config.execution.threads=virtual")
+                .withUserConfiguration(ExecutionConfig.class)
+                .run(context -> {
+                    //assert
+                    assertThat(context).hasFailed();
+                    assertThat(context.getStartupFailure()).hasStackTraceContaining("VIRTUAL threads need java 21 or later");
+                });
+    }
+
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    @DisplayName("virtual threads mode should run every task on a new virtual thread")
+    void newVirtualThreadPerTaskExecutor_RunTaskOnVirtualThread() throws Exception {
+        //arrange
+        ExecutorService executor = ExecutionConfig.newVirtualThreadPerTaskExecutor();
+        try {
+            //act
+            Object virtual = executor.submit(() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread())).get();
+            //assert
+            assertThat(virtual).isEqualTo(true);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
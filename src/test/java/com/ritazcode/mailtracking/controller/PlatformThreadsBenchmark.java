@@ -0,0 +1,7 @@
+package com.ritazcode.mailtracking.controller;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "myConfig.execution.threads=platform")
+class PlatformThreadsBenchmark extends RequestThreadsBenchmark {
+}
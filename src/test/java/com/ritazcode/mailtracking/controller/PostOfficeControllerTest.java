@@ -2,10 +2,13 @@ package com.ritazcode.mailtracking.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postOffice.OfficeStatsDto;
 import com.ritazcode.mailtracking.dto.postOffice.ResponsePostOfficeDto;
 import com.ritazcode.mailtracking.dto.postOffice.UpdatePostOfficeDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
 import com.ritazcode.mailtracking.entity.PostOffice;
 import com.ritazcode.mailtracking.service.BaseTest;
+import com.ritazcode.mailtracking.service.OfficeStatsService;
 import com.ritazcode.mailtracking.service.PostOfficeService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -19,6 +22,9 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.when;
@@ -32,6 +38,9 @@ class PostOfficeControllerTest extends BaseTest {
     @MockBean
     private PostOfficeService postOfficeService;
 
+    @MockBean
+    private OfficeStatsService officeStatsService;
+
     @Autowired
     @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
     private MockMvc mockMvc;
@@ -81,6 +90,27 @@ class PostOfficeControllerTest extends BaseTest {
         assertThat(actualResult).isEqualTo(expectedResult);
     }
 
+    @Test
+    @DisplayName("stats() should return the count of postal items at the post office by status")
+    void stats_shouldReturnCountOfItemsByStatus() throws Exception {
+        Map<ItemStatus, Long> items = new EnumMap<>(ItemStatus.class);
+        items.put(ItemStatus.ARRIVED, 3L);
+        items.put(ItemStatus.DEPARTED, 1L);
+        when(officeStatsService.getStats(office.getId())).thenReturn(OfficeStatsDto.builder()
+                .postOfficeId(office.getId())
+                .items(items)
+                .build());
+
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/v1/post-office/stats")
+                        .param("id", String.valueOf(office.getId())))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.postOfficeId").value(1))
+                .andExpect(jsonPath("$.items.ARRIVED").value(3))
+                .andExpect(jsonPath("$.items.DEPARTED").value(1));
+    }
+
     @Test
     @DisplayName("create() should create a new post office and return its information as ResponsePostOfficeDto")
     void create_ShouldCreateNewPostOffice() throws Exception {
@@ -1,20 +1,28 @@
 package com.ritazcode.mailtracking.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ritazcode.mailtracking.dto.CursorPageDto;
+import com.ritazcode.mailtracking.dto.postalItem.ItemStatusChangedDto;
 import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
 import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
 import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.ScanEventDto;
+import com.ritazcode.mailtracking.dto.postalItem.ScanResultDto;
 import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
 import com.ritazcode.mailtracking.entity.ItemStatus;
 import com.ritazcode.mailtracking.entity.ItemType;
 import com.ritazcode.mailtracking.entity.PostOffice;
 import com.ritazcode.mailtracking.entity.PostalItem;
+import com.ritazcode.mailtracking.exception.NoSuchElementException;
 import com.ritazcode.mailtracking.repository.PostalItemRepository;
 import com.ritazcode.mailtracking.service.BaseTest;
+import com.ritazcode.mailtracking.service.ItemEventHub;
+import com.ritazcode.mailtracking.service.ItemViewCache;
 import com.ritazcode.mailtracking.service.PostalItemService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -22,20 +30,29 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.util.function.ThrowingSupplier;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.List;
+import java.util.OptionalLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -112,24 +129,78 @@ class PostalItemControllerTest extends BaseTest {
         assertThat(actualResult).isEqualTo(expectedResult);
     }
 
+    @Test
+    @DisplayName("getAllItemsAfter() should return a keyset page of postal items")
+    void getAllItemsAfter_shouldReturnCursorPageOfPostalItems() throws Exception {
+        CursorPageDto<ResponseItemDto> page = CursorPageDto.<ResponseItemDto>builder()
+                .content(List.of(responseItemDto))
+                .hasNext(true)
+                .nextCursor("MQ")
+                .build();
+        String expectedResult = objectMapper.writeValueAsString(page);
+        when(service.getPostalItems("MA", 1)).thenReturn(page);
+
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/v1/postal-item/all-items/cursor")
+                        .param("after", "MA")
+                        .param("limit", "1")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.nextCursor", is("MQ")))
+                .andExpect(content().json(expectedResult));
+    }
+
     @Test
     @DisplayName("view() should return postal item information as ResponseItemDto")
     void view_shouldReturnPostalItemInformation() throws Exception {
         String expectedResult = objectMapper.writeValueAsString(responseItemDto);
 
-        when(service.view(postalItem.getId())).thenReturn(responseItemDto);
+        when(service.viewWithVersion(postalItem.getId())).thenReturn(new ItemViewCache.CachedItem(responseItemDto, 3));
         MvcResult mvcResult = this.mockMvc.perform(MockMvcRequestBuilders
                         .get("/api/v1/postal-item/view/{id}", postalItem.getId())
                         .contentType(MediaType.APPLICATION_JSON))
                 .andDo(print())
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
                 .andExpect(content().json(expectedResult))
                 .andReturn();
         String actualResult = mvcResult.getResponse().getContentAsString();
         assertThat(actualResult).isEqualTo(expectedResult);
     }
 
+    @Test
+    @DisplayName("view() should answer 304 from the item version without loading the item when the client has the current one")
+    void view_shouldReturnNotModified_WhenEtagMatches() throws Exception {
+        when(service.getItemVersion(postalItem.getId())).thenReturn(3L);
+
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/v1/postal-item/view/{id}", postalItem.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"2\", \"3\""))
+                .andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(content().string(""));
+        verify(service, never()).viewWithVersion(anyLong());
+    }
+
+    @Test
+    @DisplayName("view() should return the item with its new tag when the client has an old one")
+    void view_shouldReturnItem_WhenEtagDoesNotMatch() throws Exception {
+        when(service.getItemVersion(postalItem.getId())).thenReturn(4L);
+        when(service.viewWithVersion(postalItem.getId())).thenReturn(new ItemViewCache.CachedItem(responseItemDto, 4));
+
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/v1/postal-item/view/{id}", postalItem.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""))
+                .andExpect(content().json(objectMapper.writeValueAsString(responseItemDto)));
+    }
+
     @Test
     @DisplayName("showItemHistory() should return paged list of the history of postal item")
     void showItemHistory() throws Exception {
@@ -163,6 +234,21 @@ class PostalItemControllerTest extends BaseTest {
         assertThat(actualResult).isEqualTo(expectedResult);
     }
 
+    @Test
+    @DisplayName("showItemHistory() should answer 304 without reading the page when the history version is not changed")
+    void showItemHistory_shouldReturnNotModified_WhenEtagMatches() throws Exception {
+        when(service.getHistoryVersion(postalItem.getId())).thenReturn(OptionalLong.of(5));
+
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/v1/postal-item/history")
+                        .param("id", String.valueOf(postalItem.getId()))
+                        .header(HttpHeaders.IF_NONE_MATCH, "W/\"5\""))
+                .andDo(print())
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"5\""));
+        verify(service, never()).getPostalItemHistory(anyLong(), any(PageRequest.class));
+    }
+
     @Test
     @DisplayName("getOfficeItems() should return paged list of postal items that are in a specific post office")
     void getOfficeItems() throws Exception {
@@ -214,6 +300,48 @@ class PostalItemControllerTest extends BaseTest {
         assertThat(actualResult).isEqualTo(expectedResult);
     }
 
+    @Test
+    @DisplayName("registerBatch() should return the registered postal items information")
+    void registerBatch_shouldReturnRegisteredItemsInformation() throws Exception {
+        List<RegisterItemDto> content = List.of(RegisterItemDto.builder()
+                .type(ItemType.LETTER)
+                .recipientName("recipient name")
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build());
+        String contentAsString = objectMapper.writeValueAsString(content);
+        String expectedResult = objectMapper.writeValueAsString(List.of(responseItemDto));
+
+        when(service.registerAll(content)).thenReturn(List.of(responseItemDto));
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/v1/postal-item/create-batch")
+                        .content(contentAsString)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(expectedResult));
+    }
+
+    @Test
+    @DisplayName("registerBatch() should return bad request when one of the postal items is not valid")
+    void registerBatch_shouldReturnBadRequest_WhenItemIsNotValid() throws Exception {
+        List<RegisterItemDto> content = List.of(RegisterItemDto.builder()
+                .type(ItemType.LETTER)
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build());
+        String contentAsString = objectMapper.writeValueAsString(content);
+
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/v1/postal-item/create-batch")
+                        .content(contentAsString)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.validationErrors", hasSize(1)));
+    }
+
     @Test
     @DisplayName("arrive() should return updated postal item with status ARRIVED")
     void arrive_shouldReturnUpdatedPostalItemInformation() throws Exception {
@@ -225,7 +353,7 @@ class PostalItemControllerTest extends BaseTest {
         String contentAsString = objectMapper.writeValueAsString(content);
         String expectedResult = objectMapper.writeValueAsString(responseItemDto);
 
-        when(service.arriveToPostOffice(content)).thenReturn(responseItemDto);
+        when(service.arriveToPostOffice(content, null)).thenReturn(responseItemDto);
 
         MvcResult mvcResult = this.mockMvc.perform(MockMvcRequestBuilders
                         .post("/api/v1/postal-item/arrive")
@@ -253,7 +381,7 @@ class PostalItemControllerTest extends BaseTest {
         String contentAsString = objectMapper.writeValueAsString(content);
         String expectedResult = objectMapper.writeValueAsString(responseItemDto);
 
-        when(service.departFromPostOffice(content)).thenReturn(responseItemDto);
+        when(service.departFromPostOffice(content, null)).thenReturn(responseItemDto);
 
         MvcResult mvcResult = this.mockMvc.perform(MockMvcRequestBuilders
                         .post("/api/v1/postal-item/depart")
@@ -281,7 +409,7 @@ class PostalItemControllerTest extends BaseTest {
         String contentAsString = objectMapper.writeValueAsString(content);
         String expectedResult = objectMapper.writeValueAsString(responseItemDto);
 
-        when(service.receiveByRecipient(content)).thenReturn(responseItemDto);
+        when(service.receiveByRecipient(content, null)).thenReturn(responseItemDto);
 
         MvcResult mvcResult = this.mockMvc.perform(MockMvcRequestBuilders
                         .post("/api/v1/postal-item/receive")
@@ -296,4 +424,120 @@ class PostalItemControllerTest extends BaseTest {
         String actualResult = mvcResult.getResponse().getContentAsString();
         assertThat(actualResult).isEqualTo(expectedResult);
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("arrive() should pass the idempotency key of the scan to the service")
+    void arrive_shouldPassIdempotencyKey() throws Exception {
+        UpdateItemDto content = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(1L)
+                .build();
+
+        String contentAsString = objectMapper.writeValueAsString(content);
+        String expectedResult = objectMapper.writeValueAsString(responseItemDto);
+
+        when(service.arriveToPostOffice(content, "scan-1")).thenReturn(responseItemDto);
+
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/v1/postal-item/arrive")
+                        .header(PostalItemController.IDEMPOTENCY_KEY, "scan-1")
+                        .content(contentAsString)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(expectedResult));
+    }
+
+    @Test
+    @DisplayName("scanBatch() should return the result of each scan event")
+    void scanBatch_shouldReturnResultOfEachScanEvent() throws Exception {
+        List<ScanEventDto> content = List.of(ScanEventDto.builder()
+                .itemId(1L)
+                .postOfficeId(1L)
+                .status(ItemStatus.ARRIVED)
+                .build());
+        List<ScanResultDto> results = List.of(ScanResultDto.builder()
+                .itemId(1L)
+                .postOfficeId(1L)
+                .status(ItemStatus.ARRIVED)
+                .accepted(true)
+                .item(responseItemDto)
+                .build());
+
+        String contentAsString = objectMapper.writeValueAsString(content);
+        String expectedResult = objectMapper.writeValueAsString(results);
+
+        when(service.scanAll(anyList())).thenReturn(results);
+
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .post("/api/v1/postal-item/scan-batch")
+                        .content(contentAsString)
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json(expectedResult))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].accepted", is(true)));
+    }
+
+    @Test
+    @DisplayName("itemEvents() should stream the status changes of a postal item as server-sent events")
+    void itemEvents_shouldStreamStatusChanges() throws Exception {
+        ItemStatusChangedDto event = ItemStatusChangedDto.builder()
+                .itemId(1L)
+                .status(ItemStatus.ARRIVED)
+                .postOfficeId(1L)
+                .postOfficeName("post office")
+                .build();
+        ArgumentCaptor<ItemEventHub.Sink> sink = ArgumentCaptor.forClass(ItemEventHub.Sink.class);
+
+        when(service.subscribeToItem(eq(1L), sink.capture())).thenReturn(mock(ItemEventHub.Subscription.class));
+
+        MvcResult mvcResult = this.mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/v1/postal-item/events")
+                        .param("id", "1")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        sink.getValue().send(event);
+        sink.getValue().close();
+
+        String actualResult = mvcResult.getResponse().getContentAsString();
+        assertThat(actualResult).contains("event:" + PostalItemController.STATUS_CHANGED_EVENT)
+                .contains("data:" + objectMapper.writeValueAsString(event));
+    }
+
+    @Test
+    @DisplayName("exportOfficeItems() should stream the postal items of the office as newline-delimited json")
+    void exportOfficeItems_shouldStreamJsonLines() throws Exception {
+        String expectedResult = objectMapper.writeValueAsString(responseItemDto) + "\n";
+
+        when(service.exportOfficeItems(eq(1L), any())).thenAnswer(invocation -> {
+            ThrowingSupplier<OutputStream> out = invocation.getArgument(1);
+            out.get().write(expectedResult.getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        });
+
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/v1/postal-item/all-office-items/export")
+                        .param("id", "1")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(expectedResult));
+    }
+
+    @Test
+    @DisplayName("exportOfficeItems() should return not found when the office does not exist")
+    void exportOfficeItems_shouldReturnNotFound_WhenOfficeIsNotFound() throws Exception {
+        when(service.exportOfficeItems(eq(1L), any())).thenThrow(new NoSuchElementException("post office is not found"));
+
+        this.mockMvc.perform(MockMvcRequestBuilders
+                        .get("/api/v1/postal-item/all-office-items/export")
+                        .param("id", "1")
+                        .accept(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.name", is(NoSuchElementException.class.getSimpleName())));
+    }
+}
@@ -0,0 +1,185 @@
+package com.ritazcode.mailtracking.controller;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.config.ReactiveConfig;
+import com.ritazcode.mailtracking.dto.CursorPageDto;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postOffice.ResponsePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.exception.ConcurrentUpdateException;
+import com.ritazcode.mailtracking.service.ReactivePostalItemService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles(ReactiveConfig.PROFILE)
+@Import(TestMailTrackingApplication.class)
+class ReactivePostalItemControllerTest {
+
+    private static final String ITEM_API = "/api/v1/postal-item";
+
+    @Autowired
+    @SuppressWarnings("SpringJavaInjectionPointsAutowiringInspection")
+    private WebTestClient webTestClient;
+    @Autowired
+    private ReactivePostalItemService service;
+
+    @Test
+    @DisplayName("the reactive api should move a postal item and return its history in pages")
+    void moveItem_ReturnHistory_WhenItemIsMoved() {
+        //arrange
+        Long officeId = createOffice("first office");
+        Long itemId = register();
+        //act
+        ResponseItemDto arrived = scan("/arrive", itemId, officeId).expectStatus().isOk()
+                .expectBody(ResponseItemDto.class).returnResult().getResponseBody();
+        ResponseItemDto departed = scan("/depart", itemId, officeId).expectStatus().isOk()
+                .expectBody(ResponseItemDto.class).returnResult().getResponseBody();
+        //assert
+        assertThat(arrived.getStatus()).isEqualTo(ItemStatus.ARRIVED);
+        assertThat(departed.getStatus()).isEqualTo(ItemStatus.DEPARTED);
+        webTestClient.get().uri(ITEM_API + "/view/{id}", itemId).exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.status").isEqualTo(ItemStatus.DEPARTED.name());
+        webTestClient.get().uri(ITEM_API + "/history?pageNumber=1&pageSize=2&id={id}", itemId).exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.totalElements").isEqualTo(3)
+                .jsonPath("$.content[0].status").isEqualTo(ItemStatus.REGISTERED.name())
+                .jsonPath("$.content[1].status").isEqualTo(ItemStatus.ARRIVED.name())
+                .jsonPath("$.content[1].postOfficeName").isEqualTo("first office");
+        CursorPageDto<PostalItemHistoryDto> first = historyAfter(itemId, "");
+        CursorPageDto<PostalItemHistoryDto> second = historyAfter(itemId, first.getNextCursor());
+        assertThat(first.getContent()).extracting(PostalItemHistoryDto::getStatus)
+                .containsExactly(ItemStatus.REGISTERED, ItemStatus.ARRIVED);
+        assertThat(first.isHasNext()).isTrue();
+        assertThat(second.getContent()).extracting(PostalItemHistoryDto::getStatus)
+                .containsExactly(ItemStatus.DEPARTED);
+        assertThat(second.isHasNext()).isFalse();
+    }
+
+    @Test
+    @DisplayName("the reactive api should reject the same moves with the same errors as the blocking one")
+    void moveItem_ReturnError_WhenMoveIsNotValid() {
+        //arrange
+        Long firstOffice = createOffice("first office");
+        Long secondOffice = createOffice("second office");
+        Long itemId = register();
+        //act & assert
+        scan("/depart", itemId, firstOffice).expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.name").isEqualTo(BadAttributeValueException.class.getSimpleName());
+        scan("/arrive", itemId, firstOffice).expectStatus().isOk();
+        scan("/depart", itemId, secondOffice).expectStatus().isBadRequest();
+        scan("/arrive", itemId, Long.MAX_VALUE).expectStatus().isNotFound();
+        scan("/arrive", Long.MAX_VALUE, firstOffice).expectStatus().isNotFound();
+        webTestClient.get().uri(ITEM_API + "/view/{id}", Long.MAX_VALUE).exchange()
+                .expectStatus().isNotFound();
+        webTestClient.post().uri(ITEM_API + "/create").bodyValue(RegisterItemDto.builder().build()).exchange()
+                .expectStatus().isBadRequest()
+                .expectBody().jsonPath("$.validationErrors.length()").isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("concurrent moves of the same item should neither lose updates nor leave the item and its history apart")
+    void updateItem_KeepItemConsistent_WhenMovedConcurrently() {
+        //arrange
+        Long itemId = register();
+        Long[] offices = {createOffice("first office"), createOffice("second office")};
+        AtomicInteger accepted = new AtomicInteger();
+        //act
+        Flux.range(0, 100)
+                .flatMap(i -> service.arriveToPostOffice(UpdateItemDto.builder().id(itemId).postOfficeId(offices[i % 2]).build())
+                        .doOnNext(item -> accepted.incrementAndGet())
+                        .onErrorResume(ConcurrentUpdateException.class, ex -> Mono.empty()), 16)
+                .blockLast(Duration.ofMinutes(1));
+        //assert
+        assertThat(accepted).hasPositiveValue();
+        webTestClient.get().uri(ITEM_API + "/history?pageNumber=1&pageSize=1&id={id}", itemId).exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.totalElements").isEqualTo(accepted.get() + 1);
+    }
+
+    @Test
+    @DisplayName("the reactive api should export every item of an office as newline-delimited json")
+    void exportOfficeItems_ReturnJsonLines() {
+        //arrange
+        Long officeId = createOffice("first office");
+        Long[] itemIds = {register(), register(), register()};
+        for (Long itemId : itemIds)
+            scan("/arrive", itemId, officeId).expectStatus().isOk();
+        //act
+        List<ResponseItemDto> exported = webTestClient.get().uri(ITEM_API + "/all-office-items/export?id={id}", officeId)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .returnResult(ResponseItemDto.class).getResponseBody()
+                .collectList().block(Duration.ofSeconds(30));
+        //assert
+        assertThat(exported).extracting(ResponseItemDto::getId).containsExactly(itemIds);
+        webTestClient.get().uri(ITEM_API + "/all-office-items/export?id={id}", Long.MAX_VALUE).exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private Long createOffice(String name) {
+        return webTestClient.post().uri("/api/v1/post-office/create")
+                .bodyValue(CreatePostOfficeDto.builder()
+                        .index("1232322")
+                        .name(name)
+                        .address("street 1, city")
+                        .build())
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(ResponsePostOfficeDto.class).returnResult().getResponseBody().getId();
+    }
+
+    private Long register() {
+        ResponseItemDto item = webTestClient.post().uri(ITEM_API + "/create")
+                .bodyValue(RegisterItemDto.builder()
+                        .type(ItemType.PARCEL)
+                        .recipientName("recipient name")
+                        .recipientAddress("recipient address")
+                        .recipientIndex("1235654")
+                        .build())
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(ResponseItemDto.class).returnResult().getResponseBody();
+        assertThat(item.getStatus()).isEqualTo(ItemStatus.REGISTERED);
+        return item.getId();
+    }
+
+    private WebTestClient.ResponseSpec scan(String path, Long itemId, Long officeId) {
+        return webTestClient.post().uri(ITEM_API + path)
+                .bodyValue(UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build())
+                .exchange();
+    }
+
+    private CursorPageDto<PostalItemHistoryDto> historyAfter(Long itemId, String after) {
+        return webTestClient.get().uri(ITEM_API + "/history/cursor?limit=2&id={id}&after={after}", itemId, after).exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<CursorPageDto<PostalItemHistoryDto>>() {
+                })
+                .returnResult().getResponseBody();
+    }
+}
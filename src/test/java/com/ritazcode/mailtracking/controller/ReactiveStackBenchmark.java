@@ -0,0 +1,8 @@
+package com.ritazcode.mailtracking.controller;
+
+import com.ritazcode.mailtracking.config.ReactiveConfig;
+import org.springframework.test.context.ActiveProfiles;
+
+@ActiveProfiles(ReactiveConfig.PROFILE)
+class ReactiveStackBenchmark extends RequestThreadsBenchmark {
+}
@@ -0,0 +1,130 @@
+package com.ritazcode.mailtracking.controller;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.service.PostOfficeService;
+import com.ritazcode.mailtracking.service.PostalItemService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Import;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * throughput and latency of the controllers under many concurrent clients, for the thread mode of the subclass.
+ * not a part of the test suite, run with {@code mvn test -Dtest='*ThreadsBenchmark'}.
+ * the client counts can be passed as {@code -Dbenchmark.clients=1000,2500,5000,10000},
+ * each client sends {@code -Dbenchmark.requests} requests one after another
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Import(TestMailTrackingApplication.class)
+abstract class RequestThreadsBenchmark {
+
+    private static final int[] CLIENTS = Arrays.stream(System.getProperty("benchmark.clients", "1000,2500,5000,10000").split(","))
+            .mapToInt(clients -> Integer.parseInt(clients.trim()))
+            .toArray();
+    private static final int REQUESTS_PER_CLIENT = Integer.getInteger("benchmark.requests", 5);
+
+    @LocalServerPort
+    private int port;
+    @Autowired
+    private PostalItemService postalItemService;
+    @Autowired
+    private PostOfficeService postOfficeService;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+    private final List<URI> uris = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        Long officeId = postOfficeService.create(CreatePostOfficeDto.builder()
+                .index("1232322")
+                .name("post office")
+                .address("street 1, city")
+                .build()).getId();
+        for (int i = 0; i < 100; i++) {
+            Long itemId = postalItemService.register(RegisterItemDto.builder()
+                    .type(ItemType.PARCEL)
+                    .recipientName("recipient name")
+                    .recipientAddress("recipient address")
+                    .recipientIndex("1235654")
+                    .build()).getId();
+            postalItemService.arriveToPostOffice(UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build());
+            String base = "http://localhost:" + port + "/api/v1/postal-item";
+            uris.add(URI.create(base + "/view/" + itemId));
+            uris.add(URI.create(base + "/history?pageSize=10&id=" + itemId));
+        }
+    }
+
+    @Test
+    void measureThroughputAndLatency() {
+        run(200);
+        for (int clients : CLIENTS) {
+            Result result = run(clients);
+            System.out.printf("%s clients=%d requests=%d errors=%d throughput=%.0f req/s p50=%d ms p99=%d ms%n",
+                    getClass().getSimpleName(), clients, result.latencies().length, result.errors(),
+                    result.throughput(), result.percentile(50), result.percentile(99));
+            assertThat(result.errors()).isLessThan(result.latencies().length);
+        }
+    }
+
+    private Result run(int clients) {
+        AtomicInteger errors = new AtomicInteger();
+        long[] latencies = new long[clients * REQUESTS_PER_CLIENT];
+        AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        CompletableFuture<?>[] sessions = new CompletableFuture<?>[clients];
+        for (int i = 0; i < clients; i++)
+            sessions[i] = session(i, REQUESTS_PER_CLIENT, latencies, next, errors);
+        CompletableFuture.allOf(sessions).join();
+        long elapsed = System.nanoTime() - start;
+        return new Result(Arrays.copyOf(latencies, next.get()), errors.get(), next.get() * 1e9 / elapsed);
+    }
+
+    /**
+     * sends the requests of a single client, each one after the response of the previous one
+     */
+    private CompletableFuture<Void> session(int clientId, int remaining, long[] latencies, AtomicInteger next, AtomicInteger errors) {
+        if (remaining == 0)
+            return CompletableFuture.completedFuture(null);
+        URI uri = uris.get((clientId + remaining) % uris.size());
+        long sent = System.nanoTime();
+        return client.sendAsync(HttpRequest.newBuilder(uri).timeout(Duration.ofMinutes(2)).GET().build(), HttpResponse.BodyHandlers.discarding())
+                .handle((response, ex) -> {
+                    latencies[next.getAndIncrement()] = (System.nanoTime() - sent) / 1_000_000;
+                    if (ex != null || response.statusCode() != 200)
+                        errors.incrementAndGet();
+                    return null;
+                })
+                .thenCompose(ignored -> session(clientId, remaining - 1, latencies, next, errors));
+    }
+
+    private record Result(long[] latencies, int errors, double throughput) {
+
+        long percentile(int percentile) {
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+        }
+    }
+}
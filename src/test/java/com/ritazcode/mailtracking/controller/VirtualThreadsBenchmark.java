@@ -0,0 +1,15 @@
+package com.ritazcode.mailtracking.controller;
+
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * the virtual threads mode of {@link RequestThreadsBenchmark}, compared with {@link PlatformThreadsBenchmark}.
+ * the build targets java 17 and virtual threads are looked up at runtime, so the benchmark needs a JDK 21 or later
+ * to run the build, e.g. {@code JAVA_HOME=/path/to/jdk-21 mvn test -Dtest='*ThreadsBenchmark'}, it is skipped on older ones
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+@TestPropertySource(properties = "myConfig.execution.threads=virtual")
+class VirtualThreadsBenchmark extends RequestThreadsBenchmark {
+}
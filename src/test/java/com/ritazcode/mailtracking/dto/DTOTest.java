@@ -6,6 +6,8 @@ import com.ritazcode.mailtracking.dto.postOffice.UpdatePostOfficeDto;
 import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
 import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
 import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.ScanEventDto;
+import com.ritazcode.mailtracking.dto.postalItem.ScanResultDto;
 import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
 import com.ritazcode.mailtracking.exception.ErrorResponse;
 import com.ritazcode.mailtracking.service.BaseTest;
@@ -27,6 +29,8 @@ class DTOTest extends BaseTest {
         bean.testBean(RegisterItemDto.class);
         bean.testBean(ResponseItemDto.class);
         bean.testBean(UpdateItemDto.class);
+        bean.testBean(ScanEventDto.class);
+        bean.testBean(ScanResultDto.class);
 
         bean.testBean(CreatePostOfficeDto.class);
         bean.testBean(ResponsePostOfficeDto.class);
@@ -49,8 +49,10 @@ class HistoryItemMapperTest extends BaseTest {
                 .postOffice(office)
                 .build();
         historyItem = HistoryItem.builder()
-                .status(ItemStatus.REGISTERED)
+                .status(ItemStatus.ARRIVED)
                 .item(postalItem)
+                .office(office)
+                .officeName("office name at the time of operation")
                 .build();
     }
 
@@ -61,8 +63,9 @@ class HistoryItemMapperTest extends BaseTest {
 
         assertThat(expectedResult.getItemId()).isEqualTo(postalItem.getId());
         assertThat(expectedResult.getRecipientName()).isEqualTo(postalItem.getRecipientName());
+        //the office of the history record is reported, with the name it had at the time of operation
         assertThat(expectedResult.getPostOfficeId()).isEqualTo(office.getId());
-        assertThat(expectedResult.getPostOfficeName()).isEqualTo(office.getName());
+        assertThat(expectedResult.getPostOfficeName()).isEqualTo(historyItem.getOfficeName());
         assertThat(expectedResult.getType()).isSameAs(postalItem.getType());
     }
 }
\ No newline at end of file
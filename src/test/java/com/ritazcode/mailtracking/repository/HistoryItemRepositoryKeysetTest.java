@@ -0,0 +1,69 @@
+package com.ritazcode.mailtracking.repository;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
+import com.ritazcode.mailtracking.entity.HistoryItem;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.entity.PostalItem;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(TestMailTrackingApplication.class)
+class HistoryItemRepositoryKeysetTest {
+
+    @Autowired
+    private HistoryItemRepository repository;
+
+    @Autowired
+    private PostalItemRepository itemRepository;
+
+    @Test
+    @DisplayName("findByItemIdAfter() should walk the whole history in order, also when records share a timestamp")
+    void findByItemIdAfter_WalkAllRecordsInOrder() {
+        //arrange
+        PostalItem item = itemRepository.save(PostalItem.builder()
+                .type(ItemType.PARCEL)
+                .recipientName("recipient name")
+                .status(ItemStatus.REGISTERED)
+                .build());
+        List<HistoryItem> history = new ArrayList<>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 25; i++) {
+            HistoryItem historyItem = new HistoryItem(ItemStatus.ARRIVED, item);
+            //every three records share the same time
+            historyItem.setTimestamp(new Timestamp(start + (i / 3) * 1000L));
+            history.add(historyItem);
+        }
+        List<Long> expected = repository.saveAll(history).stream().map(HistoryItem::getId).sorted().toList();
+        //act
+        List<Long> walked = new ArrayList<>();
+        Date timestamp = new Date(0);
+        long id = 0;
+        Slice<PostalItemHistoryDto> slice;
+        do {
+            slice = repository.findByItemIdAfter(item.getId(), timestamp, id, PageRequest.of(0, 10));
+            slice.forEach(historyItem -> walked.add(historyItem.getId()));
+            PostalItemHistoryDto last = slice.getContent().get(slice.getNumberOfElements() - 1);
+            timestamp = last.getTimestamp();
+            id = last.getId();
+        } while (slice.hasNext());
+        //assert
+        assertThat(walked).containsExactlyElementsOf(expected);
+    }
+}
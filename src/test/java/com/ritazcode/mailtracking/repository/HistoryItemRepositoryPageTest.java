@@ -0,0 +1,105 @@
+package com.ritazcode.mailtracking.repository;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
+import com.ritazcode.mailtracking.entity.HistoryItem;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.entity.PostOffice;
+import com.ritazcode.mailtracking.entity.PostalItem;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(TestMailTrackingApplication.class)
+class HistoryItemRepositoryPageTest {
+
+    @Autowired
+    private HistoryItemRepository repository;
+    @Autowired
+    private PostalItemRepository itemRepository;
+    @Autowired
+    private PostOfficeRepository officeRepository;
+
+    private PostOffice office;
+    private PostalItem item;
+
+    @BeforeEach
+    void setUp() {
+        office = officeRepository.save(PostOffice.builder().name("post office").build());
+        item = itemRepository.save(PostalItem.builder()
+                .type(ItemType.PARCEL)
+                .recipientName("recipient name")
+                .status(ItemStatus.ARRIVED)
+                .postOffice(office)
+                .build());
+        long start = System.currentTimeMillis();
+        ItemStatus[] statuses = {ItemStatus.REGISTERED, ItemStatus.ARRIVED, ItemStatus.DEPARTED};
+        for (int i = 0; i < statuses.length; i++) {
+            HistoryItem historyItem = statuses[i] == ItemStatus.REGISTERED
+                    ? new HistoryItem(statuses[i], item)
+                    : new HistoryItem(statuses[i], item, office, office.getName());
+            historyItem.setTimestamp(new Timestamp(start + i * 1000L));
+            repository.save(historyItem);
+        }
+        repository.flush();
+        //the office is renamed after the item was scanned there
+        office.setName("renamed post office");
+        officeRepository.saveAndFlush(office);
+    }
+
+    @Test
+    @DisplayName("findPageByItemId() should return the page in time order with the item, the office of each record and the total count")
+    void findPageByItemId_ReturnPageWithItemAndTotal() {
+        //act
+        List<HistoryItemRow> rows = repository.findPageByItemId(item.getId(), 2, 1);
+        //assert
+        assertThat(rows).extracting(HistoryItemRow::getStatus).containsExactly(ItemStatus.ARRIVED, ItemStatus.DEPARTED);
+        assertThat(rows).allSatisfy(row -> {
+            assertThat(row.getItemId()).isEqualTo(item.getId());
+            assertThat(row.getType()).isEqualTo(ItemType.PARCEL);
+            assertThat(row.getPostOfficeId()).isEqualTo(office.getId());
+            assertThat(row.getPostOfficeName()).isEqualTo("post office");
+            assertThat(row.getTotal()).isEqualTo(3);
+        });
+    }
+
+    @Test
+    @DisplayName("findPageByItemId() should tell an empty page of an existing item from a missing item")
+    void findPageByItemId_TellEmptyPageFromMissingItem() {
+        //act
+        List<HistoryItemRow> emptyPage = repository.findPageByItemId(item.getId(), 2, 10);
+        List<HistoryItemRow> missingItem = repository.findPageByItemId(item.getId() + 1000, 2, 0);
+        //assert
+        assertThat(emptyPage).hasSize(1);
+        assertThat(emptyPage.get(0).getHistoryId()).isNull();
+        assertThat(emptyPage.get(0).getTotal()).isEqualTo(3);
+        assertThat(missingItem).isEmpty();
+    }
+
+    @Test
+    @DisplayName("findByItemIdAfter() should report the office of each record with the name it had at the time of operation")
+    void findByItemIdAfter_ReportOfficeOfEachRecord() {
+        //act
+        List<PostalItemHistoryDto> records = repository.findByItemIdAfter(item.getId(), new Date(0), 0L, PageRequest.of(0, 10))
+                .getContent();
+        //assert
+        assertThat(records).extracting(PostalItemHistoryDto::getPostOfficeId)
+                .containsExactly(null, office.getId(), office.getId());
+        assertThat(records).extracting(PostalItemHistoryDto::getPostOfficeName)
+                .containsExactly(null, "post office", "post office");
+    }
+}
@@ -0,0 +1,71 @@
+package com.ritazcode.mailtracking.repository;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.entity.HistoryItem;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.entity.PostalItem;
+import jakarta.persistence.EntityManager;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(TestMailTrackingApplication.class)
+class PostalItemRepositoryBatchTest {
+
+    private static final int ITEMS = 1000;
+
+    @Autowired
+    private PostalItemRepository repository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    @DisplayName("saveAll() should register items with their history in batched inserts and pooled id calls")
+    void saveAll_BatchesInsertsOfItemsAndHistory() {
+        //arrange
+        List<PostalItem> items = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            PostalItem item = PostalItem.builder()
+                    .type(ItemType.LETTER)
+                    .recipientName("recipient " + i)
+                    .recipientAddress("recipient address " + i)
+                    .recipientIndex("1235654")
+                    .status(ItemStatus.REGISTERED)
+                    .build();
+            item.getHistory().add(new HistoryItem(ItemStatus.REGISTERED, item));
+            items.add(item);
+        }
+        //act
+        repository.saveAll(items);
+        entityManager.flush();
+        //assert
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(2L * ITEMS);
+        // one statement per item and one per history record would be 2000 inserts plus the id calls,
+        // with pooled ids and ordered batches it is about 2 * (ITEMS / 50) inserts and as many sequence calls
+        long statements = statistics.getPrepareStatementCount();
+        assertThat(statements).as("prepared statements of %d registered items", ITEMS).isLessThan(ITEMS / 5);
+    }
+}
@@ -0,0 +1,120 @@
+package com.ritazcode.mailtracking.repository;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * checks that the lookups of the repositories are served by the indexes of the migrations
+ * instead of sequential scans of the whole table, and that the history lookups skip the partitions of history_item
+ * of the months before the registration of the item
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(TestMailTrackingApplication.class)
+class QueryPlanTest {
+
+    private static final String HISTORY_PAGE = "select p.item_id, h.id, c.total from postal_item p"
+            + " cross join lateral (select count(*) as total from history_item hc where hc.item_id = p.item_id and hc.timestamp >= p.registered_at) c"
+            + " left join lateral (select hi.id, hi.timestamp from history_item hi"
+            + " where hi.item_id = p.item_id and hi.timestamp >= p.registered_at order by hi.timestamp, hi.id limit 20 offset 0) h on true"
+            + " where p.item_id = 42 order by h.timestamp, h.id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        //the partitions of the current month and of the two months before it
+        jdbcTemplate.execute("""
+                do $$
+                    declare
+                        month date;
+                    begin
+                        for shift in 0..2
+                            loop
+                                month := date_trunc('month', localtimestamp) - shift * interval '1 month';
+                                execute format('create table if not exists %I partition of history_item for values from (%L) to (%L)',
+                                               'history_item_p' || to_char(month, 'YYYYMM'), month, month + interval '1 month');
+                            end loop;
+                    end
+                $$""");
+        jdbcTemplate.update("insert into post_office (office_id, name) select g, 'office ' || g from generate_series(1, 100) g");
+        //items are registered this month, older history records belong to other items
+        jdbcTemplate.update("""
+                insert into postal_item (item_id, type, recipient_name, status, office_id, registered_at)
+                select g, 'LETTER', 'recipient ' || g, 'ARRIVED', g % 100 + 1, date_trunc('month', localtimestamp)
+                from generate_series(1, 20000) g""");
+        jdbcTemplate.update("""
+                insert into history_item (id, item_id, status, timestamp)
+                select g, g % 20000 + 1, 1, date_trunc('month', localtimestamp) - (g / 20000 % 3) * interval '1 month' + g * interval '1 second'
+                from generate_series(1, 100000) g""");
+        jdbcTemplate.execute("analyze post_office, postal_item, history_item");
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource(delimiter = '|', value = {
+            "items page of an office|postal_item_office_id_item_id_idx|"
+                    + "select * from postal_item where office_id = 42 limit 20 offset 20",
+            "items keyset page of an office|postal_item_office_id_item_id_idx|"
+                    + "select * from postal_item where office_id = 42 and item_id > 100 order by item_id limit 21"
+    })
+    @DisplayName("the main lookups should use an index scan")
+    void lookup_UsesIndexScan(String lookup, String index, String sql) {
+        //act
+        String plan = String.join("\n", jdbcTemplate.queryForList("explain " + sql, String.class));
+        //assert
+        assertThat(plan).as(lookup).contains(index).doesNotContain("Seq Scan");
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @CsvSource(delimiter = '|', value = {
+            "history page of an item|" + HISTORY_PAGE,
+            "history keyset page of an item|"
+                    + "select h.id from history_item h join postal_item i on i.item_id = h.item_id"
+                    + " where i.item_id = 42 and h.timestamp >= i.registered_at"
+                    + " and (h.timestamp > '1970-01-01' or (h.timestamp = '1970-01-01' and h.id > 0)) order by h.timestamp, h.id limit 21"
+    })
+    @DisplayName("the history lookups should read only the partitions from the registration of the item on, by the index")
+    void historyLookup_PrunePartitions(String lookup, String sql) {
+        //arrange
+        List<String> months = jdbcTemplate.queryForList(
+                "select to_char(localtimestamp - shift * interval '1 month', 'YYYYMM') from generate_series(0, 2) shift", String.class);
+        //act
+        List<String> plan = jdbcTemplate.queryForList("explain (analyze, costs off, timing off, summary off) " + sql, String.class);
+        //assert
+        String current = "history_item_p" + months.get(0);
+        assertThat(String.join("\n", plan)).as(lookup)
+                .contains(current + "_item_id_timestamp_id")
+                .doesNotContain("Seq Scan on " + current);
+        for (String month : months.subList(1, months.size()))
+            assertThat(plan).as(lookup).filteredOn(line -> line.contains("history_item_p" + month))
+                    .isNotEmpty()
+                    .allMatch(line -> line.contains("never executed"));
+    }
+
+    @Test
+    @DisplayName("the history page should count the records of the item once, not for every record of the page")
+    void historyPage_CountOnce() {
+        //act
+        List<String> plan = jdbcTemplate.queryForList("explain (analyze, costs off, timing off, summary off) " + HISTORY_PAGE, String.class);
+        //assert
+        assertThat(jdbcTemplate.queryForList(HISTORY_PAGE)).hasSizeGreaterThan(1);
+        assertThat(plan).noneMatch(line -> line.contains("SubPlan"))
+                .filteredOn(line -> line.contains("Aggregate"))
+                .singleElement()
+                .asString().contains("loops=1");
+    }
+}
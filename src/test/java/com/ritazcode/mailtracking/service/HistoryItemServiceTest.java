@@ -1,12 +1,12 @@
 package com.ritazcode.mailtracking.service;
 
+import com.ritazcode.mailtracking.dto.CursorPageDto;
 import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
 import com.ritazcode.mailtracking.entity.*;
 import com.ritazcode.mailtracking.exception.BadAttributeValueException;
-import com.ritazcode.mailtracking.exception.NoSuchElementException;
 import com.ritazcode.mailtracking.mapper.HistoryItemMapper;
 import com.ritazcode.mailtracking.repository.HistoryItemRepository;
-import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import com.ritazcode.mailtracking.repository.HistoryItemRow;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -15,9 +15,10 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Optional;
 
@@ -32,8 +33,6 @@ class HistoryItemServiceTest extends BaseTest {
     private HistoryItemRepository repository;
     @Mock
     private HistoryItemMapper mapper;
-    @Mock
-    private PostalItemRepository postalItemRepository;
 
     @InjectMocks
     private HistoryItemService service;
@@ -74,21 +73,37 @@ class HistoryItemServiceTest extends BaseTest {
         //arrange
         PostalItemHistoryDto expectedResultContent = PostalItemHistoryDto.builder()
                 .build();
-        when(postalItemRepository.findById(postalItem.getId())).thenReturn(Optional.of(postalItem));
-        when(mapper.HistoryItem_To_PostalItemHistoryDto(historyItem)).thenReturn(expectedResultContent);
-
-
-        Page<PostalItemHistoryDto> expectedResult = new PageImpl<>(List.of(expectedResultContent), mock(PageRequest.class), 0);
-        Page<HistoryItem> dbPagedList = new PageImpl<>(List.of(historyItem), mock(PageRequest.class), 0);
-
-        when(repository.findByItemId(postalItem.getId(), PageRequest.of(0,2))).thenReturn(dbPagedList);
+        HistoryItemRow row = mock(HistoryItemRow.class);
+        when(row.getHistoryId()).thenReturn(historyItem.getId());
+        when(row.getTotal()).thenReturn(3L);
+        when(repository.findPageByItemId(postalItem.getId(), 2, 0L)).thenReturn(List.of(row));
+        when(mapper.HistoryItemRow_To_PostalItemHistoryDto(row)).thenReturn(expectedResultContent);
+        //act
+        Optional<Page<PostalItemHistoryDto>> actualResult = service.findByItemId(postalItem.getId(), PageRequest.of(0, 2));
+        //assert
+        assertThat(actualResult).isPresent();
+        assertThat(actualResult.get().getContent()).containsExactly(expectedResultContent);
+        assertThat(actualResult.get().getTotalElements()).isEqualTo(3);
+        //the page and its total are read in a single query
+        verify(repository).findPageByItemId(postalItem.getId(), 2, 0L);
+        verifyNoMoreInteractions(repository);
+    }
 
+    @Test
+    @DisplayName("findByItemId() should return an empty page when the postal item exists but the page has no records")
+    void findByItemId_ReturnEmptyPage_WhenPageHasNoRecords() {
+        //arrange
+        HistoryItemRow row = mock(HistoryItemRow.class);
+        when(row.getHistoryId()).thenReturn(null);
+        when(row.getTotal()).thenReturn(3L);
+        when(repository.findPageByItemId(postalItem.getId(), 2, 4L)).thenReturn(List.of(row));
         //act
-        Page<PostalItemHistoryDto> actualResult = service.findByItemId(postalItem.getId(), PageRequest.of(0,2));
+        Optional<Page<PostalItemHistoryDto>> actualResult = service.findByItemId(postalItem.getId(), PageRequest.of(2, 2));
         //assert
-        assertThat(actualResult.getContent()).isNotEmpty();
-        assertThat(actualResult.getContent()).containsAll(expectedResult);
-        assertThat(actualResult.getContent().size()).isEqualTo(1);
+        assertThat(actualResult).isPresent();
+        assertThat(actualResult.get().getContent()).isEmpty();
+        assertThat(actualResult.get().getTotalElements()).isEqualTo(3);
+        verify(mapper, never()).HistoryItemRow_To_PostalItemHistoryDto(any());
     }
 
     @Test
@@ -100,21 +115,38 @@ class HistoryItemServiceTest extends BaseTest {
                 BadAttributeValueException.class, () -> service.findByItemId(null, mock(PageRequest.class))
         );
         assertThat(thrown.getMessage()).containsAnyOf("postal item id is not valid");
-        verify(repository,never()).findByItemId(any(),any());
+        verify(repository,never()).findPageByItemId(any(), anyInt(), anyLong());
     }
 
     @Test
-    @DisplayName("findByItemId() should throw an exception when postal item is not found")
-    void findByItemId_ThrowException_PostalItemIsNotFound() {
+    @DisplayName("findByItemId() should return nothing when postal item is not found")
+    void findByItemId_ReturnEmpty_PostalItemIsNotFound() {
+        //arrange
+        when(repository.findPageByItemId(postalItem.getId(), 2, 0L)).thenReturn(List.of());
         //act
+        Optional<Page<PostalItemHistoryDto>> actualResult = service.findByItemId(postalItem.getId(), PageRequest.of(0, 2));
         //assert
-        NoSuchElementException thrown = assertThrows(
-                NoSuchElementException.class, () -> service.findByItemId(postalItem.getId(), PageRequest.of(0, 2))
-        );
-        assertThat(thrown.getMessage()).containsAnyOf("postal item with id", "is not found");
-        verify(repository,never()).findByItemId(any(),any());
-
+        assertThat(actualResult).isEmpty();
     }
 
-
-}
\ No newline at end of file
+    @Test
+    @DisplayName("findByItemIdAfter() should return a keyset page of postal item history records")
+    void findByItemIdAfter_ReturnCursorPage() {
+        //arrange
+        PostalItemHistoryDto expectedResultContent = PostalItemHistoryDto.builder()
+                .id(historyItem.getId())
+                .itemId(postalItem.getId())
+                .timestamp(new Timestamp(1690000000000L))
+                .build();
+        when(repository.findByItemIdAfter(postalItem.getId(), KeysetCursor.START.timestamp(), 0L, PageRequest.of(0, 1)))
+                .thenReturn(new SliceImpl<>(List.of(expectedResultContent), PageRequest.of(0, 1), true));
+        //act
+        CursorPageDto<PostalItemHistoryDto> actualResult = service.findByItemIdAfter(postalItem.getId(), KeysetCursor.START, 1);
+        //assert
+        assertThat(actualResult.getContent()).containsExactly(expectedResultContent);
+        assertThat(KeysetCursor.decode(actualResult.getNextCursor(), true))
+                .isEqualTo(new KeysetCursor(expectedResultContent.getTimestamp(), expectedResultContent.getId()));
+        //the records are read as DTOs, the entity mapper is not used
+        verify(mapper, never()).HistoryItem_To_PostalItemHistoryDto(any());
+    }
+}
@@ -0,0 +1,144 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HistoryJournalTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    @DisplayName("open() should return the entries after the flushed one, as they were appended")
+    void open_ReturnPendingEntries() throws Exception {
+        //arrange
+        Timestamp timestamp = Timestamp.from(Instant.parse("2023-08-01T10:15:30.123456Z"));
+        try (HistoryJournal journal = new HistoryJournal(directory, 1024, false)) {
+            journal.open(0);
+            journal.append(1L, ItemStatus.ARRIVED, timestamp, 2L, "post office; main");
+            journal.append(1L, ItemStatus.DEPARTED, timestamp, null, "deleted office");
+            journal.append(3L, ItemStatus.RECEIVED, timestamp, 2L, null);
+        }
+        //act
+        List<HistoryJournal.Entry> pending;
+        HistoryJournal.Entry next;
+        try (HistoryJournal journal = new HistoryJournal(directory, 1024, false)) {
+            pending = journal.open(1);
+            next = journal.append(3L, ItemStatus.ARRIVED, timestamp, 2L, "post office");
+        }
+        //assert
+        assertThat(pending).containsExactly(
+                new HistoryJournal.Entry(2, 1L, ItemStatus.DEPARTED, timestamp, null, "deleted office"),
+                new HistoryJournal.Entry(3, 3L, ItemStatus.RECEIVED, timestamp, 2L, null));
+        assertThat(next.sequence()).isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("open() should ignore a line that was not written completely")
+    void open_IgnoreIncompleteLine() throws Exception {
+        //arrange
+        Timestamp timestamp = Timestamp.from(Instant.now());
+        try (HistoryJournal journal = new HistoryJournal(directory, 1024, false)) {
+            journal.open(0);
+            journal.append(1L, ItemStatus.ARRIVED, timestamp, 2L, "post office");
+        }
+        Path segment = segments().get(0);
+        Files.writeString(segment, "2;1;DEPARTED;1690884930", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        //act
+        List<HistoryJournal.Entry> pending;
+        try (HistoryJournal journal = new HistoryJournal(directory, 1024, false)) {
+            pending = journal.open(0);
+        }
+        //assert
+        assertThat(pending).extracting(HistoryJournal.Entry::sequence).containsExactly(1L);
+    }
+
+    @Test
+    @DisplayName("open() should skip the entries that are marked as aborted")
+    void open_SkipAbortedEntries() throws Exception {
+        //arrange
+        Timestamp timestamp = Timestamp.from(Instant.now());
+        try (HistoryJournal journal = new HistoryJournal(directory, 1024, false)) {
+            journal.open(0);
+            HistoryJournal.Entry first = journal.append(1L, ItemStatus.ARRIVED, timestamp, 2L, "post office");
+            HistoryJournal.Entry second = journal.append(1L, ItemStatus.DEPARTED, timestamp, 2L, "post office");
+            journal.append(3L, ItemStatus.ARRIVED, timestamp, 2L, "post office");
+            journal.abort(List.of(first, second));
+        }
+        //act
+        List<HistoryJournal.Entry> pending;
+        long lastSequence;
+        try (HistoryJournal journal = new HistoryJournal(directory, 1024, false)) {
+            pending = journal.open(0);
+            lastSequence = journal.lastSequence();
+        }
+        //assert
+        assertThat(pending).extracting(HistoryJournal.Entry::sequence).containsExactly(3L);
+        assertThat(lastSequence).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("release() should delete the segments of which all entries are flushed and keep the current one")
+    void release_DeleteFlushedSegments() throws Exception {
+        //arrange
+        Timestamp timestamp = Timestamp.from(Instant.now());
+        try (HistoryJournal journal = new HistoryJournal(directory, 1, false)) {
+            journal.open(0);
+            for (long itemId = 1; itemId <= 3; itemId++)
+                journal.append(itemId, ItemStatus.ARRIVED, timestamp, 2L, "post office");
+            //act
+            journal.release(2);
+        }
+        //assert
+        assertThat(segments()).extracting(path -> path.getFileName().toString())
+                .containsExactly("00000000000000000003.journal");
+    }
+
+    @Test
+    @DisplayName("append() should use up the sequence of an entry it can not write, and park() should keep entries out of the journal")
+    void append_UseUpSequence_WhenAppendFails() throws Exception {
+        //arrange
+        Timestamp timestamp = Timestamp.from(Instant.now());
+        HistoryJournal.Entry failed;
+        try (HistoryJournal journal = new HistoryJournal(directory, 1024, false)) {
+            journal.open(0);
+            journal.append(1L, ItemStatus.ARRIVED, timestamp, 2L, "post office");
+            //the segment can not be written anymore
+            journal.close();
+            //act
+            failed = assertThrows(HistoryJournal.AppendException.class,
+                    () -> journal.append(2L, ItemStatus.ARRIVED, timestamp, 2L, "post office")).getEntry();
+            journal.append(3L, ItemStatus.ARRIVED, timestamp, 2L, "post office");
+            journal.park(List.of(failed));
+        }
+        //assert
+        List<HistoryJournal.Entry> pending;
+        try (HistoryJournal journal = new HistoryJournal(directory, 1024, false)) {
+            pending = journal.open(0);
+        }
+        assertThat(failed.sequence()).isEqualTo(2);
+        assertThat(pending).extracting(HistoryJournal.Entry::sequence).containsExactly(1L, 3L);
+        assertThat(segments()).extracting(path -> path.getFileName().toString())
+                .contains("00000000000000000002" + HistoryJournal.PARKED_SUFFIX);
+    }
+
+    private List<Path> segments() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * the partitions are created and detached in the transaction of the test, so they are rolled back with it
+ */
+@SpringBootTest
+@Transactional
+@Import(TestMailTrackingApplication.class)
+class HistoryPartitionServiceTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private TrackingProperties properties;
+    private HistoryPartitionService service;
+
+    @BeforeEach
+    void setUp() {
+        properties = new TrackingProperties();
+        service = new HistoryPartitionService(jdbcTemplate, transactionTemplate, properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @DisplayName("createPartitions() should create the missing partitions of the current and the next months, where their history records are written")
+    void createPartitions_CreateMonthsAhead() {
+        //act
+        List<String> created = service.createPartitions(LocalDate.of(2100, 1, 15));
+        List<String> createdAgain = service.createPartitions(LocalDate.of(2100, 2, 1));
+        //assert
+        assertThat(created).containsExactly("history_item_p210001", "history_item_p210002", "history_item_p210003", "history_item_p210004");
+        assertThat(createdAgain).containsExactly("history_item_p210005");
+        jdbcTemplate.update("""
+                insert into history_item (id, item_id, status, timestamp)
+                values (nextval('history_item_seq'), null, 0, '2100-03-31 23:59:59.999999')""");
+        assertThat(jdbcTemplate.queryForObject("""
+                select tableoid::regclass::text from history_item where timestamp = '2100-03-31 23:59:59.999999'""", String.class))
+                .isEqualTo("history_item_p210003");
+    }
+
+    @Test
+    @DisplayName("createPartitions() should create the partition of a month that has records in the default partition and move the records to it")
+    void createPartitions_MoveRecordsOutOfDefaultPartition() {
+        //arrange
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        service = new HistoryPartitionService(jdbcTemplate, transactionTemplate, properties, meterRegistry);
+        jdbcTemplate.update("""
+                insert into history_item (id, item_id, status, timestamp)
+                values (nextval('history_item_seq'), null, 0, '2100-07-10 12:00:00')""");
+        assertThat(service.countDefaultRows()).isEqualTo(1);
+        assertThat(meterRegistry.get(HistoryPartitionService.DEFAULT_ROWS_METRIC).gauge().value()).isEqualTo(1);
+        //act
+        List<String> created = service.createPartitions(LocalDate.of(2100, 1, 15));
+        //assert
+        assertThat(created).containsExactly("history_item_p210001", "history_item_p210002", "history_item_p210003",
+                "history_item_p210004", "history_item_p210007");
+        assertThat(jdbcTemplate.queryForObject("""
+                select tableoid::regclass::text from history_item where timestamp = '2100-07-10 12:00:00'""", String.class))
+                .isEqualTo("history_item_p210007");
+        assertThat(partitions()).contains("history_item_default");
+        assertThat(service.countDefaultRows()).isZero();
+        assertThat(meterRegistry.get(HistoryPartitionService.DEFAULT_ROWS_METRIC).gauge().value()).isZero();
+        assertThat(meterRegistry.get(HistoryPartitionService.FAILED_METRIC).counter().count()).isZero();
+    }
+
+    @Test
+    @DisplayName("detachPartitions() should detach the partitions of the months older than the retention and keep them as tables")
+    void detachPartitions_KeepDetachedTables() {
+        //arrange
+        properties.getHistory().getPartitions().setRetention(Period.ofMonths(1));
+        service.createPartitions(LocalDate.of(2100, 1, 15));
+        //act
+        List<String> detached = service.detachPartitions(LocalDate.of(2100, 4, 10));
+        //assert
+        assertThat(detached).contains("history_item_p210001", "history_item_p210002")
+                .doesNotContain("history_item_p210003", "history_item_default");
+        assertThat(partitions()).contains("history_item_p210003", "history_item_p210004", "history_item_default")
+                .doesNotContain("history_item_p210001", "history_item_p210002");
+        assertThat(tableExists("history_item_p210001")).isTrue();
+    }
+
+    @Test
+    @DisplayName("detachPartitions() should drop the detached partitions in the drop archive mode and keep all of them without a retention")
+    void detachPartitions_DropDetachedTables() {
+        //arrange
+        service.createPartitions(LocalDate.of(2100, 1, 15));
+        assertThat(service.detachPartitions(LocalDate.of(2100, 4, 10))).isEmpty();
+        properties.getHistory().getPartitions().setRetention(Period.ofMonths(1));
+        properties.getHistory().getPartitions().setArchiveMode(TrackingProperties.PartitionArchiveMode.DROP);
+        //act
+        List<String> detached = service.detachPartitions(LocalDate.of(2100, 4, 10));
+        //assert
+        assertThat(detached).contains("history_item_p210001", "history_item_p210002");
+        assertThat(tableExists("history_item_p210001")).isFalse();
+        assertThat(tableExists("history_item_p210003")).isTrue();
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList("""
+                select c.relname
+                from pg_inherits i
+                join pg_class c on c.oid = i.inhrelid
+                where i.inhparent = 'history_item'::regclass""", String.class);
+    }
+
+    private boolean tableExists(String name) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("select to_regclass(?) is not null", Boolean.class, name));
+    }
+}
@@ -0,0 +1,160 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.entity.HistoryItem;
+import com.ritazcode.mailtracking.entity.HistoryJournalCheckpoint;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.entity.PostalItem;
+import com.ritazcode.mailtracking.repository.HistoryItemRepository;
+import com.ritazcode.mailtracking.repository.HistoryJournalRepository;
+import com.ritazcode.mailtracking.repository.PostOfficeRepository;
+import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "myConfig.tracking.history.write-mode=write-behind",
+        "myConfig.tracking.history.flush-interval=10ms",
+        "myConfig.tracking.history.max-flush-attempts=2",
+        "myConfig.tracking.history.journal.directory=${java.io.tmpdir}/mail-tracking-journal-${random.uuid}",
+        "myConfig.tracking.history.journal.name=write-behind-service-test"})
+@Import(TestMailTrackingApplication.class)
+class HistoryWriteBehindServiceTest {
+
+    @Autowired
+    private HistoryWriteBehindService historyWriteBehind;
+    @Autowired
+    private PostalItemService service;
+    @Autowired
+    private TrackingProperties properties;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private HistoryItemRepository historyItemRepository;
+    @Autowired
+    private HistoryJournalRepository journalRepository;
+    @Autowired
+    private PostalItemRepository itemRepository;
+    @Autowired
+    private PostOfficeRepository postOfficeRepository;
+
+    @TempDir
+    private Path journalDirectory;
+
+    @Test
+    @DisplayName("a history record that can not be written should be parked, the other records of its batch are written")
+    void append_ParkRecord_WhenItCanNotBeWritten() throws Exception {
+        //arrange
+        Long itemId = register();
+        //the item of the second record does not exist
+        List<HistoryItem> history = List.of(
+                new HistoryItem(ItemStatus.ARRIVED, PostalItem.builder().id(itemId).build()),
+                new HistoryItem(ItemStatus.ARRIVED, PostalItem.builder().id(Long.MAX_VALUE).build()),
+                new HistoryItem(ItemStatus.DEPARTED, PostalItem.builder().id(itemId).build()));
+        //act
+        historyWriteBehind.append(history);
+        //assert
+        assertThat(historyWriteBehind.awaitFlushed(Duration.ofSeconds(30))).isTrue();
+        assertThat(jdbcTemplate.queryForList("select status from history_item where item_id = ? order by timestamp, id",
+                Integer.class, itemId)).containsExactly(ItemStatus.REGISTERED.ordinal(), ItemStatus.ARRIVED.ordinal(),
+                ItemStatus.DEPARTED.ordinal());
+        List<Path> parked;
+        try (Stream<Path> files = Files.list(properties.getHistory().getJournal().getDirectory())) {
+            parked = files.filter(path -> path.getFileName().toString().endsWith(HistoryJournal.PARKED_SUFFIX)).toList();
+        }
+        assertThat(parked).hasSize(1);
+        assertThat(Files.readString(parked.get(0), StandardCharsets.UTF_8)).contains(String.valueOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    @DisplayName("the history records of a move that is rolled back should be aborted in the journal and not written")
+    void append_AbortRecords_WhenMoveIsRolledBack() throws Exception {
+        //arrange
+        Long itemId = register();
+        //act
+        transactionTemplate.executeWithoutResult(tx -> {
+            historyWriteBehind.append(List.of(new HistoryItem(ItemStatus.ARRIVED, PostalItem.builder().id(itemId).build())));
+            tx.setRollbackOnly();
+        });
+        //assert
+        assertThat(historyWriteBehind.awaitFlushed(Duration.ofSeconds(30))).isTrue();
+        assertThat(jdbcTemplate.queryForList("select status from history_item where item_id = ?", Integer.class, itemId))
+                .containsExactly(ItemStatus.REGISTERED.ordinal());
+    }
+
+    @Test
+    @DisplayName("on startup the journal entries of committed moves should be written once, and those of moves that were not committed should be aborted")
+    void start_ReplayOnlyCommittedMoves() throws Exception {
+        //arrange
+        Long movedItem = register();
+        Long notMovedItem = register();
+        Timestamp arrivedAt = Timestamp.from(Instant.now().truncatedTo(ChronoUnit.MICROS));
+        Timestamp departedAt = Timestamp.from(arrivedAt.toInstant().plusSeconds(1));
+        //the item departed after it arrived, the arrival is written already, the move of the other item was not committed
+        jdbcTemplate.update("update postal_item set moved_at = ? where item_id = ?", departedAt, movedItem);
+        jdbcTemplate.update("insert into history_item (id, item_id, status, timestamp) values (nextval('history_item_seq'), ?, ?, ?)",
+                movedItem, ItemStatus.ARRIVED.ordinal(), arrivedAt);
+        try (HistoryJournal journal = new HistoryJournal(journalDirectory, 1024, false)) {
+            journal.open(0);
+            journal.append(movedItem, ItemStatus.ARRIVED, arrivedAt, null, "post office");
+            journal.append(movedItem, ItemStatus.DEPARTED, departedAt, null, "post office");
+            journal.append(notMovedItem, ItemStatus.ARRIVED, arrivedAt, null, "post office");
+        }
+        TrackingProperties replayProperties = new TrackingProperties();
+        replayProperties.getHistory().setWriteMode(TrackingProperties.HistoryWriteMode.WRITE_BEHIND);
+        replayProperties.getHistory().setFlushInterval(Duration.ofMillis(10));
+        replayProperties.getHistory().getJournal().setDirectory(journalDirectory);
+        replayProperties.getHistory().getJournal().setName("replay-" + UUID.randomUUID());
+        HistoryWriteBehindService replayed = new HistoryWriteBehindService(replayProperties, historyItemRepository,
+                journalRepository, itemRepository, postOfficeRepository, transactionTemplate);
+        //act
+        replayed.start();
+        try {
+            assertThat(replayed.awaitFlushed(Duration.ofSeconds(30))).isTrue();
+        } finally {
+            replayed.stop();
+        }
+        //assert
+        assertThat(jdbcTemplate.queryForList("select status from history_item where item_id = ? order by timestamp, id",
+                Integer.class, movedItem)).containsExactly(ItemStatus.REGISTERED.ordinal(), ItemStatus.ARRIVED.ordinal(),
+                ItemStatus.DEPARTED.ordinal());
+        assertThat(jdbcTemplate.queryForList("select status from history_item where item_id = ?", Integer.class, notMovedItem))
+                .containsExactly(ItemStatus.REGISTERED.ordinal());
+        //every entry is written or aborted, so none of them is read back on the next start
+        assertThat(journalRepository.findById(replayProperties.getHistory().getJournal().getName()))
+                .map(HistoryJournalCheckpoint::getFlushedSequence).contains(3L);
+    }
+
+    private Long register() {
+        return service.register(RegisterItemDto.builder()
+                .type(ItemType.PARCEL)
+                .recipientName("recipient name")
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build()).getId();
+    }
+}
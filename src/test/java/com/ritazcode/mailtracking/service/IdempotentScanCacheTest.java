@@ -0,0 +1,138 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.exception.NoSuchElementException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdempotentScanCacheTest {
+
+    private IdempotentScanCache cache;
+    private UpdateItemDto updatedItem;
+    private ResponseItemDto result;
+    private AtomicInteger scans;
+
+    @BeforeEach
+    void setUp() {
+        //arrange
+        cache = new IdempotentScanCache(new TrackingProperties());
+        updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(2L)
+                .build();
+        result = ResponseItemDto.builder()
+                .id(1L)
+                .status(ItemStatus.ARRIVED)
+                .build();
+        scans = new AtomicInteger();
+    }
+
+    @Test
+    @DisplayName("apply() should return the first result without running the scan again when the key is sent again")
+    void apply_ReturnFirstResult_WhenKeyIsRepeated() {
+        //act
+        ResponseItemDto first = cache.apply("scan-1", ItemStatus.ARRIVED, updatedItem, this::scan);
+        ResponseItemDto repeated = cache.apply("scan-1", ItemStatus.ARRIVED,
+                UpdateItemDto.builder().id(1L).postOfficeId(2L).build(), this::scan);
+        //assert
+        assertThat(repeated).isSameAs(first);
+        assertThat(scans).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("apply() should run every scan that is sent without a key")
+    void apply_RunScan_WhenKeyIsNull() {
+        //act
+        cache.apply(null, ItemStatus.ARRIVED, updatedItem, this::scan);
+        cache.apply(null, ItemStatus.ARRIVED, updatedItem, this::scan);
+        //assert
+        assertThat(scans).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("apply() should throw an exception when the key is already used by another scan")
+    void apply_ThrowException_WhenKeyIsUsedByAnotherScan() {
+        //arrange
+        cache.apply("scan-1", ItemStatus.ARRIVED, updatedItem, this::scan);
+        //act & assert
+        assertThatThrownBy(() -> cache.apply("scan-1", ItemStatus.DEPARTED, updatedItem, this::scan))
+                .isInstanceOf(BadAttributeValueException.class)
+                .hasMessage("idempotency key is already used by another scan");
+        assertThatThrownBy(() -> cache.apply("scan-1", ItemStatus.ARRIVED,
+                UpdateItemDto.builder().id(1L).postOfficeId(3L).build(), this::scan))
+                .isInstanceOf(BadAttributeValueException.class);
+        assertThat(scans).hasValue(1);
+    }
+
+    @Test
+    @DisplayName("apply() should throw an exception when the key is blank")
+    void apply_ThrowException_WhenKeyIsBlank() {
+        //act & assert
+        assertThatThrownBy(() -> cache.apply(" ", ItemStatus.ARRIVED, updatedItem, this::scan))
+                .isInstanceOf(BadAttributeValueException.class);
+        assertThat(scans).hasValue(0);
+    }
+
+    @Test
+    @DisplayName("apply() should run a rejected scan again when it is sent again with the same key")
+    void apply_RunScanAgain_WhenFirstScanIsRejected() {
+        //arrange
+        assertThatThrownBy(() -> cache.apply("scan-1", ItemStatus.ARRIVED, updatedItem, () -> {
+            scans.incrementAndGet();
+            throw new NoSuchElementException("post office is not found");
+        })).isInstanceOf(NoSuchElementException.class);
+        //act
+        ResponseItemDto repeated = cache.apply("scan-1", ItemStatus.ARRIVED, updatedItem, this::scan);
+        //assert
+        assertThat(repeated).isSameAs(result);
+        assertThat(scans).hasValue(2);
+    }
+
+    @Test
+    @DisplayName("apply() should wait for the result of the first scan when the key is sent again while it is running")
+    void apply_WaitForFirstResult_WhenFirstScanIsRunning() throws Exception {
+        //arrange
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        CompletableFuture<ResponseItemDto> first = CompletableFuture.supplyAsync(() ->
+                cache.apply("scan-1", ItemStatus.ARRIVED, updatedItem, () -> {
+                    started.countDown();
+                    await(finish);
+                    return scan();
+                }));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        //act
+        CompletableFuture<ResponseItemDto> repeated = CompletableFuture.supplyAsync(() ->
+                cache.apply("scan-1", ItemStatus.ARRIVED, updatedItem, this::scan));
+        finish.countDown();
+        //assert
+        assertThat(repeated.get(10, TimeUnit.SECONDS)).isSameAs(first.get(10, TimeUnit.SECONDS));
+        assertThat(scans).hasValue(1);
+    }
+
+    private ResponseItemDto scan() {
+        scans.incrementAndGet();
+        return result;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.exception.ConcurrentUpdateException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * throughput of status changes that keep hitting a few hot postal items, for the lock setting of the subclass.
+ * not a part of the test suite, run with {@code mvn test -Dtest='*ItemsBenchmark'}.
+ * {@code -Dbenchmark.threads} threads send {@code -Dbenchmark.updates} arrivals each,
+ * spread over {@code -Dbenchmark.items} items
+ */
+@SpringBootTest
+@Import(TestMailTrackingApplication.class)
+abstract class ItemContentionBenchmark {
+
+    private static final int THREADS = Integer.getInteger("benchmark.threads", 32);
+    private static final int UPDATES_PER_THREAD = Integer.getInteger("benchmark.updates", 100);
+    private static final int ITEMS = Integer.getInteger("benchmark.items", 4);
+
+    @Autowired
+    private PostalItemService postalItemService;
+    @Autowired
+    private PostOfficeService postOfficeService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final List<Long> items = new ArrayList<>();
+    private final List<Long> offices = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 2; i++)
+            offices.add(postOfficeService.create(CreatePostOfficeDto.builder()
+                    .index("1232322")
+                    .name("post office " + i)
+                    .address("street 1, city")
+                    .build()).getId());
+        for (int i = 0; i < ITEMS; i++)
+            items.add(postalItemService.register(RegisterItemDto.builder()
+                    .type(ItemType.PARCEL)
+                    .recipientName("recipient name")
+                    .recipientAddress("recipient address")
+                    .recipientIndex("1235654")
+                    .build()).getId());
+    }
+
+    @Test
+    void measureThroughputOfHotItems() throws Exception {
+        AtomicInteger conflicts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        long elapsed;
+        try {
+            List<Future<?>> results = new ArrayList<>(THREADS);
+            for (int thread = 0; thread < THREADS; thread++) {
+                int first = thread;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                        UpdateItemDto update = UpdateItemDto.builder()
+                                .id(items.get((first + i) % items.size()))
+                                .postOfficeId(offices.get(i % offices.size()))
+                                .build();
+                        try {
+                            postalItemService.arriveToPostOffice(update);
+                        } catch (ConcurrentUpdateException ex) {
+                            conflicts.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            long started = System.nanoTime();
+            start.countDown();
+            for (Future<?> result : results)
+                result.get(10, TimeUnit.MINUTES);
+            elapsed = System.nanoTime() - started;
+        } finally {
+            executor.shutdownNow();
+        }
+        int updates = THREADS * UPDATES_PER_THREAD;
+        Timer waits = meterRegistry.find(ItemLockManager.WAIT_METRIC).timer();
+        System.out.printf("%s threads=%d items=%d updates=%d conflicts=%d throughput=%.0f updates/s mean lock wait=%.2f ms%n",
+                getClass().getSimpleName(), THREADS, ITEMS, updates, conflicts.get(), updates * 1e9 / elapsed,
+                waits == null ? 0 : waits.mean(TimeUnit.MILLISECONDS));
+        assertThat(conflicts.get()).isLessThan(updates);
+    }
+}
@@ -0,0 +1,153 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.dto.postalItem.ItemStatusChangedDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ItemEventHubTest {
+
+    private TrackingProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private ItemEventHub hub;
+
+    @BeforeEach
+    void setUp() {
+        //arrange
+        properties = new TrackingProperties();
+        properties.getEvents().setQueueCapacity(2);
+        properties.getEvents().setMaxSubscribers(3);
+        meterRegistry = new SimpleMeterRegistry();
+        hub = new ItemEventHub(properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        hub.destroy();
+    }
+
+    @Test
+    @DisplayName("publish() should send a status change to the subscribers of its item and of its post office")
+    void publish_SendToItemAndOfficeSubscribers() throws Exception {
+        //arrange
+        RecordingSink itemSink = new RecordingSink();
+        RecordingSink officeSink = new RecordingSink();
+        RecordingSink otherSink = new RecordingSink();
+        hub.subscribeToItem(1L, itemSink);
+        hub.subscribeToOffice(10L, officeSink);
+        hub.subscribeToItem(2L, otherSink);
+        //act
+        hub.publish(event(1L, 10L, ItemStatus.ARRIVED));
+        hub.publish(event(1L, 10L, ItemStatus.DEPARTED));
+        //assert
+        assertThat(List.of(itemSink.next(), itemSink.next())).extracting(ItemStatusChangedDto::getStatus)
+                .containsExactly(ItemStatus.ARRIVED, ItemStatus.DEPARTED);
+        assertThat(officeSink.next().getItemId()).isEqualTo(1L);
+        assertThat(otherSink.events.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    @DisplayName("publish() should drop a subscriber whose queue is full without waiting for it")
+    void publish_DropSlowSubscriber_WhenQueueIsFull() throws Exception {
+        //arrange
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink slowSink = new RecordingSink() {
+            @Override
+            public void send(ItemStatusChangedDto event) throws Exception {
+                sending.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                super.send(event);
+            }
+        };
+        RecordingSink fastSink = new RecordingSink();
+        hub.subscribeToItem(1L, slowSink);
+        hub.subscribeToItem(1L, fastSink);
+        //act
+        hub.publish(event(1L, 10L, ItemStatus.ARRIVED));
+        assertThat(sending.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(fastSink.next()).isNotNull();
+        //the slow queue holds two status changes while the first one is being sent, the fourth one overflows it
+        for (int i = 0; i < 3; i++) {
+            hub.publish(event(1L, 10L, ItemStatus.ARRIVED));
+            assertThat(fastSink.next()).isNotNull();
+        }
+        release.countDown();
+        //assert
+        assertThat(slowSink.closed.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(slowSink.events).hasSizeLessThanOrEqualTo(1);
+        assertThat(hub.getSubscriberCount()).isEqualTo(1);
+        assertThat(meterRegistry.get(ItemEventHub.DROPPED_METRIC).counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("subscribe should be rejected when the count of subscriptions reached the limit")
+    void subscribe_ThrowException_WhenLimitIsReached() {
+        //arrange
+        ItemEventHub.Subscription first = hub.subscribeToItem(1L, new RecordingSink());
+        hub.subscribeToItem(1L, new RecordingSink());
+        hub.subscribeToOffice(10L, new RecordingSink());
+        //act & assert
+        assertThatThrownBy(() -> hub.subscribeToItem(2L, new RecordingSink()))
+                .isInstanceOf(ServiceUnavailableException.class);
+        first.cancel();
+        hub.subscribeToItem(2L, new RecordingSink());
+        assertThat(meterRegistry.get(ItemEventHub.SUBSCRIBERS_METRIC).gauge().value()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("a cancelled subscription should not get further status changes")
+    void cancel_StopStatusChanges() throws Exception {
+        //arrange
+        RecordingSink sink = new RecordingSink();
+        ItemEventHub.Subscription subscription = hub.subscribeToItem(1L, sink);
+        //act
+        subscription.cancel();
+        hub.publish(event(1L, 10L, ItemStatus.ARRIVED));
+        //assert
+        assertThat(sink.events.poll(200, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(hub.getSubscriberCount()).isZero();
+    }
+
+    private static ItemStatusChangedDto event(Long itemId, Long officeId, ItemStatus status) {
+        return ItemStatusChangedDto.builder()
+                .itemId(itemId)
+                .postOfficeId(officeId)
+                .status(status)
+                .build();
+    }
+
+    private static class RecordingSink implements ItemEventHub.Sink {
+
+        final BlockingQueue<ItemStatusChangedDto> events = new LinkedBlockingQueue<>();
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public void send(ItemStatusChangedDto event) throws Exception {
+            events.add(event);
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+
+        ItemStatusChangedDto next() throws InterruptedException {
+            return events.poll(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.exception.ConcurrentUpdateException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ItemLockManagerTest {
+
+    private TrackingProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        //arrange
+        properties = new TrackingProperties();
+        properties.getLock().setTimeout(Duration.ofMillis(100));
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    @DisplayName("the stripe count should be rounded up to a power of two")
+    void stripeCount_RoundUpToPowerOfTwo() {
+        //arrange
+        properties.getLock().setStripes(1000);
+        //act
+        ItemLockManager locks = new ItemLockManager(properties, meterRegistry);
+        //assert
+        assertThat(locks.getStripeCount()).isEqualTo(1024);
+        assertThat(locks.stripe(1L)).isNotEqualTo(locks.stripe(2L));
+        assertThat(locks.stripe(1L << 32)).isBetween(0, 1023);
+    }
+
+    @Test
+    @DisplayName("withLock() should reject a change of an item whose lock is not released in time")
+    void withLock_ThrowException_WhenItemIsLockedTooLong() throws Exception {
+        //arrange
+        ItemLockManager locks = new ItemLockManager(properties, meterRegistry);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> locks.withLock(1L, () -> {
+            locked.countDown();
+            await(release);
+            return null;
+        }));
+        assertThat(locked.await(10, TimeUnit.SECONDS)).isTrue();
+        //act & assert
+        assertThatThrownBy(() -> locks.withLock(1L, () -> "changed"))
+                .isInstanceOf(ConcurrentUpdateException.class);
+        //another item is not blocked
+        assertThat(locks.withLock(2L, () -> "changed")).isEqualTo("changed");
+        release.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+        assertThat(locks.withLock(1L, () -> "changed")).isEqualTo("changed");
+        assertThat(meterRegistry.get(ItemLockManager.TIMEOUT_METRIC).counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(ItemLockManager.WAIT_METRIC).timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("withLocks() should release all the taken locks when a lock is not released in time")
+    void withLocks_ReleaseTakenLocks_WhenOneIsLockedTooLong() throws Exception {
+        //arrange
+        ItemLockManager locks = new ItemLockManager(properties, meterRegistry);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> locks.withLock(2L, () -> {
+            locked.countDown();
+            await(release);
+            return null;
+        }));
+        assertThat(locked.await(10, TimeUnit.SECONDS)).isTrue();
+        //act
+        assertThatThrownBy(() -> locks.withLocks(List.of(1L, 2L, 3L), () -> "changed"))
+                .isInstanceOf(ConcurrentUpdateException.class);
+        //assert
+        assertThat(CompletableFuture.supplyAsync(() -> locks.withLock(1L, () -> "changed")).get(10, TimeUnit.SECONDS))
+                .isEqualTo("changed");
+        release.countDown();
+        holder.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    @DisplayName("withLock() should run the change without a lock or metrics when the locks are disabled")
+    void withLock_RunWithoutLock_WhenDisabled() {
+        //arrange
+        properties.getLock().setEnabled(false);
+        properties.getLock().setMetrics(false);
+        ItemLockManager locks = new ItemLockManager(properties, meterRegistry);
+        //act
+        String result = locks.withLock(1L, () -> "changed");
+        //assert
+        assertThat(result).isEqualTo("changed");
+        assertThat(locks.getStripeCount()).isZero();
+        assertThat(meterRegistry.getMeters()).isEmpty();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.exception.NoSuchElementException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(TestMailTrackingApplication.class)
+class ItemViewCacheTest {
+
+    @Autowired
+    private PostalItemService service;
+    @Autowired
+    private PostOfficeService postOfficeService;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Long officeId;
+    private Long itemId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        officeId = postOfficeService.create(CreatePostOfficeDto.builder()
+                .index("1232322")
+                .name("post office")
+                .address("street 1, city")
+                .build()).getId();
+        itemId = service.register(RegisterItemDto.builder()
+                .type(ItemType.PARCEL)
+                .recipientName("recipient name")
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build()).getId();
+    }
+
+    @Test
+    @DisplayName("view() should load a postal item from db only once and count the cache hits, missing items are not cached")
+    void view_LoadItemOnce() {
+        //arrange
+        double hitsBefore = gets("hit");
+        long loadsBefore = meterRegistry.get(ItemViewCache.LOAD_METRIC).timer().count();
+        statistics.clear();
+        //act
+        service.view(itemId);
+        service.view(itemId);
+        service.view(itemId);
+        assertThrows(NoSuchElementException.class, () -> service.view(Long.MAX_VALUE));
+        assertThrows(NoSuchElementException.class, () -> service.view(Long.MAX_VALUE));
+        //assert
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(1);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+        assertThat(gets("hit") - hitsBefore).isEqualTo(2);
+        assertThat(meterRegistry.get(ItemViewCache.LOAD_METRIC).timer().count() - loadsBefore).isEqualTo(3);
+        assertThat(meterRegistry.get(ItemViewCache.HIT_RATIO_METRIC).gauge().value()).isPositive();
+    }
+
+    @Test
+    @DisplayName("a status change should evict the cached postal item once it commits")
+    void updateItem_EvictCachedItem() {
+        //arrange
+        assertThat(service.view(itemId).getStatus()).isEqualTo(ItemStatus.REGISTERED);
+        //act
+        service.arriveToPostOffice(UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build());
+        //assert
+        assertThat(service.view(itemId).getStatus()).isEqualTo(ItemStatus.ARRIVED);
+    }
+
+    private double gets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", ItemViewCache.CACHE_NAME).tag("result", result)
+                .functionCounter().count();
+    }
+}
@@ -0,0 +1,67 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.dto.CursorPageDto;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeysetCursorTest {
+
+    @Test
+    @DisplayName("decode() should return the start cursor when no cursor is passed")
+    void decode_ReturnStart_WhenTokenIsEmpty() {
+        assertThat(KeysetCursor.decode(null, false)).isEqualTo(KeysetCursor.START);
+        assertThat(KeysetCursor.decode(" ", true)).isEqualTo(KeysetCursor.START);
+    }
+
+    @Test
+    @DisplayName("decode() should return the same cursor that was encoded")
+    void decode_ReturnEncodedCursor() {
+        KeysetCursor idCursor = new KeysetCursor(null, 42L);
+        Timestamp timestamp = new Timestamp(1690000000123L);
+        timestamp.setNanos(123456000);
+        KeysetCursor timestampCursor = new KeysetCursor(timestamp, 42L);
+
+        assertThat(KeysetCursor.decode(idCursor.encode(), false)).isEqualTo(idCursor);
+        assertThat(KeysetCursor.decode(timestampCursor.encode(), true)).isEqualTo(timestampCursor);
+    }
+
+    @Test
+    @DisplayName("decode() should throw an exception when the cursor is not valid or of another kind")
+    void decode_ThrowException_WhenTokenIsNotValid() {
+        String idToken = new KeysetCursor(null, 42L).encode();
+
+        BadAttributeValueException thrown = assertThrows(
+                BadAttributeValueException.class, () -> KeysetCursor.decode("not a cursor", false)
+        );
+        assertThat(thrown.getMessage()).isEqualTo("cursor (not a cursor) is not valid");
+        assertThrows(BadAttributeValueException.class, () -> KeysetCursor.decode(idToken, true));
+    }
+
+    @Test
+    @DisplayName("page() should point the next cursor at the last record only when there are more records")
+    void page_ReturnNextCursorOfLastRecord() {
+        CursorPageDto<String> page = KeysetCursor.page(
+                new SliceImpl<>(List.of(1L, 2L), PageRequest.of(0, 2), true),
+                String::valueOf,
+                id -> new KeysetCursor(null, id));
+        CursorPageDto<String> lastPage = KeysetCursor.page(
+                new SliceImpl<>(List.of(3L), PageRequest.of(0, 2), false),
+                String::valueOf,
+                id -> new KeysetCursor(null, id));
+
+        assertThat(page.getContent()).containsExactly("1", "2");
+        assertThat(page.isHasNext()).isTrue();
+        assertThat(KeysetCursor.decode(page.getNextCursor(), false).id()).isEqualTo(2L);
+        assertThat(lastPage.isHasNext()).isFalse();
+        assertThat(lastPage.getNextCursor()).isNull();
+    }
+}
@@ -0,0 +1,7 @@
+package com.ritazcode.mailtracking.service;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "myConfig.tracking.lock.enabled=true")
+class LockedItemsBenchmark extends ItemContentionBenchmark {
+}
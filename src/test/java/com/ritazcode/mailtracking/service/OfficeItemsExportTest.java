@@ -0,0 +1,104 @@
+package com.ritazcode.mailtracking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.entity.PostOffice;
+import com.ritazcode.mailtracking.entity.PostalItem;
+import com.ritazcode.mailtracking.exception.NoSuchElementException;
+import com.ritazcode.mailtracking.repository.PostOfficeRepository;
+import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(TestMailTrackingApplication.class)
+class OfficeItemsExportTest {
+
+    private static final int ITEMS = 2500;
+
+    @Autowired
+    private PostalItemService service;
+    @Autowired
+    private PostalItemRepository itemRepository;
+    @Autowired
+    private PostOfficeRepository officeRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    @DisplayName("exportOfficeItems() should write every item of the office as a json line, ordered by id, without keeping the items")
+    void exportOfficeItems_WriteAllItemsAsJsonLines() throws Exception {
+        //arrange
+        PostOffice office = officeRepository.save(PostOffice.builder().name("post office").build());
+        PostOffice otherOffice = officeRepository.save(PostOffice.builder().name("other post office").build());
+        List<PostalItem> items = new ArrayList<>(ITEMS + 1);
+        for (int i = 0; i <= ITEMS; i++)
+            items.add(PostalItem.builder()
+                    .type(ItemType.PARCEL)
+                    .recipientName("recipient " + i)
+                    .status(ItemStatus.ARRIVED)
+                    .postOffice(i == ITEMS ? otherOffice : office)
+                    .build());
+        itemRepository.saveAll(items);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        //act
+        int managedItems = transactionTemplate.execute(tx -> {
+            try {
+                assertThat(service.exportOfficeItems(office.getId(), () -> out)).isEqualTo(ITEMS);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+            return entityManager.unwrap(Session.class).getStatistics().getEntityCount();
+        });
+        //assert
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(lines).hasSize(ITEMS);
+        List<Long> ids = new ArrayList<>(ITEMS);
+        for (String line : lines)
+            ids.add(objectMapper.readValue(line, ResponseItemDto.class).getId());
+        assertThat(ids).isSorted().doesNotHaveDuplicates();
+        assertThat(ids.get(0)).isEqualTo(items.get(0).getId());
+        assertThat(out.toString(StandardCharsets.UTF_8)).endsWith("}\n");
+        //the office check and the cursor
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(managedItems).isZero();
+    }
+
+    @Test
+    @DisplayName("exportOfficeItems() should throw exception and write nothing when the office is not found")
+    void exportOfficeItems_ThrowException_WhenOfficeIsNotFound() {
+        //arrange
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        //act & assert
+        assertThrows(NoSuchElementException.class, () -> service.exportOfficeItems(Long.MAX_VALUE, () -> out));
+        assertThat(out.size()).isZero();
+    }
+}
@@ -0,0 +1,16 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+/**
+ * runs the office counts of {@link OfficeStatsServiceTest} with the single statement transitions,
+ * which return the office and status an item is moved from
+ */
+@SpringBootTest(properties = {
+        "myConfig.tracking.update.mode=conditional",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+@Import(TestMailTrackingApplication.class)
+class OfficeStatsConditionalUpdateTest extends OfficeStatsServiceTest {
+}
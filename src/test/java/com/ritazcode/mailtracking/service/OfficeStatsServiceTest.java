@@ -0,0 +1,126 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postOffice.OfficeStatsDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.exception.NoSuchElementException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(TestMailTrackingApplication.class)
+class OfficeStatsServiceTest {
+
+    @Autowired
+    private PostalItemService service;
+    @Autowired
+    private PostOfficeService postOfficeService;
+    @Autowired
+    private OfficeStatsService officeStats;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long firstOffice;
+    private Long secondOffice;
+
+    @BeforeEach
+    void setUp() {
+        firstOffice = createOffice("first office");
+        secondOffice = createOffice("second office");
+    }
+
+    @Test
+    @DisplayName("the counts of an office should follow the items that arrive, depart and are received there")
+    void getStats_CountItemsByStatus() {
+        //arrange
+        Long[] items = {register(), register(), register()};
+        //act
+        for (Long item : items)
+            service.arriveToPostOffice(scan(item, firstOffice));
+        service.departFromPostOffice(scan(items[0], firstOffice));
+        service.arriveToPostOffice(scan(items[0], secondOffice));
+        service.receiveByRecipient(scan(items[1], firstOffice));
+        //assert
+        assertThat(officeStats.getStats(firstOffice).getItems()).containsAllEntriesOf(Map.of(
+                ItemStatus.REGISTERED, 0L,
+                ItemStatus.ARRIVED, 1L,
+                ItemStatus.DEPARTED, 0L,
+                ItemStatus.RECEIVED, 1L));
+        assertThat(officeStats.getStats(secondOffice).getItems()).containsEntry(ItemStatus.ARRIVED, 1L);
+    }
+
+    @Test
+    @DisplayName("a rejected move should not change the counts")
+    void getStats_IgnoreRejectedMoves() {
+        //arrange
+        Long item = register();
+        service.arriveToPostOffice(scan(item, firstOffice));
+        //act
+        assertThrows(BadAttributeValueException.class, () -> service.departFromPostOffice(scan(item, secondOffice)));
+        //assert
+        assertThat(officeStats.getStats(firstOffice).getItems()).containsEntry(ItemStatus.ARRIVED, 1L);
+        assertThat(officeStats.getStats(secondOffice).getItems()).containsEntry(ItemStatus.DEPARTED, 0L);
+    }
+
+    @Test
+    @DisplayName("reconcile() should correct the counts that drifted from db")
+    void reconcile_CorrectDrift() {
+        //arrange
+        Long item = register();
+        service.arriveToPostOffice(scan(item, firstOffice));
+        //a move that this instance did not see
+        jdbcTemplate.update("update postal_item set office_id = ?, status = 'DEPARTED' where item_id = ?", secondOffice, item);
+        //act
+        int corrected = officeStats.reconcile();
+        //assert
+        assertThat(corrected).isGreaterThanOrEqualTo(2);
+        assertThat(officeStats.getStats(firstOffice).getItems()).containsEntry(ItemStatus.ARRIVED, 0L);
+        assertThat(officeStats.getStats(secondOffice).getItems()).containsEntry(ItemStatus.DEPARTED, 1L);
+        assertThat(officeStats.reconcile()).isZero();
+    }
+
+    @Test
+    @DisplayName("getStats() should throw an exception when the post office is not found")
+    void getStats_ThrowException_WhenOfficeIsNotFound() {
+        //act
+        //assert
+        assertThrows(NoSuchElementException.class, () -> officeStats.getStats(Long.MAX_VALUE));
+        assertThrows(BadAttributeValueException.class, () -> officeStats.getStats(null));
+    }
+
+    private Long createOffice(String name) {
+        return postOfficeService.create(CreatePostOfficeDto.builder()
+                .index("1232322")
+                .name(name)
+                .address("street 1, city")
+                .build()).getId();
+    }
+
+    private Long register() {
+        return service.register(RegisterItemDto.builder()
+                .type(ItemType.PARCEL)
+                .recipientName("recipient name")
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build()).getId();
+    }
+
+    private static UpdateItemDto scan(Long itemId, Long officeId) {
+        return UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build();
+    }
+}
@@ -0,0 +1,17 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+/**
+ * runs the outbox relay of {@link OutboxServiceTest} with the single statement transitions, which insert the outbox events themselves
+ */
+@SpringBootTest(properties = {
+        "myConfig.tracking.update.mode=conditional",
+        "myConfig.tracking.outbox.relay-threads=2",
+        "myConfig.tracking.outbox.poll-interval=20ms",
+        "myConfig.tracking.outbox.file.directory=${java.io.tmpdir}/mail-tracking-outbox-${random.uuid}"})
+@Import({TestMailTrackingApplication.class, OutboxServiceTest.SinkConfig.class})
+class OutboxConditionalUpdateTest extends OutboxServiceTest {
+}
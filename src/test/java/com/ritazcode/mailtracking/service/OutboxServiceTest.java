@@ -0,0 +1,165 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.entity.OutboxEvent;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "myConfig.tracking.outbox.relay-threads=2",
+        "myConfig.tracking.outbox.poll-interval=20ms",
+        "myConfig.tracking.outbox.file.directory=${java.io.tmpdir}/mail-tracking-outbox-${random.uuid}"})
+@Import({TestMailTrackingApplication.class, OutboxServiceTest.SinkConfig.class})
+//a relay of a cached context would take the events of the next test class
+@DirtiesContext
+class OutboxServiceTest {
+
+    @Autowired
+    private PostalItemService service;
+    @Autowired
+    private PostOfficeService postOfficeService;
+    @Autowired
+    private OutboxEventRepository outboxRepository;
+    @Autowired
+    private RollingFileOutboxSink fileSink;
+    @Autowired
+    private RecordingSink recordingSink;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    @DisplayName("the registration and every accepted move of an item should be sent to the sinks, a rejected move not at all")
+    void relay_SendCommittedChanges() throws Exception {
+        //arrange
+        Long officeId = createOffice("first office");
+        Long otherOfficeId = createOffice("second office");
+        Long itemId = register();
+        //act
+        service.updateItem(UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build(), ItemStatus.ARRIVED);
+        assertThatThrownBy(() -> service.updateItem(UpdateItemDto.builder().id(itemId).postOfficeId(otherOfficeId).build(), ItemStatus.DEPARTED))
+                .isInstanceOf(BadAttributeValueException.class);
+        service.updateItem(UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build(), ItemStatus.DEPARTED);
+        //assert
+        //a single instance in the entity mode takes increasing event ids, so it sends the events of an item in the order of their changes
+        List<OutboxEvent> events = recordingSink.await(itemId, 3);
+        assertThat(events).extracting(OutboxEvent::getStatus)
+                .containsExactly(ItemStatus.REGISTERED, ItemStatus.ARRIVED, ItemStatus.DEPARTED);
+        assertThat(events.get(1).getPostOfficeId()).isEqualTo(officeId);
+        assertThat(events.get(1).getPostOfficeName()).isEqualTo("first office");
+        //the events are deleted and counted once the batch commits, right after it is sent
+        assertThat(await(() -> outboxRepository.findAllById(events.stream().map(OutboxEvent::getId).toList()).isEmpty())).isTrue();
+        List<String> written = fileSink.files().stream().flatMap(file -> read(file).lines()).toList();
+        assertThat(written).filteredOn(line -> line.contains("\"id\":" + events.get(2).getId() + ","))
+                .singleElement().asString().contains("\"itemId\":" + itemId, "\"status\":\"DEPARTED\"");
+        assertThat(await(() -> meterRegistry.get(OutboxService.DISPATCHED_METRIC).counter().count() >= 3)).isTrue();
+        assertThat(await(() -> meterRegistry.get(OutboxService.LAG_METRIC).timer().count() >= 3)).isTrue();
+    }
+
+    @Test
+    @DisplayName("a batch that a sink fails to send should stay in the outbox and be sent again")
+    void relay_SendAgain_WhenSinkFails() throws Exception {
+        //arrange
+        recordingSink.failures.set(1);
+        //act
+        Long itemId = register();
+        //assert
+        assertThat(recordingSink.await(itemId, 1)).extracting(OutboxEvent::getStatus)
+                .containsExactly(ItemStatus.REGISTERED);
+        assertThat(recordingSink.failures).hasValue(0);
+        assertThat(await(() -> meterRegistry.get(OutboxService.FAILED_METRIC).counter().count() >= 1)).isTrue();
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline)
+                return false;
+            Thread.sleep(20);
+        }
+        return true;
+    }
+
+    private Long register() {
+        return service.register(RegisterItemDto.builder()
+                .type(ItemType.PARCEL)
+                .recipientName("recipient name")
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build()).getId();
+    }
+
+    private Long createOffice(String name) {
+        return postOfficeService.create(CreatePostOfficeDto.builder()
+                .index("1232322")
+                .name(name)
+                .address("street 1, city")
+                .build()).getId();
+    }
+
+    private static String read(Path file) {
+        try {
+            return Files.readString(file);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @TestConfiguration
+    static class SinkConfig {
+
+        @Bean
+        RecordingSink recordingSink() {
+            return new RecordingSink();
+        }
+    }
+
+    static class RecordingSink implements OutboxSink {
+
+        final Queue<OutboxEvent> events = new ConcurrentLinkedQueue<>();
+        final AtomicInteger failures = new AtomicInteger();
+
+        @Override
+        public void send(List<OutboxEvent> batch) {
+            if (failures.getAndUpdate(count -> Math.max(0, count - 1)) > 0)
+                throw new IllegalStateException("sink is not available");
+            events.addAll(batch);
+        }
+
+        /**
+         * @return events of the postal item, once the expected count of them was sent
+         */
+        List<OutboxEvent> await(Long itemId, int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 10_000;
+            List<OutboxEvent> itemEvents;
+            while ((itemEvents = events.stream().filter(event -> itemId.equals(event.getItemId())).toList()).size() < count
+                    && System.currentTimeMillis() < deadline)
+                Thread.sleep(20);
+            return itemEvents;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.ritazcode.mailtracking.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postOffice.UpdatePostOfficeDto;
+import com.ritazcode.mailtracking.exception.NoSuchElementException;
+import com.ritazcode.mailtracking.repository.PostOfficeRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.context.annotation.Import;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(TestMailTrackingApplication.class)
+class PostOfficeCacheTest {
+
+    @Autowired
+    private PostOfficeService service;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Cache<Object, Object> cache;
+    private Long officeId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        cache = ((CaffeineCache) cacheManager.getCache(PostOfficeRepository.CACHE_NAME)).getNativeCache();
+        officeId = service.create(CreatePostOfficeDto.builder()
+                .index("1232322")
+                .name("post office")
+                .address("street 1, city")
+                .build()).getId();
+    }
+
+    @Test
+    @DisplayName("view() should load a post office from db only once and count the cache hits")
+    void view_LoadOfficeOnce() {
+        //arrange
+        CacheStats before = cache.stats();
+        statistics.clear();
+        //act
+        service.view(officeId);
+        service.view(officeId);
+        service.view(officeId);
+        //assert
+        CacheStats stats = cache.stats().minus(before);
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(1);
+        assertThat(stats.missCount()).isEqualTo(1);
+        assertThat(stats.hitCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("update() and delete() should evict the cached post office")
+    void updateAndDelete_EvictCachedOffice() {
+        //arrange
+        service.view(officeId);
+        //act
+        service.update(UpdatePostOfficeDto.builder()
+                .id(officeId)
+                .index("1232322")
+                .name("new post office")
+                .address("street 1, city")
+                .build());
+        //assert
+        assertThat(service.view(officeId).getName()).isEqualTo("new post office");
+        //act
+        service.delete(officeId);
+        //assert
+        assertThat(cache.getIfPresent(officeId)).isNull();
+        assertThrows(NoSuchElementException.class, () -> service.view(officeId));
+    }
+}
@@ -0,0 +1,148 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.ScanEventDto;
+import com.ritazcode.mailtracking.dto.postalItem.ScanResultDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.exception.NoSuchElementException;
+import com.ritazcode.mailtracking.repository.PostOfficeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@Import(TestMailTrackingApplication.class)
+class PostOfficeDeletionTest {
+
+    @Autowired
+    private PostalItemService service;
+    @Autowired
+    private PostOfficeService postOfficeService;
+    @Autowired
+    private PostOfficeRepository postOfficeRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Long firstOffice;
+    private Long secondOffice;
+    private Long itemId;
+
+    @BeforeEach
+    void setUp() {
+        firstOffice = createOffice("first office");
+        secondOffice = createOffice("second office");
+        itemId = service.register(RegisterItemDto.builder()
+                .type(ItemType.PARCEL)
+                .recipientName("recipient name")
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build()).getId();
+    }
+
+    @Test
+    @DisplayName("an office that items were scanned at should be deleted, its history records keep the office name")
+    void delete_KeepOfficeNameInHistory() {
+        //arrange
+        service.arriveToPostOffice(scan(firstOffice));
+        service.departFromPostOffice(scan(firstOffice));
+        service.arriveToPostOffice(scan(secondOffice));
+        //act
+        postOfficeService.delete(firstOffice);
+        //assert
+        List<PostalItemHistoryDto> history = service.getPostalItemHistory(itemId, PageRequest.of(0, 10)).getContent();
+        assertThat(history).extracting(PostalItemHistoryDto::getStatus)
+                .containsExactly(ItemStatus.REGISTERED, ItemStatus.ARRIVED, ItemStatus.DEPARTED, ItemStatus.ARRIVED);
+        assertThat(history.get(1).getPostOfficeId()).isNull();
+        assertThat(history.get(1).getPostOfficeName()).isEqualTo("first office");
+        assertThat(history.get(3).getPostOfficeId()).isEqualTo(secondOffice);
+    }
+
+    @Test
+    @DisplayName("a move to an office that is deleted after it was looked up should report the office as not found")
+    void arriveToPostOffice_ThrowException_WhenOfficeIsDeletedMeanwhile() {
+        //arrange
+        //the office name is cached, then the office is deleted by another instance
+        assertThat(postOfficeRepository.findNameById(firstOffice)).isPresent();
+        jdbcTemplate.update("delete from post_office where office_id = ?", firstOffice);
+        //act
+        NoSuchElementException thrown = assertThrows(NoSuchElementException.class,
+                () -> service.arriveToPostOffice(scan(firstOffice)));
+        //assert
+        assertThat(thrown.getMessage()).isEqualTo("post office  with id (" + firstOffice + ") is not found");
+        assertThat(service.view(itemId).getStatus()).isEqualTo(ItemStatus.REGISTERED);
+    }
+
+    @Test
+    @DisplayName("a batch scan at an office that is deleted before the batch is written should reject the events of the office")
+    void scanAll_RejectEvent_WhenOfficeIsDeletedMeanwhile() throws Exception {
+        //arrange
+        Long otherItemId = service.register(RegisterItemDto.builder()
+                .type(ItemType.LETTER)
+                .recipientName("recipient name")
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build()).getId();
+        List<ScanEventDto> events = List.of(
+                ScanEventDto.builder().itemId(itemId).postOfficeId(firstOffice).status(ItemStatus.ARRIVED).build(),
+                ScanEventDto.builder().itemId(otherItemId).postOfficeId(secondOffice).status(ItemStatus.ARRIVED).build());
+        //act
+        //the item row is locked, so the batch reads the offices and then waits to write the item, while the office is deleted
+        CompletableFuture<List<ScanResultDto>> scanned = transactionTemplate.execute(tx -> {
+            jdbcTemplate.queryForList("select item_id from postal_item where item_id = ? for update", itemId);
+            CompletableFuture<List<ScanResultDto>> scan = CompletableFuture.supplyAsync(() -> service.scanAll(events));
+            await(() -> Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                    "select exists (select 1 from pg_stat_activity where wait_event_type = 'Lock')", Boolean.class)));
+            jdbcTemplate.update("delete from post_office where office_id = ?", firstOffice);
+            return scan;
+        });
+        List<ScanResultDto> results = scanned.get(30, TimeUnit.SECONDS);
+        //assert
+        assertThat(results).extracting(ScanResultDto::isAccepted).containsExactly(false, true);
+        assertThat(results.get(0).getError()).isEqualTo(NoSuchElementException.class.getSimpleName());
+        assertThat(results.get(0).getMessage()).isEqualTo("post office  with id (" + firstOffice + ") is not found");
+        assertThat(service.view(itemId).getStatus()).isEqualTo(ItemStatus.REGISTERED);
+        assertThat(service.view(otherItemId).getStatus()).isEqualTo(ItemStatus.ARRIVED);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("waiting for the condition").isLessThan(deadline);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private Long createOffice(String name) {
+        return postOfficeService.create(CreatePostOfficeDto.builder()
+                .index("1232322")
+                .name(name)
+                .address("street 1, city")
+                .build()).getId();
+    }
+
+    private UpdateItemDto scan(Long officeId) {
+        return UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build();
+    }
+}
@@ -110,7 +110,9 @@ class PostOfficeServiceTest extends BaseTest {
                 .build();
 
         when(repository.findById(postOffice.getId())).thenReturn(Optional.of(postOffice));
-        when(mapper.UpdatePostOfficeDto_To_DbPostOffice(updatedOffice, postOffice)).thenReturn(postOffice);
+        //the found office may be cached, so the update is mapped onto a new office with the same id
+        when(mapper.UpdatePostOfficeDto_To_DbPostOffice(updatedOffice, PostOffice.builder().id(postOffice.getId()).build()))
+                .thenReturn(postOffice);
         when(repository.save(postOffice)).thenReturn(postOffice);
         when(mapper.DbPostOffice_To_ResponsePostOfficeDto(postOffice)).thenReturn(expectedResult);
         //act
@@ -0,0 +1,118 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.exception.ConcurrentUpdateException;
+import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Import(TestMailTrackingApplication.class)
+class PostalItemConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int UPDATES = 200;
+
+    @Autowired
+    private PostalItemService service;
+    @Autowired
+    private PostOfficeService postOfficeService;
+    @Autowired
+    private PostalItemRepository itemRepository;
+
+    @Test
+    @DisplayName("concurrent scans of the same item should neither lose updates nor leave the item and its history apart")
+    void updateItem_KeepItemConsistent_WhenScannedConcurrently() throws Exception {
+        //arrange
+        Long itemId = service.register(RegisterItemDto.builder()
+                .type(ItemType.PARCEL)
+                .recipientName("recipient name")
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build()).getId();
+        Long[] offices = {createOffice("first office"), createOffice("second office")};
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Void>> updates = new ArrayList<>(UPDATES);
+        for (int i = 0; i < UPDATES; i++) {
+            UpdateItemDto update = UpdateItemDto.builder().id(itemId).postOfficeId(offices[i % 2]).build();
+            ItemStatus status = i == UPDATES - 10 ? ItemStatus.RECEIVED : i % 3 == 0 ? ItemStatus.DEPARTED : ItemStatus.ARRIVED;
+            updates.add(() -> {
+                start.await();
+                try {
+                    service.updateItem(update, status);
+                    accepted.incrementAndGet();
+                } catch (BadAttributeValueException ex) {
+                    rejected.incrementAndGet();
+                } catch (ConcurrentUpdateException ex) {
+                    conflicts.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        //act
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> results = new ArrayList<>(UPDATES);
+            for (Callable<Void> update : updates)
+                results.add(executor.submit(update));
+            start.countDown();
+            for (Future<Void> result : results)
+                result.get(1, TimeUnit.MINUTES);
+        } finally {
+            executor.shutdownNow();
+        }
+        //assert
+        assertThat(accepted.get() + rejected.get() + conflicts.get()).isEqualTo(UPDATES);
+        assertThat(accepted.get()).isPositive();
+        awaitHistory();
+        List<PostalItemHistoryDto> history = service.getPostalItemHistory(itemId, PageRequest.of(0, UPDATES * 2)).getContent();
+        //every accepted update left exactly one history record, next to the registration record
+        assertThat(history).hasSize(accepted.get() + 1);
+        assertThat(history.stream().filter(record -> record.getStatus() == ItemStatus.RECEIVED)).hasSizeLessThanOrEqualTo(1);
+        //the item state is the one of its latest history record
+        PostalItemHistoryDto latest = history.get(history.size() - 1);
+        assertThat(service.view(itemId).getStatus()).isEqualTo(latest.getStatus());
+        //every accepted update changed the item version, also the ones that kept its office and status
+        assertThat(itemRepository.findById(itemId).orElseThrow().getVersion()).isEqualTo(accepted.get());
+    }
+
+    /**
+     * waits until the history records of the accepted updates can be read
+     */
+    protected void awaitHistory() throws Exception {
+    }
+
+    private Long createOffice(String name) {
+        return postOfficeService.create(CreatePostOfficeDto.builder()
+                .index("1232322")
+                .name(name)
+                .address("street 1, city")
+                .build()).getId();
+    }
+}
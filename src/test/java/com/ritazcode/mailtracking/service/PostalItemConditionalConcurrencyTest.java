@@ -0,0 +1,13 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+/**
+ * runs the concurrent scans of {@link PostalItemConcurrencyTest} with the single statement transitions
+ */
+@SpringBootTest(properties = "myConfig.tracking.update.mode=conditional")
+@Import(TestMailTrackingApplication.class)
+class PostalItemConditionalConcurrencyTest extends PostalItemConcurrencyTest {
+}
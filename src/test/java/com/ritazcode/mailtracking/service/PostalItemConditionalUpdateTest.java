@@ -0,0 +1,120 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.exception.NoSuchElementException;
+import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = {
+        "myConfig.tracking.update.mode=conditional",
+        "spring.jpa.properties.hibernate.generate_statistics=true"})
+@Import(TestMailTrackingApplication.class)
+class PostalItemConditionalUpdateTest {
+
+    @Autowired
+    private PostalItemService service;
+    @Autowired
+    private PostOfficeService postOfficeService;
+    @Autowired
+    private PostalItemRepository itemRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Long officeId;
+    private Long otherOfficeId;
+    private Long itemId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        officeId = createOffice("post office");
+        otherOfficeId = createOffice("other post office");
+        itemId = service.register(RegisterItemDto.builder()
+                .type(ItemType.PARCEL)
+                .recipientName("recipient name")
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build()).getId();
+    }
+
+    @Test
+    @DisplayName("a status transition should be written with a single statement, together with its history record")
+    void arriveToPostOffice_MoveItemWithSingleStatement() {
+        //arrange
+        statistics.clear();
+        //act
+        ResponseItemDto actualResult = service.arriveToPostOffice(UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build());
+        //assert
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(actualResult.getStatus()).isEqualTo(ItemStatus.ARRIVED);
+        assertThat(itemRepository.findById(itemId).orElseThrow().getVersion()).isEqualTo(1);
+        List<PostalItemHistoryDto> history = service.getPostalItemHistory(itemId, PageRequest.of(0, 10)).getContent();
+        assertThat(history).hasSize(2);
+        assertThat(history.get(1).getStatus()).isEqualTo(ItemStatus.ARRIVED);
+        assertThat(history.get(1).getPostOfficeId()).isEqualTo(officeId);
+        assertThat(history.get(1).getPostOfficeName()).isEqualTo("post office");
+    }
+
+    @Test
+    @DisplayName("a rejected transition should report the same errors as the entity mode and leave the item unchanged")
+    void updateItem_ThrowException_WhenTransitionIsRejected() {
+        //arrange
+        Long missingItemId = itemId + 1000;
+        Long missingOfficeId = otherOfficeId + 1000;
+        //act
+        //assert
+        assertThat(assertThrows(NoSuchElementException.class,
+                () -> service.arriveToPostOffice(UpdateItemDto.builder().id(missingItemId).postOfficeId(officeId).build())).getMessage())
+                .isEqualTo("item with id (" + missingItemId + ") is not found");
+        assertThat(assertThrows(NoSuchElementException.class,
+                () -> service.arriveToPostOffice(UpdateItemDto.builder().id(itemId).postOfficeId(missingOfficeId).build())).getMessage())
+                .isEqualTo("post office  with id (" + missingOfficeId + ") is not found");
+        assertThat(assertThrows(BadAttributeValueException.class,
+                () -> service.departFromPostOffice(UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build())).getMessage())
+                .isEqualTo("item with id (" + itemId + ") did NOT ARRIVE to post office yet");
+
+        service.arriveToPostOffice(UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build());
+        assertThat(assertThrows(BadAttributeValueException.class,
+                () -> service.departFromPostOffice(UpdateItemDto.builder().id(itemId).postOfficeId(otherOfficeId).build())).getMessage())
+                .isEqualTo("item with id (" + itemId + ") can not DEPART from a post office (" + otherOfficeId + ") to which it did NOT ARRIVE");
+
+        service.receiveByRecipient(UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build());
+        assertThat(assertThrows(BadAttributeValueException.class,
+                () -> service.arriveToPostOffice(UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build())).getMessage())
+                .isEqualTo("item with id (" + itemId + ") has already been RECEIVED");
+
+        assertThat(service.view(itemId).getStatus()).isEqualTo(ItemStatus.RECEIVED);
+        assertThat(service.getPostalItemHistory(itemId, PageRequest.of(0, 10)).getTotalElements()).isEqualTo(3);
+    }
+
+    private Long createOffice(String name) {
+        return postOfficeService.create(CreatePostOfficeDto.builder()
+                .index("1232322")
+                .name(name)
+                .address("street 1, city")
+                .build()).getId();
+    }
+}
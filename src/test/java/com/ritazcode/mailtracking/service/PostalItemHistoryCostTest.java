@@ -0,0 +1,104 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.CursorPageDto;
+import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
+import com.ritazcode.mailtracking.entity.HistoryItem;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.entity.PostOffice;
+import com.ritazcode.mailtracking.entity.PostalItem;
+import com.ritazcode.mailtracking.repository.HistoryItemRepository;
+import com.ritazcode.mailtracking.repository.PostOfficeRepository;
+import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(TestMailTrackingApplication.class)
+class PostalItemHistoryCostTest {
+
+    private static final int HISTORY_SIZE = 50;
+    private static final int PAGE_SIZE = 20;
+
+    @Autowired
+    private PostalItemService service;
+    @Autowired
+    private PostalItemRepository itemRepository;
+    @Autowired
+    private PostOfficeRepository officeRepository;
+    @Autowired
+    private HistoryItemRepository historyItemRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private Long itemId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        PostOffice office = officeRepository.save(PostOffice.builder().name("post office").build());
+        PostalItem item = itemRepository.save(PostalItem.builder()
+                .type(ItemType.PARCEL)
+                .recipientName("recipient name")
+                .status(ItemStatus.ARRIVED)
+                .postOffice(office)
+                .build());
+        List<HistoryItem> history = new ArrayList<>(HISTORY_SIZE);
+        for (int i = 0; i < HISTORY_SIZE; i++)
+            history.add(new HistoryItem(i % 2 == 0 ? ItemStatus.ARRIVED : ItemStatus.DEPARTED, item, office, office.getName()));
+        historyItemRepository.saveAll(history);
+        itemId = item.getId();
+    }
+
+    @Test
+    @DisplayName("a keyset history page should cost one select whatever the page size is")
+    void getPostalItemHistory_CursorPageCostsOneSelect() {
+        //arrange
+        List<PostalItemHistoryDto> walked = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        statistics.clear();
+        //act
+        do {
+            CursorPageDto<PostalItemHistoryDto> page = service.getPostalItemHistory(itemId, after, PAGE_SIZE);
+            walked.addAll(page.getContent());
+            after = page.getNextCursor();
+            pages++;
+        } while (after != null);
+        //assert
+        assertThat(walked).hasSize(HISTORY_SIZE);
+        assertThat(walked).allSatisfy(record -> assertThat(record.getPostOfficeName()).isEqualTo("post office"));
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(pages);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("an offset history page should cost one select with its total count")
+    void getPostalItemHistory_OffsetPageCostsOneSelect() {
+        //arrange
+        statistics.clear();
+        //act
+        Page<PostalItemHistoryDto> page = service.getPostalItemHistory(itemId, PageRequest.of(1, PAGE_SIZE));
+        //assert
+        assertThat(page.getContent()).hasSize(PAGE_SIZE);
+        assertThat(page.getTotalElements()).isEqualTo(HISTORY_SIZE);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+}
@@ -1,34 +1,59 @@
 package com.ritazcode.mailtracking.service;
 
-import com.ritazcode.mailtracking.dto.postalItem.PostalItemHistoryDto;
-import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
-import com.ritazcode.mailtracking.dto.postalItem.ResponseItemDto;
-import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.config.TrackingProperties.UpdateMode;
+import com.ritazcode.mailtracking.dto.CursorPageDto;
+import com.ritazcode.mailtracking.dto.postalItem.*;
 import com.ritazcode.mailtracking.entity.*;
 import com.ritazcode.mailtracking.exception.BadAttributeValueException;
+import com.ritazcode.mailtracking.exception.ConcurrentUpdateException;
 import com.ritazcode.mailtracking.exception.NoSuchElementException;
 import com.ritazcode.mailtracking.mapper.PostalItemMapper;
+import com.ritazcode.mailtracking.repository.HistoryItemRepository;
+import com.ritazcode.mailtracking.repository.MovedItem;
+import com.ritazcode.mailtracking.repository.PostOfficeName;
 import com.ritazcode.mailtracking.repository.PostOfficeRepository;
 import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.InOrder;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.OptionalLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -41,23 +66,52 @@ class PostalItemServiceTest extends BaseTest {
     private PostOfficeRepository postOfficeRepository;
     @Mock
     private HistoryItemService historyItemService;
+    @Mock
+    private HistoryItemRepository historyItemRepository;
+    @Spy
+    private TrackingProperties properties = new TrackingProperties();
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private HistoryWriteBehindService historyWriteBehind;
+    @Spy
+    private ItemLockManager itemLocks = new ItemLockManager(new TrackingProperties(), new SimpleMeterRegistry());
+    @Spy
+    private ItemViewCache viewCache = new ItemViewCache(new TrackingProperties(), new SimpleMeterRegistry());
+    @Mock
+    private ItemEventHub eventHub;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Mock
+    private OutboxService outbox;
+    @Mock
+    private OfficeStatsService officeStats;
 
     @InjectMocks
     private PostalItemService service;
 
+    /**
+     * runs the callback that is passed to the transaction template
+     */
+    private static final Answer<Object> RUN_IN_TRANSACTION =
+            invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(new SimpleTransactionStatus());
+
     private PostalItem postalItem;
     private PostOffice office;
+    private PostOfficeName officeName;
 
 
     @BeforeEach
     void setUp() {
         //arrange
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(RUN_IN_TRANSACTION);
         office = PostOffice.builder()
                 .id(1L)
                 .name("post office")
                 .address("street 1")
                 .index("1232322")
                 .build();
+        officeName = new PostOfficeName(office.getId(), office.getName());
         postalItem = PostalItem.builder()
                 .id(1L)
                 .type(ItemType.LETTER)
@@ -66,6 +120,7 @@ class PostalItemServiceTest extends BaseTest {
                 .recipientIndex("1235654")
                 .status(ItemStatus.REGISTERED)
                 .postOffice(office)
+                .version(0L)
                 .build();
     }
 
@@ -94,6 +149,38 @@ class PostalItemServiceTest extends BaseTest {
         assertThat(actualResult.getContent().size()).isEqualTo(1);
     }
 
+    @Test
+    @DisplayName("getPostalItems() should return a keyset page of postal items with the cursor of the next page")
+    void getPostalItems_ReturnCursorPage() {
+        //arrange
+        ResponseItemDto expectedResultContent = ResponseItemDto.builder()
+                .id(1L)
+                .build();
+        PageRequest pageRequest = PageRequest.of(0, 1, Sort.by("id"));
+        when(itemRepository.findByIdGreaterThan(0L, pageRequest))
+                .thenReturn(new SliceImpl<>(List.of(postalItem), pageRequest, true));
+        when(itemMapper.PostalItem_To_ResponseItemDto(postalItem)).thenReturn(expectedResultContent);
+        //act
+        CursorPageDto<ResponseItemDto> actualResult = service.getPostalItems(null, 1);
+        //assert
+        assertThat(actualResult.getContent()).containsExactly(expectedResultContent);
+        assertThat(actualResult.isHasNext()).isTrue();
+        assertThat(KeysetCursor.decode(actualResult.getNextCursor(), false).id()).isEqualTo(postalItem.getId());
+        verify(itemRepository, never()).count();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1001})
+    @DisplayName("getPostalItems() should throw an exception when the limit of the page is not valid")
+    void getPostalItems_ThrowException_WhenLimitIsNotValid(int limit) {
+        //act
+        //assert
+        BadAttributeValueException thrown = assertThrows(
+                BadAttributeValueException.class, () -> service.getPostalItems(null, limit)
+        );
+        assertThat(thrown.getMessage()).isEqualTo("limit (" + limit + ") is not valid, it should be between 1 and 1000");
+    }
+
     @Test
     @DisplayName("view() should return postal item information by passing item id")
     void view_ReturnPostalItemInfo() {
@@ -116,6 +203,52 @@ class PostalItemServiceTest extends BaseTest {
         assertThat(expectedResult).isEqualTo(actualResult);
     }
 
+    @Test
+    @DisplayName("view() should load a postal item from db once until its status change is published")
+    void view_LoadPostalItemOnce_UntilStatusChanges() {
+        //arrange
+        ResponseItemDto expectedResult = ResponseItemDto.builder().id(postalItem.getId()).status(ItemStatus.REGISTERED).build();
+        when(itemRepository.findById(postalItem.getId())).thenReturn(Optional.of(postalItem));
+        when(itemMapper.PostalItem_To_ResponseItemDto(postalItem)).thenReturn(expectedResult);
+        //act
+        service.view(postalItem.getId());
+        service.view(postalItem.getId());
+        viewCache.evict(ItemStatusChangedDto.builder().itemId(postalItem.getId()).status(ItemStatus.ARRIVED).build());
+        ResponseItemDto actualResult = service.view(postalItem.getId());
+        //assert
+        assertThat(actualResult).isEqualTo(expectedResult);
+        verify(itemRepository, times(2)).findById(postalItem.getId());
+    }
+
+    @Test
+    @DisplayName("getItemVersion() should read the version of a cached item from the cache and of other items from db")
+    void getItemVersion_ReadCachedVersion() {
+        //arrange
+        postalItem.setVersion(3L);
+        when(itemRepository.findById(postalItem.getId())).thenReturn(Optional.of(postalItem));
+        when(itemRepository.findVersionById(2L)).thenReturn(Optional.of(7L));
+        service.view(postalItem.getId());
+        //act
+        long cached = service.getItemVersion(postalItem.getId());
+        long loaded = service.getItemVersion(2L);
+        //assert
+        assertThat(cached).isEqualTo(3L);
+        assertThat(loaded).isEqualTo(7L);
+        verify(itemRepository, never()).findVersionById(postalItem.getId());
+    }
+
+    @Test
+    @DisplayName("getHistoryVersion() should be empty when history is written behind the status changes")
+    void getHistoryVersion_ReturnEmpty_WhenHistoryIsWrittenBehind() {
+        //arrange
+        when(historyWriteBehind.isEnabled()).thenReturn(true);
+        //act
+        OptionalLong version = service.getHistoryVersion(postalItem.getId());
+        //assert
+        assertThat(version).isEmpty();
+        verify(itemRepository, never()).findVersionById(anyLong());
+    }
+
     @Test
     @DisplayName("view() should throw an exception when postal item id is null")
     void view_ThrowException_WhenPostalItemIdIsNull() {
@@ -159,7 +292,6 @@ class PostalItemServiceTest extends BaseTest {
         Page<ResponseItemDto> expectedResult = new PageImpl<>(List.of(expectedResultContent), mock(PageRequest.class), 0);
         Page<PostalItem> dbPagedList = new PageImpl<>(List.of(postalItem), mock(PageRequest.class), 0);
 
-        when(postOfficeRepository.findById(office.getId())).thenReturn(Optional.of(office));
         when(itemMapper.PostalItem_To_ResponseItemDto(postalItem)).thenReturn(expectedResultContent);
         when(itemRepository.findAllByPostOfficeId(office.getId(), PageRequest.of(0, 2))).thenReturn(dbPagedList);
         //act
@@ -168,6 +300,9 @@ class PostalItemServiceTest extends BaseTest {
         assertThat(actualResult.getContent()).isNotEmpty();
         assertThat(actualResult.getContent()).containsAll(expectedResult);
         assertThat(actualResult.getContent().size()).isEqualTo(1);
+        //a non empty page proves that the office exists
+        verify(postOfficeRepository, never()).findById(anyLong());
+        verify(postOfficeRepository, never()).existsById(anyLong());
     }
 
     @Test
@@ -189,7 +324,8 @@ class PostalItemServiceTest extends BaseTest {
     @DisplayName("getOfficeItems() should throw an exception when office is not found")
     void getOfficeItems_ThrowException_WhenPostOfficeIsNotFound() {
         //arrange
-        when(postOfficeRepository.findById(office.getId())).thenReturn(Optional.empty());
+        when(itemRepository.findAllByPostOfficeId(office.getId(), PageRequest.of(0, 2))).thenReturn(Page.empty());
+        when(postOfficeRepository.existsById(office.getId())).thenReturn(false);
         //act
         //assert
         NoSuchElementException thrown = assertThrows(
@@ -199,6 +335,21 @@ class PostalItemServiceTest extends BaseTest {
         verify(itemMapper, never()).PostalItem_To_ResponseItemDto(any(PostalItem.class));
     }
 
+    @Test
+    @DisplayName("getOfficeItems() should throw an exception when the keyset page is empty and the office is not found")
+    void getOfficeItems_ThrowException_WhenCursorPageIsEmptyAndPostOfficeIsNotFound() {
+        //arrange
+        when(itemRepository.findByPostOfficeIdAndIdGreaterThan(office.getId(), 0L, PageRequest.of(0, 2, Sort.by("id"))))
+                .thenReturn(new SliceImpl<>(List.of()));
+        when(postOfficeRepository.existsById(office.getId())).thenReturn(false);
+        //act
+        //assert
+        NoSuchElementException thrown = assertThrows(
+                NoSuchElementException.class, () -> service.getOfficeItems(office.getId(), null, 2)
+        );
+        assertThat(thrown.getMessage()).isEqualTo("post office  with id (" + office.getId() + ") is not found");
+    }
+
     @Test
     @DisplayName("register() should return registered postal item information")
     void register_ReturnRegisteredItem() {
@@ -233,6 +384,61 @@ class PostalItemServiceTest extends BaseTest {
         assertThat(actualResult).usingRecursiveComparison()
                 .ignoringFields("id")
                 .isEqualTo(expectedResult);
+        verify(itemRepository, times(1)).save(postalItem);
+        assertThat(postalItem.getHistory()).extracting(HistoryItem::getStatus).containsOnly(ItemStatus.REGISTERED);
+        verify(outbox).write(argThat(event -> event.getStatus() == ItemStatus.REGISTERED && event.getPostOfficeId() == null));
+    }
+
+    @Test
+    @DisplayName("registerAll() should register all postal items with their first history record in one save")
+    void registerAll_ReturnRegisteredItems() {
+        //arrange
+        RegisterItemDto createdItemDto = RegisterItemDto.builder()
+                .type(ItemType.LETTER)
+                .recipientName("recipient name")
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build();
+        ResponseItemDto expectedResult = ResponseItemDto.builder()
+                .id(1L)
+                .status(ItemStatus.REGISTERED)
+                .build();
+        when(itemMapper.RegisterItemDto_to_PostalItem(createdItemDto, ItemStatus.REGISTERED)).thenReturn(postalItem);
+        when(itemRepository.saveAll(List.of(postalItem))).thenReturn(List.of(postalItem));
+        when(itemMapper.PostalItem_To_ResponseItemDto(postalItem)).thenReturn(expectedResult);
+        //act
+        List<ResponseItemDto> actualResult = service.registerAll(List.of(createdItemDto));
+        //assert
+        assertThat(actualResult).containsExactly(expectedResult);
+        assertThat(postalItem.getHistory()).extracting(HistoryItem::getStatus).containsOnly(ItemStatus.REGISTERED);
+        verify(itemRepository, never()).save(any(PostalItem.class));
+    }
+
+    @Test
+    @DisplayName("registerAll() should throw an exception when count of postal items exceeds the limit")
+    void registerAll_ThrowException_WhenItemsExceedLimit() {
+        //arrange
+        properties.getRegister().setMaxBatchSize(1);
+        RegisterItemDto createdItemDto = RegisterItemDto.builder().type(ItemType.LETTER).build();
+        //act
+        //assert
+        BadAttributeValueException thrown = assertThrows(
+                BadAttributeValueException.class, () -> service.registerAll(List.of(createdItemDto, createdItemDto))
+        );
+        assertThat(thrown.getMessage()).isEqualTo("count of postal items (2) exceeds the limit (1)");
+        verify(itemRepository, never()).saveAll(any());
+    }
+
+    @Test
+    @DisplayName("registerAll() should throw an exception when the passed postal items are empty")
+    void registerAll_ThrowException_WhenItemsAreEmpty() {
+        //act
+        //assert
+        BadAttributeValueException thrown = assertThrows(
+                BadAttributeValueException.class, () -> service.registerAll(Collections.emptyList())
+        );
+        assertThat(thrown.getMessage()).isEqualTo("the passed values of postal items are not valid");
+        verify(itemRepository, never()).saveAll(any());
     }
 
     @Test
@@ -267,8 +473,9 @@ class PostalItemServiceTest extends BaseTest {
                 .status(ItemStatus.ARRIVED)
                 .build();
         when(itemRepository.findById(postalItem.getId())).thenReturn(Optional.of(postalItem));
-        when(postOfficeRepository.findById(office.getId())).thenReturn(Optional.of(office));
-        when(service.updateItem(updatedItem, any(ItemStatus.class))).thenReturn(expectedResult);
+        when(postOfficeRepository.findNameById(office.getId())).thenReturn(Optional.of(officeName));
+        when(postOfficeRepository.getReferenceById(office.getId())).thenReturn(office);
+        when(itemMapper.PostalItem_To_ResponseItemDto(postalItem)).thenReturn(expectedResult);
         //act
         ResponseItemDto actualResult = service.arriveToPostOffice(updatedItem);
         //assert
@@ -295,8 +502,9 @@ class PostalItemServiceTest extends BaseTest {
                 .status(ItemStatus.DEPARTED)
                 .build();
         when(itemRepository.findById(postalItem.getId())).thenReturn(Optional.of(postalItem));
-        when(postOfficeRepository.findById(office.getId())).thenReturn(Optional.of(office));
-        when(service.updateItem(updatedItem, any(ItemStatus.class))).thenReturn(expectedResult);
+        when(postOfficeRepository.findNameById(office.getId())).thenReturn(Optional.of(officeName));
+        when(postOfficeRepository.getReferenceById(office.getId())).thenReturn(office);
+        when(itemMapper.PostalItem_To_ResponseItemDto(postalItem)).thenReturn(expectedResult);
         //act
         ResponseItemDto actualResult = service.departFromPostOffice(updatedItem);
         //assert
@@ -323,8 +531,9 @@ class PostalItemServiceTest extends BaseTest {
                 .status(ItemStatus.RECEIVED)
                 .build();
         when(itemRepository.findById(postalItem.getId())).thenReturn(Optional.of(postalItem));
-        when(postOfficeRepository.findById(office.getId())).thenReturn(Optional.of(office));
-        when(service.updateItem(updatedItem, any(ItemStatus.class))).thenReturn(expectedResult);
+        when(postOfficeRepository.findNameById(office.getId())).thenReturn(Optional.of(officeName));
+        when(postOfficeRepository.getReferenceById(office.getId())).thenReturn(office);
+        when(itemMapper.PostalItem_To_ResponseItemDto(postalItem)).thenReturn(expectedResult);
         //act
         ResponseItemDto actualResult = service.receiveByRecipient(updatedItem);
         //assert
@@ -333,6 +542,250 @@ class PostalItemServiceTest extends BaseTest {
         assertThat(actualResult.getStatus()).isEqualTo(ItemStatus.RECEIVED);
     }
 
+    @Test
+    @DisplayName("updateItem() should insert the new history record without touching the history of the item")
+    void updateItem_InsertHistoryRecordDirectly() {
+        //arrange
+        UpdateItemDto updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(1L)
+                .build();
+        ResponseItemDto expectedResult = ResponseItemDto.builder()
+                .id(1L)
+                .status(ItemStatus.ARRIVED)
+                .build();
+        when(itemRepository.findById(postalItem.getId())).thenReturn(Optional.of(postalItem));
+        when(postOfficeRepository.findNameById(office.getId())).thenReturn(Optional.of(officeName));
+        when(postOfficeRepository.getReferenceById(office.getId())).thenReturn(office);
+        when(itemMapper.PostalItem_To_ResponseItemDto(postalItem)).thenReturn(expectedResult);
+        //act
+        ResponseItemDto actualResult = service.updateItem(updatedItem, ItemStatus.ARRIVED);
+        //assert
+        assertThat(actualResult).isEqualTo(expectedResult);
+        assertThat(postalItem.getStatus()).isEqualTo(ItemStatus.ARRIVED);
+        assertThat(postalItem.getHistory()).isEmpty();
+        ArgumentCaptor<HistoryItem> history = ArgumentCaptor.forClass(HistoryItem.class);
+        verify(historyItemRepository, times(1)).saveAndFlush(history.capture());
+        assertThat(history.getValue().getStatus()).isEqualTo(ItemStatus.ARRIVED);
+        assertThat(history.getValue().getItem()).isSameAs(postalItem);
+        assertThat(history.getValue().getOffice()).isSameAs(office);
+        assertThat(history.getValue().getOfficeName()).isEqualTo(office.getName());
+    }
+
+    @Test
+    @DisplayName("updateItem() should pass the new history record to be written behind the move when write-behind is enabled")
+    void updateItem_AppendHistoryRecord_WhenWriteBehindIsEnabled() {
+        //arrange
+        UpdateItemDto updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(1L)
+                .build();
+        ResponseItemDto expectedResult = ResponseItemDto.builder()
+                .id(1L)
+                .status(ItemStatus.ARRIVED)
+                .build();
+        when(historyWriteBehind.isEnabled()).thenReturn(true);
+        when(itemRepository.findById(postalItem.getId())).thenReturn(Optional.of(postalItem));
+        when(postOfficeRepository.findNameById(office.getId())).thenReturn(Optional.of(officeName));
+        when(postOfficeRepository.getReferenceById(office.getId())).thenReturn(office);
+        when(itemMapper.PostalItem_To_ResponseItemDto(postalItem)).thenReturn(expectedResult);
+        //act
+        ResponseItemDto actualResult = service.updateItem(updatedItem, ItemStatus.ARRIVED);
+        //assert
+        assertThat(actualResult).isEqualTo(expectedResult);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<HistoryItem>> history = ArgumentCaptor.forClass(List.class);
+        InOrder inOrder = inOrder(itemRepository, historyWriteBehind);
+        inOrder.verify(itemRepository).flush();
+        inOrder.verify(historyWriteBehind).append(history.capture());
+        assertThat(history.getValue()).singleElement()
+                .satisfies(record -> assertThat(record.getStatus()).isEqualTo(ItemStatus.ARRIVED))
+                .satisfies(record -> assertThat(record.getItem()).isSameAs(postalItem));
+        verify(historyItemRepository, never()).saveAndFlush(any(HistoryItem.class));
+    }
+
+    @Test
+    @DisplayName("updateItem() should write the status change of the moved item to the outbox and publish it")
+    void updateItem_PublishStatusChange_WhenItemIsMoved() {
+        //arrange
+        UpdateItemDto updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(1L)
+                .build();
+        when(itemRepository.findById(postalItem.getId())).thenReturn(Optional.of(postalItem));
+        when(postOfficeRepository.findNameById(office.getId())).thenReturn(Optional.of(officeName));
+        when(postOfficeRepository.getReferenceById(office.getId())).thenReturn(office);
+        //act
+        service.updateItem(updatedItem, ItemStatus.ARRIVED);
+        //assert
+        ArgumentCaptor<ItemStatusChangedDto> event = ArgumentCaptor.forClass(ItemStatusChangedDto.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertThat(event.getValue().getItemId()).isEqualTo(postalItem.getId());
+        assertThat(event.getValue().getStatus()).isEqualTo(ItemStatus.ARRIVED);
+        assertThat(event.getValue().getPostOfficeId()).isEqualTo(office.getId());
+        assertThat(event.getValue().getPostOfficeName()).isEqualTo(office.getName());
+        assertThat(event.getValue().getTimestamp()).isEqualTo(postalItem.getMovedAt());
+        verify(outbox).write(event.getValue());
+    }
+
+    @Test
+    @DisplayName("updateItem() should repeat the update on fresh data when the item was changed by another request")
+    void updateItem_RetryUpdate_WhenItemIsChangedConcurrently() {
+        //arrange
+        UpdateItemDto updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(1L)
+                .build();
+        ResponseItemDto expectedResult = ResponseItemDto.builder()
+                .id(1L)
+                .status(ItemStatus.ARRIVED)
+                .build();
+        doThrow(new ObjectOptimisticLockingFailureException(PostalItem.class, postalItem.getId()))
+                .doAnswer(RUN_IN_TRANSACTION)
+                .when(transactionTemplate).execute(any());
+        when(itemRepository.findById(postalItem.getId())).thenReturn(Optional.of(postalItem));
+        when(postOfficeRepository.findNameById(office.getId())).thenReturn(Optional.of(officeName));
+        when(postOfficeRepository.getReferenceById(office.getId())).thenReturn(office);
+        when(itemMapper.PostalItem_To_ResponseItemDto(postalItem)).thenReturn(expectedResult);
+        //act
+        ResponseItemDto actualResult = service.updateItem(updatedItem, ItemStatus.ARRIVED);
+        //assert
+        assertThat(actualResult).isEqualTo(expectedResult);
+        verify(transactionTemplate, times(2)).execute(any());
+        verify(historyItemRepository, times(1)).saveAndFlush(any(HistoryItem.class));
+    }
+
+    @Test
+    @DisplayName("updateItem() should throw an exception when the item keeps being changed by other requests")
+    void updateItem_ThrowException_WhenConflictsExceedMaxAttempts() {
+        //arrange
+        UpdateItemDto updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(1L)
+                .build();
+        doThrow(new ObjectOptimisticLockingFailureException(PostalItem.class, postalItem.getId()))
+                .when(transactionTemplate).execute(any());
+        //act
+        //assert
+        ConcurrentUpdateException thrown = assertThrows(
+                ConcurrentUpdateException.class, () -> service.updateItem(updatedItem, ItemStatus.ARRIVED)
+        );
+        assertThat(thrown.getMessage()).isEqualTo("item with id (1) is being updated by other requests, try again");
+        verify(transactionTemplate, times(properties.getUpdate().getMaxAttempts())).execute(any());
+    }
+
+    @Test
+    @DisplayName("updateItem() in conditional mode should move the item with a single update without loading it")
+    void updateItem_Conditional_ReturnUpdatedItem_WhenUpdateIsApplied() {
+        //arrange
+        properties.getUpdate().setMode(UpdateMode.CONDITIONAL);
+        UpdateItemDto updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(1L)
+                .build();
+        ResponseItemDto expectedResult = ResponseItemDto.builder()
+                .id(1L)
+                .status(ItemStatus.ARRIVED)
+                .build();
+        MovedItem movedItem = movedItem(ItemStatus.ARRIVED, 1L);
+        when(itemRepository.moveItem(1L, 1L, ItemStatus.ARRIVED)).thenReturn(Optional.of(movedItem));
+        when(itemMapper.MovedItem_To_ResponseItemDto(movedItem)).thenReturn(expectedResult);
+        //act
+        ResponseItemDto actualResult = service.updateItem(updatedItem, ItemStatus.ARRIVED);
+        //assert
+        assertThat(actualResult).isEqualTo(expectedResult);
+        verify(officeStats).moved(null, ItemStatus.REGISTERED, 1L, ItemStatus.ARRIVED);
+        verify(itemRepository, never()).findById(any());
+        verify(postOfficeRepository, never()).findNameById(any());
+        verify(historyItemRepository, never()).saveAndFlush(any(HistoryItem.class));
+    }
+
+    @Test
+    @DisplayName("updateItem() in conditional mode should throw an exception when the rejected item is not found")
+    void updateItem_Conditional_ThrowException_WhenItemIsNotFound() {
+        //arrange
+        properties.getUpdate().setMode(UpdateMode.CONDITIONAL);
+        UpdateItemDto updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(1L)
+                .build();
+        when(itemRepository.moveItem(1L, 1L, ItemStatus.ARRIVED)).thenReturn(Optional.empty());
+        when(itemRepository.findById(1L)).thenReturn(Optional.empty());
+        //act
+        //assert
+        NoSuchElementException thrown = assertThrows(
+                NoSuchElementException.class, () -> service.updateItem(updatedItem, ItemStatus.ARRIVED)
+        );
+        assertThat(thrown.getMessage()).isEqualTo("item with id (1) is not found");
+    }
+
+    @Test
+    @DisplayName("updateItem() in conditional mode should throw an exception when the rejected item is already received")
+    void updateItem_Conditional_ThrowException_WhenItemIsReceived() {
+        //arrange
+        properties.getUpdate().setMode(UpdateMode.CONDITIONAL);
+        UpdateItemDto updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(1L)
+                .build();
+        postalItem.setStatus(ItemStatus.RECEIVED);
+        when(itemRepository.moveItem(1L, 1L, ItemStatus.ARRIVED)).thenReturn(Optional.empty());
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(postalItem));
+        //act
+        //assert
+        BadAttributeValueException thrown = assertThrows(
+                BadAttributeValueException.class, () -> service.updateItem(updatedItem, ItemStatus.ARRIVED)
+        );
+        assertThat(thrown.getMessage()).isEqualTo("item with id (1) has already been RECEIVED");
+    }
+
+    @Test
+    @DisplayName("updateItem() in conditional mode should throw an exception when the rejected item departs from a different office")
+    void updateItem_Conditional_ThrowException_WhenItemDepartsFromDifferentOffice() {
+        //arrange
+        properties.getUpdate().setMode(UpdateMode.CONDITIONAL);
+        UpdateItemDto updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(2L)
+                .build();
+        when(itemRepository.moveItem(1L, 2L, ItemStatus.DEPARTED)).thenReturn(Optional.empty());
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(postalItem));
+        when(postOfficeRepository.findNameById(2L)).thenReturn(Optional.of(new PostOfficeName(2L, "post office 2")));
+        //act
+        //assert
+        BadAttributeValueException thrown = assertThrows(
+                BadAttributeValueException.class, () -> service.updateItem(updatedItem, ItemStatus.DEPARTED)
+        );
+        assertThat(thrown.getMessage()).isEqualTo("item with id (1) can not DEPART from a post office (2) to which it did NOT ARRIVE");
+    }
+
+    @Test
+    @DisplayName("updateItem() in conditional mode should repeat the update when the rejected item can be moved by now")
+    void updateItem_Conditional_RetryUpdate_WhenItemIsChangedAfterRejection() {
+        //arrange
+        properties.getUpdate().setMode(UpdateMode.CONDITIONAL);
+        UpdateItemDto updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(1L)
+                .build();
+        ResponseItemDto expectedResult = ResponseItemDto.builder()
+                .id(1L)
+                .status(ItemStatus.DEPARTED)
+                .build();
+        MovedItem movedItem = movedItem(ItemStatus.DEPARTED, 1L);
+        when(itemRepository.moveItem(1L, 1L, ItemStatus.DEPARTED))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(movedItem));
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(postalItem));
+        when(postOfficeRepository.findNameById(1L)).thenReturn(Optional.of(officeName));
+        when(itemMapper.MovedItem_To_ResponseItemDto(movedItem)).thenReturn(expectedResult);
+        //act
+        ResponseItemDto actualResult = service.updateItem(updatedItem, ItemStatus.DEPARTED);
+        //assert
+        assertThat(actualResult).isEqualTo(expectedResult);
+        verify(transactionTemplate, times(2)).execute(any());
+    }
+
     @ParameterizedTest
     @EnumSource(ItemStatus.class)
     @DisplayName("updateItem() should throw an exception when postal item id is null")
@@ -402,7 +855,34 @@ class PostalItemServiceTest extends BaseTest {
                 .postOfficeId(1L)
                 .build();
         when(itemRepository.findById(updatedItem.getId())).thenReturn(Optional.of(postalItem));
-        when(postOfficeRepository.findById(updatedItem.getPostOfficeId())).thenReturn(Optional.empty());
+        when(postOfficeRepository.findNameById(updatedItem.getPostOfficeId())).thenReturn(Optional.empty());
+        //act
+        //assert
+        NoSuchElementException thrown = assertThrows(
+                NoSuchElementException.class, () -> service.updateItem(updatedItem, status)
+        );
+        assertThat(thrown.getMessage()).isEqualTo("post office  with id (" + updatedItem.getPostOfficeId() + ") is not found");
+
+        verify(postOfficeRepository, never()).getReferenceById(anyLong());
+        verify(historyItemRepository, never()).saveAndFlush(any());
+        verify(itemMapper, never()).PostalItem_To_ResponseItemDto(any(PostalItem.class));
+    }
+
+    @ParameterizedTest
+    @EnumSource(ItemStatus.class)
+    @DisplayName("updateItem() should throw an exception when post office is deleted while the item moves to it")
+    void updateItem_ThrowException_WhenPostOfficeIsDeletedMeanwhile(ItemStatus status) {
+        //arrange
+        UpdateItemDto updatedItem = UpdateItemDto.builder()
+                .id(1L)
+                .postOfficeId(1L)
+                .build();
+        when(itemRepository.findById(updatedItem.getId())).thenReturn(Optional.of(postalItem));
+        when(postOfficeRepository.findNameById(updatedItem.getPostOfficeId())).thenReturn(Optional.of(officeName));
+        //the office is not loaded, its absence is reported by the foreign key of the item
+        when(postOfficeRepository.getReferenceById(updatedItem.getPostOfficeId())).thenReturn(office);
+        when(historyItemRepository.saveAndFlush(any(HistoryItem.class))).thenThrow(new DataIntegrityViolationException(
+                "could not execute statement", new ConstraintViolationException("violates foreign key", null, "postal_item_office_fk")));
         //act
         //assert
         NoSuchElementException thrown = assertThrows(
@@ -453,7 +933,8 @@ class PostalItemServiceTest extends BaseTest {
         .build();
         postalItem.setPostOffice(office);
         when(itemRepository.findById(updatedItem.getId())).thenReturn(Optional.of(postalItem));
-        when(postOfficeRepository.findById(updatedItem.getPostOfficeId())).thenReturn(Optional.of(office2));
+        when(postOfficeRepository.findNameById(updatedItem.getPostOfficeId()))
+                .thenReturn(Optional.of(new PostOfficeName(office2.getId(), office2.getName())));
 
     //act
         //assert
@@ -477,7 +958,7 @@ class PostalItemServiceTest extends BaseTest {
 
         postalItem.setPostOffice(null);
         when(itemRepository.findById(updatedItem.getId())).thenReturn(Optional.of(postalItem));
-        when(postOfficeRepository.findById(updatedItem.getPostOfficeId())).thenReturn(Optional.of(office));
+        when(postOfficeRepository.findNameById(updatedItem.getPostOfficeId())).thenReturn(Optional.of(officeName));
 
         //act
         //assert
@@ -496,19 +977,23 @@ class PostalItemServiceTest extends BaseTest {
         PostalItemHistoryDto expectedResultContent = PostalItemHistoryDto.builder()
                 .build();
         Page<PostalItemHistoryDto> expectedResult = new PageImpl<>(List.of(expectedResultContent), mock(PageRequest.class), 0);
-        when(itemRepository.existsById(postalItem.getId())).thenReturn(true);
-        when(historyItemService.findByItemId(postalItem.getId(), PageRequest.of(0, 2))).thenReturn(expectedResult);
+        when(historyItemService.findByItemId(postalItem.getId(), PageRequest.of(0, 2))).thenReturn(Optional.of(expectedResult));
         //act
         Page<PostalItemHistoryDto> actualResult = service.getPostalItemHistory(postalItem.getId(), PageRequest.of(0, 2));
         //assert
         assertThat(actualResult.getContent()).isNotEmpty();
         assertThat(actualResult.getContent()).containsAll(expectedResult);
         assertThat(actualResult.getContent().size()).isEqualTo(1);
+        //the item existence is read with the page
+        verify(itemRepository, never()).existsById(anyLong());
+        verify(itemRepository, never()).findById(anyLong());
     }
 
     @Test
     @DisplayName("getPostalItemHistory() should throw an exception when postal item is not found")
     void getPostalItemHistory_ThrowException_WhenPostalItemIsNotFound() {
+        //arrange
+        when(historyItemService.findByItemId(postalItem.getId(), PageRequest.of(0, 2))).thenReturn(Optional.empty());
         //act
         //assert
         NoSuchElementException thrown = assertThrows(
@@ -517,6 +1002,48 @@ class PostalItemServiceTest extends BaseTest {
         assertThat(thrown.getMessage()).isEqualTo("item with id (" + postalItem.getId() + ") is not found");
     }
 
+    @Test
+    @DisplayName("getPostalItemHistory() should return a keyset page of a postal item history")
+    void getPostalItemHistory_ReturnCursorPage() {
+        //arrange
+        CursorPageDto<PostalItemHistoryDto> expectedResult = CursorPageDto.<PostalItemHistoryDto>builder()
+                .content(List.of(PostalItemHistoryDto.builder().build()))
+                .build();
+        when(historyItemService.findByItemIdAfter(postalItem.getId(), KeysetCursor.START, 2)).thenReturn(expectedResult);
+        //act
+        CursorPageDto<PostalItemHistoryDto> actualResult = service.getPostalItemHistory(postalItem.getId(), null, 2);
+        //assert
+        assertThat(actualResult).isEqualTo(expectedResult);
+        verify(itemRepository, never()).existsById(anyLong());
+    }
+
+    @Test
+    @DisplayName("getPostalItemHistory() should throw an exception when the keyset page is empty and postal item is not found")
+    void getPostalItemHistory_ThrowException_WhenCursorPageIsEmptyAndPostalItemIsNotFound() {
+        //arrange
+        when(historyItemService.findByItemIdAfter(postalItem.getId(), KeysetCursor.START, 2))
+                .thenReturn(CursorPageDto.<PostalItemHistoryDto>builder().content(List.of()).build());
+        when(itemRepository.existsById(postalItem.getId())).thenReturn(false);
+        //act
+        //assert
+        NoSuchElementException thrown = assertThrows(
+                NoSuchElementException.class, () -> service.getPostalItemHistory(postalItem.getId(), null, 2)
+        );
+        assertThat(thrown.getMessage()).isEqualTo("item with id (" + postalItem.getId() + ") is not found");
+    }
+
+    @Test
+    @DisplayName("getPostalItemHistory() should throw an exception when the cursor is not valid")
+    void getPostalItemHistory_ThrowException_WhenCursorIsNotValid() {
+        //act
+        //assert
+        BadAttributeValueException thrown = assertThrows(
+                BadAttributeValueException.class, () -> service.getPostalItemHistory(postalItem.getId(), "abc", 2)
+        );
+        assertThat(thrown.getMessage()).isEqualTo("cursor (abc) is not valid");
+        verify(historyItemService, never()).findByItemIdAfter(any(), any(), anyInt());
+    }
+
     @Test
     @DisplayName("getPostalItemHistory() should throw an exception when postal item id is null")
     void getPostalItemHistory_ThrowException_WhenPostalItemIdIsNull() {
@@ -527,4 +1054,87 @@ class PostalItemServiceTest extends BaseTest {
         );
         assertThat(thrown.getMessage()).containsAnyOf("item id is not valid");
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("scanAll() should apply valid scan events and return the result of each event in the passed order")
+    void scanAll_ReturnResultOfEachEvent() {
+        //arrange
+        postalItem.setPostOffice(null);
+        List<ScanEventDto> events = List.of(
+                ScanEventDto.builder().itemId(1L).postOfficeId(1L).status(ItemStatus.ARRIVED).build(),
+                ScanEventDto.builder().itemId(1L).postOfficeId(1L).status(ItemStatus.DEPARTED).build(),
+                ScanEventDto.builder().itemId(2L).postOfficeId(1L).status(ItemStatus.ARRIVED).build(),
+                ScanEventDto.builder().itemId(1L).postOfficeId(1L).status(ItemStatus.REGISTERED).build()
+        );
+        ResponseItemDto responseItemDto = ResponseItemDto.builder().id(1L).build();
+        when(itemRepository.findAllById(anyIterable())).thenReturn(List.of(postalItem));
+        when(postOfficeRepository.findNamesByIds(anyCollection())).thenReturn(List.of(officeName));
+        when(postOfficeRepository.getReferenceById(office.getId())).thenReturn(office);
+        when(itemMapper.PostalItem_To_ResponseItemDto(postalItem)).thenReturn(responseItemDto);
+        //act
+        List<ScanResultDto> actualResult = service.scanAll(events);
+        //assert
+        assertThat(actualResult).hasSize(4);
+        assertThat(actualResult).extracting(ScanResultDto::isAccepted).containsExactly(true, true, false, false);
+        assertThat(actualResult.get(0).getItem()).isEqualTo(responseItemDto);
+        assertThat(actualResult.get(2).getError()).isEqualTo(NoSuchElementException.class.getSimpleName());
+        assertThat(actualResult.get(2).getMessage()).isEqualTo("item with id (2) is not found");
+        assertThat(actualResult.get(3).getError()).isEqualTo(BadAttributeValueException.class.getSimpleName());
+        assertThat(postalItem.getStatus()).isEqualTo(ItemStatus.DEPARTED);
+        assertThat(postalItem.getPostOffice()).isEqualTo(office);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<HistoryItem>> history = ArgumentCaptor.forClass(List.class);
+        verify(historyItemRepository, times(1)).saveAllAndFlush(history.capture());
+        assertThat(history.getValue()).extracting(HistoryItem::getStatus)
+                .containsExactly(ItemStatus.ARRIVED, ItemStatus.DEPARTED);
+        verify(itemRepository, never()).findById(anyLong());
+        verify(postOfficeRepository, never()).findById(anyLong());
+        verify(postOfficeRepository, never()).findAllById(anyIterable());
+    }
+
+    @Test
+    @DisplayName("scanAll() should throw an exception when the passed scan events are empty")
+    void scanAll_ThrowException_WhenEventsAreEmpty() {
+        //act
+        //assert
+        BadAttributeValueException thrown = assertThrows(
+                BadAttributeValueException.class, () -> service.scanAll(Collections.emptyList())
+        );
+        assertThat(thrown.getMessage()).isEqualTo("the passed scan events are not valid");
+        verify(historyItemRepository, never()).saveAllAndFlush(any());
+    }
+
+    @Test
+    @DisplayName("scanAll() should throw an exception when count of scan events exceeds the limit")
+    void scanAll_ThrowException_WhenEventsExceedLimit() {
+        //arrange
+        properties.getScan().setMaxBatchSize(1);
+        List<ScanEventDto> events = List.of(
+                ScanEventDto.builder().itemId(1L).postOfficeId(1L).status(ItemStatus.ARRIVED).build(),
+                ScanEventDto.builder().itemId(1L).postOfficeId(1L).status(ItemStatus.DEPARTED).build()
+        );
+        //act
+        //assert
+        BadAttributeValueException thrown = assertThrows(
+                BadAttributeValueException.class, () -> service.scanAll(events)
+        );
+        assertThat(thrown.getMessage()).isEqualTo("count of scan events (2) exceeds the limit (1)");
+        verify(itemRepository, never()).findAllById(any());
+        verify(historyItemRepository, never()).saveAllAndFlush(any());
+    }
+
+    /**
+     * @return registered postal item moved by the guarded update
+     */
+    private static MovedItem movedItem(ItemStatus status, Long officeId) {
+        MovedItem movedItem = mock(MovedItem.class);
+        when(movedItem.getId()).thenReturn(1L);
+        when(movedItem.getStatus()).thenReturn(status);
+        when(movedItem.getPostOfficeId()).thenReturn(officeId);
+        when(movedItem.getMovedAt()).thenReturn(new Date());
+        when(movedItem.getPreviousStatus()).thenReturn(ItemStatus.REGISTERED);
+        when(movedItem.getPreviousPostOfficeId()).thenReturn(null);
+        return movedItem;
+    }
+}
@@ -0,0 +1,126 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import com.ritazcode.mailtracking.dto.postOffice.CreatePostOfficeDto;
+import com.ritazcode.mailtracking.dto.postalItem.RegisterItemDto;
+import com.ritazcode.mailtracking.dto.postalItem.UpdateItemDto;
+import com.ritazcode.mailtracking.entity.HistoryItem;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.ItemType;
+import com.ritazcode.mailtracking.entity.PostalItem;
+import com.ritazcode.mailtracking.exception.NoSuchElementException;
+import com.ritazcode.mailtracking.repository.HistoryItemRepository;
+import com.ritazcode.mailtracking.repository.HistoryItemRow;
+import com.ritazcode.mailtracking.repository.PostOfficeRepository;
+import com.ritazcode.mailtracking.repository.PostalItemRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Import(TestMailTrackingApplication.class)
+class PostalItemTransitionCostTest {
+
+    @Autowired
+    private PostalItemService service;
+    @Autowired
+    private PostOfficeService postOfficeService;
+    @Autowired
+    private PostalItemRepository itemRepository;
+    @Autowired
+    private HistoryItemRepository historyItemRepository;
+    @Autowired
+    private PostOfficeRepository postOfficeRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private static final long STATEMENTS_PER_TRANSITION = 4;
+
+    private Statistics statistics;
+    private Long officeId;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        officeId = postOfficeService.create(CreatePostOfficeDto.builder()
+                .index("1232322")
+                .name("post office")
+                .address("street 1, city")
+                .build()).getId();
+        //the office name is read through the cache on every transition
+        postOfficeRepository.findNameById(officeId);
+    }
+
+    @Test
+    @DisplayName("a status transition should cost the same statements whatever the size of the item history is")
+    void arriveToPostOffice_CostDoesNotGrowWithHistory() {
+        //arrange
+        Long youngItem = registerWithHistory(1);
+        Long oldItem = registerWithHistory(500);
+        //act
+        TransitionCost youngCost = arrive(youngItem);
+        TransitionCost oldCost = arrive(oldItem);
+        //assert
+        //only the item is loaded, the office is referred to by id
+        assertThat(oldCost.entityLoads()).isEqualTo(1);
+        assertThat(youngCost.entityLoads()).isEqualTo(1);
+        assertThat(oldCost.collectionLoads()).isZero();
+        assertThat(youngCost.collectionLoads()).isZero();
+        // select item, update item, insert history and at most one id block call
+        assertThat(oldCost.statements()).isLessThanOrEqualTo(STATEMENTS_PER_TRANSITION);
+        assertThat(youngCost.statements()).isLessThanOrEqualTo(STATEMENTS_PER_TRANSITION);
+    }
+
+    @Test
+    @DisplayName("a status transition to a missing office should be rejected as not found and leave the item unchanged")
+    void arriveToPostOffice_ThrowException_WhenOfficeIsNotFound() {
+        //arrange
+        Long itemId = registerWithHistory(1);
+        Long missingOfficeId = officeId + 1000;
+        //act
+        NoSuchElementException thrown = assertThrows(NoSuchElementException.class,
+                () -> service.arriveToPostOffice(UpdateItemDto.builder().id(itemId).postOfficeId(missingOfficeId).build()));
+        //assert
+        assertThat(thrown.getMessage()).isEqualTo("post office  with id (" + missingOfficeId + ") is not found");
+        assertThat(service.view(itemId).getStatus()).isEqualTo(ItemStatus.REGISTERED);
+        assertThat(historyItemRepository.findPageByItemId(itemId, 10, 0)).extracting(HistoryItemRow::getTotal).containsExactly(1L);
+    }
+
+    private TransitionCost arrive(Long itemId) {
+        statistics.clear();
+        service.arriveToPostOffice(UpdateItemDto.builder().id(itemId).postOfficeId(officeId).build());
+        return new TransitionCost(statistics.getPrepareStatementCount(),
+                statistics.getEntityLoadCount(),
+                statistics.getCollectionLoadCount());
+    }
+
+    private Long registerWithHistory(int historySize) {
+        Long itemId = service.register(RegisterItemDto.builder()
+                .type(ItemType.PARCEL)
+                .recipientName("recipient name")
+                .recipientAddress("recipient address")
+                .recipientIndex("1235654")
+                .build()).getId();
+        PostalItem item = itemRepository.getReferenceById(itemId);
+        List<HistoryItem> history = new ArrayList<>(historySize);
+        for (int i = 1; i < historySize; i++)
+            history.add(new HistoryItem(i % 2 == 0 ? ItemStatus.ARRIVED : ItemStatus.DEPARTED, item));
+        historyItemRepository.saveAll(history);
+        return itemId;
+    }
+
+    private record TransitionCost(long statements, long entityLoads, long collectionLoads) {
+    }
+}
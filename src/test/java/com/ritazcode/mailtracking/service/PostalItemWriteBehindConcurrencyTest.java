@@ -0,0 +1,29 @@
+package com.ritazcode.mailtracking.service;
+
+import com.ritazcode.mailtracking.TestMailTrackingApplication;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * runs the concurrent scans of {@link PostalItemConcurrencyTest} with the history written behind the moves
+ */
+@SpringBootTest(properties = {
+        "myConfig.tracking.history.write-mode=write-behind",
+        "myConfig.tracking.history.journal.directory=${java.io.tmpdir}/mail-tracking-journal-${random.uuid}",
+        "myConfig.tracking.history.journal.name=write-behind-concurrency-test"})
+@Import(TestMailTrackingApplication.class)
+class PostalItemWriteBehindConcurrencyTest extends PostalItemConcurrencyTest {
+
+    @Autowired
+    private HistoryWriteBehindService historyWriteBehind;
+
+    @Override
+    protected void awaitHistory() throws Exception {
+        assertThat(historyWriteBehind.awaitFlushed(Duration.ofSeconds(30))).isTrue();
+    }
+}
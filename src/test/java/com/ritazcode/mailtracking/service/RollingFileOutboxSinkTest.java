@@ -0,0 +1,74 @@
+package com.ritazcode.mailtracking.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ritazcode.mailtracking.config.TrackingProperties;
+import com.ritazcode.mailtracking.entity.ItemStatus;
+import com.ritazcode.mailtracking.entity.OutboxEvent;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RollingFileOutboxSinkTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    @DisplayName("send() should write a json line per event and append batches to the current file")
+    void send_WriteJsonLines() throws Exception {
+        //arrange
+        RollingFileOutboxSink sink = sink(DataSize.ofMegabytes(1), 10);
+        //act
+        sink.send(List.of(event(1L, ItemStatus.REGISTERED), event(2L, ItemStatus.ARRIVED)));
+        sink.send(List.of(event(3L, ItemStatus.DEPARTED)));
+        sink.close();
+        //assert
+        assertThat(sink.files()).hasSize(1);
+        List<String> lines = Files.readAllLines(sink.files().get(0));
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(2)).contains("\"id\":3", "\"status\":\"DEPARTED\"", "\"postOfficeName\":\"post office\"");
+    }
+
+    @Test
+    @DisplayName("send() should start a new file when the current one is full and keep only the newest files")
+    void send_RollFiles_WhenFileIsFull() throws Exception {
+        //arrange
+        RollingFileOutboxSink sink = sink(DataSize.ofBytes(1), 2);
+        //act
+        for (long id = 1; id <= 3; id++)
+            sink.send(List.of(event(id, ItemStatus.ARRIVED)));
+        sink.close();
+        //assert
+        List<Path> files = sink.files();
+        assertThat(files).hasSize(2);
+        assertThat(Files.readString(files.get(0))).contains("\"id\":2");
+        assertThat(Files.readString(files.get(1))).contains("\"id\":3");
+    }
+
+    private RollingFileOutboxSink sink(DataSize maxFileSize, int maxFiles) {
+        TrackingProperties properties = new TrackingProperties();
+        properties.getOutbox().getFile().setDirectory(directory);
+        properties.getOutbox().getFile().setMaxFileSize(maxFileSize);
+        properties.getOutbox().getFile().setMaxFiles(maxFiles);
+        return new RollingFileOutboxSink(properties, new ObjectMapper());
+    }
+
+    private static OutboxEvent event(Long id, ItemStatus status) {
+        return OutboxEvent.builder()
+                .id(id)
+                .itemId(10L)
+                .status(status)
+                .postOfficeId(20L)
+                .postOfficeName("post office")
+                .timestamp(new Date())
+                .build();
+    }
+}